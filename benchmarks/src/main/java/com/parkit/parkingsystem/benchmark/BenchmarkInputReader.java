@@ -0,0 +1,27 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.util.InputReaderUtil;
+
+/**
+ * Answers the shell prompts of ParkingService with a fixed vehicle type and plate.
+ */
+public class BenchmarkInputReader extends InputReaderUtil {
+
+    private final int vehicleType;
+    private final String vehicleRegNumber;
+
+    public BenchmarkInputReader(int vehicleType, String vehicleRegNumber) {
+        this.vehicleType = vehicleType;
+        this.vehicleRegNumber = vehicleRegNumber;
+    }
+
+    @Override
+    public int readSelection() {
+        return vehicleType;
+    }
+
+    @Override
+    public String readVehicleRegistrationNumber() {
+        return vehicleRegNumber;
+    }
+}
@@ -0,0 +1,152 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.VisitCountCache;
+import com.parkit.parkingsystem.model.LastTicket;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every ParkingSpotDAO and TicketDAO method against the embedded database,
+ * with and without the in-memory spot index and ticket caches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j2.configurationFile=log4j2-benchmark.properties")
+public class DaoBenchmark {
+
+    private static final int NB_CAR_SPOTS = 1000;
+    private static final int NB_BIKE_SPOTS = 500;
+    private static final int NB_VEHICLES = 2000;
+    private static final int NB_TICKETS = 20_000;
+
+    @Param({"false", "true"})
+    public boolean caches;
+
+    private ParkingSpotDAO parkingSpotDAO;
+    private TicketDAO ticketDAO;
+    private Ticket closedTicket;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        EmbeddedDataBaseConfig dataBaseConfig = new EmbeddedDataBaseConfig("dao");
+        dataBaseConfig.createParking(NB_CAR_SPOTS, NB_BIKE_SPOTS);
+        parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < NB_TICKETS; i++) {
+            Ticket ticket = new Ticket();
+            ticket.setParkingSpot(new ParkingSpot(1 + i % NB_CAR_SPOTS, ParkingType.CAR, false));
+            ticket.setVehicleRegNumber(plate(i % NB_VEHICLES));
+            ticket.setInTime(new Date(now - (NB_TICKETS - i) * 60_000L));
+            ticket.setOutTime(new Date(now - (NB_TICKETS - i) * 60_000L + 30_000L));
+            ticket.setPrice(1.5);
+            ticketDAO.saveTicket(ticket);
+        }
+        Ticket openTicket = new Ticket();
+        openTicket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        openTicket.setVehicleRegNumber("OPEN");
+        openTicket.setInTime(new Date(now));
+        ticketDAO.saveTicket(openTicket);
+        closedTicket = ticketDAO.getTicket(plate(0));
+
+        if (caches) {
+            parkingSpotDAO.loadSpotIndex();
+            ticketDAO.loadActiveTicketCache();
+            ticketDAO.visitCountCache = new VisitCountCache();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        DataBaseConfig.shutdown();
+    }
+
+    private static String plate(int vehicle) {
+        return "VEH" + vehicle;
+    }
+
+    private static String randomPlate() {
+        return plate(ThreadLocalRandom.current().nextInt(NB_VEHICLES));
+    }
+
+    @Benchmark
+    public int getNextAvailableSlot() {
+        return parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR);
+    }
+
+    @Benchmark
+    public boolean claimNextAvailableSlotAndUpdateParking() {
+        int parkingNumber = parkingSpotDAO.claimNextAvailableSlot(ParkingType.BIKE);
+        return parkingSpotDAO.updateParking(new ParkingSpot(parkingNumber, ParkingType.BIKE, true));
+    }
+
+    @Benchmark
+    public boolean updateParking() {
+        return parkingSpotDAO.updateParking(new ParkingSpot(NB_CAR_SPOTS, ParkingType.CAR, true));
+    }
+
+    @Benchmark
+    public boolean saveTicket() {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(randomPlate());
+        ticket.setInTime(new Date());
+        // saved closed: a vehicle can only have one open ticket
+        ticket.setOutTime(ticket.getInTime());
+        return ticketDAO.saveTicket(ticket);
+    }
+
+    /**
+     * The ticket is already closed, so the update matches no row: this measures the round trip of a closing exit.
+     */
+    @Benchmark
+    public boolean updateTicket() {
+        closedTicket.setOutTime(new Date());
+        return ticketDAO.updateTicket(closedTicket);
+    }
+
+    @Benchmark
+    public Ticket getTicket() {
+        return ticketDAO.getTicket(randomPlate());
+    }
+
+    @Benchmark
+    public Ticket getOpenTicket() {
+        return ticketDAO.getTicket("OPEN");
+    }
+
+    @Benchmark
+    public LastTicket getLastTicket() {
+        return ticketDAO.getLastTicket(randomPlate());
+    }
+
+    @Benchmark
+    public int getNbTicket() {
+        return ticketDAO.getNbTicket(randomPlate());
+    }
+
+    @Benchmark
+    public boolean hasTicket() {
+        return ticketDAO.hasTicket(randomPlate());
+    }
+
+    @Benchmark
+    public boolean hasTicketFirstVisit() {
+        return ticketDAO.hasTicket("NEW" + ThreadLocalRandom.current().nextInt());
+    }
+}
@@ -0,0 +1,66 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.SchemaMigrator;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+/**
+ * In-memory H2 database in MySQL mode, migrated with the production scripts.
+ */
+public class EmbeddedDataBaseConfig extends DataBaseConfig {
+
+    private final String name;
+
+    public EmbeddedDataBaseConfig(String name) {
+        this.name = name;
+    }
+
+    @Override
+    protected String getJdbcUrl() {
+        return "jdbc:h2:mem:" + name + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+    }
+
+    @Override
+    protected String getUser() {
+        return "sa";
+    }
+
+    @Override
+    protected String getPassword() {
+        return "";
+    }
+
+    /**
+     * Migrates the schema, removes every ticket and creates the given number of available spots.
+     * H2 2.1 in MySQL mode can hand the same AUTO_INCREMENT value to two concurrent inserts, which MySQL never does,
+     * so the ticket ids are taken from a plain sequence instead.
+     */
+    public void createParking(int nbCarSpots, int nbBikeSpots) throws Exception {
+        new SchemaMigrator(this).migrate();
+        Connection con = getConnection();
+        try {
+            try (Statement statement = con.createStatement()) {
+                statement.execute("create sequence if not exists TICKET_ID_SEQ");
+                statement.execute("alter table ticket alter column ID drop identity");
+                statement.execute("alter table ticket alter column ID set default next value for TICKET_ID_SEQ");
+                statement.execute("delete from ticket");
+                statement.execute("delete from ticket_history");
+                statement.execute("delete from vehicle_visit");
+                statement.execute("delete from parking");
+            }
+            try (PreparedStatement ps = con.prepareStatement("insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(?,true,?)")) {
+                for (int parkingNumber = 1; parkingNumber <= nbCarSpots + nbBikeSpots; parkingNumber++) {
+                    ps.setInt(1, parkingNumber);
+                    ps.setString(2, parkingNumber <= nbCarSpots ? "CAR" : "BIKE");
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        } finally {
+            closeConnection(con);
+        }
+    }
+}
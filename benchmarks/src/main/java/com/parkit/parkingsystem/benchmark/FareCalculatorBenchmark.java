@@ -0,0 +1,60 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j2.configurationFile=log4j2-benchmark.properties")
+public class FareCalculatorBenchmark {
+
+    @Param({"CAR", "BIKE"})
+    public ParkingType parkingType;
+
+    // fixed times so that every run prices the same stay
+    private static final long OUT_TIME = 1_700_000_000_000L;
+    private static final long IN_TIME = OUT_TIME - 135 * 60 * 1000;
+
+    private final FareCalculatorService fareCalculatorService = new FareCalculatorService();
+    private Ticket ticket;
+
+    @Setup
+    public void setUp() {
+        ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, parkingType, false));
+        ticket.setVehicleRegNumber("ABCDEF");
+        ticket.setInTime(new Date(IN_TIME));
+        ticket.setOutTime(new Date(OUT_TIME));
+    }
+
+    @Benchmark
+    public double calculateFare() {
+        fareCalculatorService.calculateFare(ticket);
+        return ticket.getPrice();
+    }
+
+    @Benchmark
+    public double calculateFareWithDiscount() {
+        fareCalculatorService.calculateFare(ticket, true);
+        return ticket.getPrice();
+    }
+
+    @Benchmark
+    public long calculateFareCents() {
+        return fareCalculatorService.calculateFareCents(parkingType, IN_TIME, OUT_TIME, false);
+    }
+
+    @Benchmark
+    public long calculateFareCentsWithDiscount() {
+        return fareCalculatorService.calculateFareCents(ticket, true);
+    }
+}
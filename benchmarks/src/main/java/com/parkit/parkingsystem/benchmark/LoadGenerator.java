@@ -0,0 +1,513 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.GateStatus;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.InMemoryParkingSpotStore;
+import com.parkit.parkingsystem.dao.InMemoryTicketStore;
+import com.parkit.parkingsystem.dao.InstrumentedParkingSpotStore;
+import com.parkit.parkingsystem.dao.InstrumentedTicketStore;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ParkingSpotStore;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketStore;
+import com.parkit.parkingsystem.dao.VisitCountCache;
+import com.parkit.parkingsystem.metrics.LatencyHistogram;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.model.GateRequest;
+import com.parkit.parkingsystem.model.GateResult;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.service.ParkingService;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Replays a day of traffic, compressed, against {@link ParkingService} without any console:
+ * vehicles arrive as a Poisson process (or as recorded in a trace file), a share of them are regulars coming back,
+ * each stays for a log-normal dwell time and then leaves, and every entry and exit is served by the first free of
+ * N gates. Reports the sustained throughput, the service time and the response time (from the moment the vehicle
+ * showed up, so queueing at the gates is included), spots handed to two parked vehicles, and database round trips
+ * and store calls per entry and exit.
+ * <p>
+ * Parameters are {@code key=value} arguments, for instance
+ * {@code java -cp benchmarks/target/benchmarks.jar com.parkit.parkingsystem.benchmark.LoadGenerator storage=jdbc gates=16 rate=800}:
+ * <ul>
+ * <li>{@code storage}: {@code jdbc} (embedded H2), {@code jdbc-cached} (H2 with the spot index and ticket caches) or {@code memory}</li>
+ * <li>{@code layout}: parking spots, {@code CAR:500,BIKE:100} by default</li>
+ * <li>{@code gates}: concurrent gates, 8 by default</li>
+ * <li>{@code rate}: arrivals per second, 200 by default</li>
+ * <li>{@code duration} and {@code warmup}: measured and unmeasured seconds, 30 and 5 by default</li>
+ * <li>{@code dwellMs} and {@code dwellSigma}: mean and log-normal shape of the stay, 2000 ms and 0.8 by default</li>
+ * <li>{@code repeatShare}: share of arrivals by a vehicle that came before, 0.3 by default</li>
+ * <li>{@code bikeShare}: share of bikes, 0.2 by default</li>
+ * <li>{@code trace}: CSV file of {@code offsetMillis,vehicleRegNumber,CAR|BIKE,dwellMillis} arrivals to replay instead</li>
+ * <li>{@code record}: CSV file where the generated arrivals are written, to be replayed later</li>
+ * <li>{@code seed}: random seed, 42 by default</li>
+ * <li>{@code failOnError}: whether gate errors, store errors, claims given up or spot conflicts fail the run, true by default</li>
+ * </ul>
+ */
+public class LoadGenerator {
+
+    private static final ThreadLocal<long[]> roundTrips = ThreadLocal.withInitial(() -> new long[1]);
+    private static final long SCHEDULE_AHEAD_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Map<String, String> parameters;
+    private final int gates;
+    private final double rate;
+    private final long durationNanos;
+    private final long warmupNanos;
+    private final double dwellMu;
+    private final double dwellSigma;
+    private final double repeatShare;
+    private final double bikeShare;
+    private final boolean failOnError;
+    private final Random random;
+
+    private final DelayQueue<Visit> events = new DelayQueue<>();
+    private final Queue<String> departedVehicles = new ConcurrentLinkedQueue<>();
+    private final Map<String, String> parkedVehicles = new ConcurrentHashMap<>();
+    private final Map<String, String> spotByVehicle = new ConcurrentHashMap<>();
+    private final AtomicLong nextVehicle = new AtomicLong();
+    private final Stats entries = new Stats();
+    private final Stats exits = new Stats();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder gateErrors = new LongAdder();
+    private final LongAdder operations = new LongAdder();
+    private ParkingSpotStore parkingSpotStore;
+    private TicketStore ticketStore;
+    private ParkingService parkingService;
+    private long startNanos;
+    private long measureFromNanos;
+    private long endNanos;
+
+    public LoadGenerator(Map<String, String> parameters) {
+        this.parameters = parameters;
+        this.gates = Integer.parseInt(parameters.getOrDefault("gates", "8"));
+        this.rate = Double.parseDouble(parameters.getOrDefault("rate", "200"));
+        this.durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(parameters.getOrDefault("duration", "30")));
+        this.warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(parameters.getOrDefault("warmup", "5")));
+        double dwellMs = Double.parseDouble(parameters.getOrDefault("dwellMs", "2000"));
+        this.dwellSigma = Double.parseDouble(parameters.getOrDefault("dwellSigma", "0.8"));
+        // mean of a log-normal is exp(mu + sigma^2 / 2)
+        this.dwellMu = Math.log(dwellMs) - dwellSigma * dwellSigma / 2;
+        this.repeatShare = Double.parseDouble(parameters.getOrDefault("repeatShare", "0.3"));
+        this.bikeShare = Double.parseDouble(parameters.getOrDefault("bikeShare", "0.2"));
+        this.failOnError = Boolean.parseBoolean(parameters.getOrDefault("failOnError", "true"));
+        this.random = new Random(Long.parseLong(parameters.getOrDefault("seed", "42")));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            parameters.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        new LoadGenerator(parameters).run();
+    }
+
+    public void run() throws Exception {
+        String storage = parameters.getOrDefault("storage", "memory");
+        String layout = parameters.getOrDefault("layout", "CAR:500,BIKE:100");
+        createStores(storage, layout);
+        parkingService = new ParkingService(new InstrumentedParkingSpotStore(parkingSpotStore), new InstrumentedTicketStore(ticketStore));
+        System.out.printf("storage=%s layout=%s gates=%d rate=%.0f/s warmup=%ds duration=%ds%n", storage, layout, gates, rate,
+                TimeUnit.NANOSECONDS.toSeconds(warmupNanos), TimeUnit.NANOSECONDS.toSeconds(durationNanos));
+
+        startNanos = System.nanoTime();
+        measureFromNanos = startNanos + warmupNanos;
+        endNanos = measureFromNanos + durationNanos;
+        List<Thread> threads = new ArrayList<>();
+        for (int gate = 1; gate <= gates; gate++) {
+            String gateId = "gate-" + gate;
+            threads.add(new Thread(() -> serveGate(gateId), gateId));
+        }
+        threads.add(new Thread(this::scheduleArrivals, "arrivals"));
+        Map<String, Long> storeCallsBefore = storeCalls();
+        Map<String, Long> storeErrorsBefore = storeErrors();
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        report(storeCallsBefore);
+        long failures = reportErrors(storeErrorsBefore);
+        DataBaseConfig.shutdown();
+        if (failOnError && failures > 0) {
+            throw new IllegalStateException(failures + " gate errors, store errors or spot conflicts, see the report above");
+        }
+    }
+
+    private void createStores(String storage, String layout) throws Exception {
+        if (storage.equals("memory")) {
+            parkingSpotStore = InMemoryParkingSpotStore.withLayout(layout);
+            ticketStore = new InMemoryTicketStore();
+            return;
+        }
+        if (!storage.equals("jdbc") && !storage.equals("jdbc-cached")) {
+            throw new IllegalArgumentException("Unknown storage: " + storage);
+        }
+        int nbCarSpots = 0;
+        int nbBikeSpots = 0;
+        for (String group : layout.split(",")) {
+            String[] typeAndCount = group.trim().split(":");
+            if (ParkingType.valueOf(typeAndCount[0]) == ParkingType.CAR) {
+                nbCarSpots = Integer.parseInt(typeAndCount[1]);
+            } else {
+                nbBikeSpots = Integer.parseInt(typeAndCount[1]);
+            }
+        }
+        RoundTripCountingDataBaseConfig dataBaseConfig = new RoundTripCountingDataBaseConfig("load");
+        dataBaseConfig.createParking(nbCarSpots, nbBikeSpots);
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        TicketDAO ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        if (storage.equals("jdbc-cached")) {
+            parkingSpotDAO.loadSpotIndex();
+            ticketDAO.loadActiveTicketCache();
+            ticketDAO.visitCountCache = new VisitCountCache();
+        }
+        parkingSpotStore = parkingSpotDAO;
+        ticketStore = ticketDAO;
+    }
+
+    private void scheduleArrivals() {
+        try (PrintWriter recording = parameters.containsKey("record")
+                ? new PrintWriter(Files.newBufferedWriter(Paths.get(parameters.get("record")))) : null) {
+            if (parameters.containsKey("trace")) {
+                replayTrace(recording);
+            } else {
+                generateArrivals(recording);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read or write the arrivals", e);
+        }
+    }
+
+    private void generateArrivals(PrintWriter recording) {
+        long due = startNanos;
+        while (true) {
+            // exponential gaps between arrivals make a Poisson process
+            due += (long) (-Math.log(1 - random.nextDouble()) / rate * 1_000_000_000L);
+            if (due >= endNanos) {
+                return;
+            }
+            String vehicleRegNumber = random.nextDouble() < repeatShare ? departedVehicles.poll() : null;
+            if (vehicleRegNumber == null) {
+                vehicleRegNumber = "LG" + nextVehicle.incrementAndGet();
+            }
+            ParkingType parkingType = random.nextDouble() < bikeShare ? ParkingType.BIKE : ParkingType.CAR;
+            long dwellNanos = (long) (Math.exp(dwellMu + dwellSigma * random.nextGaussian()) * 1_000_000L);
+            schedule(new Visit(due, vehicleRegNumber, parkingType, dwellNanos), recording);
+        }
+    }
+
+    private void replayTrace(PrintWriter recording) throws IOException {
+        try (BufferedReader trace = Files.newBufferedReader(Paths.get(parameters.get("trace")))) {
+            String line;
+            while ((line = trace.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                long due = startNanos + TimeUnit.MILLISECONDS.toNanos(Long.parseLong(fields[0].trim()));
+                if (due >= endNanos) {
+                    return;
+                }
+                schedule(new Visit(due, fields[1].trim(), ParkingType.valueOf(fields[2].trim()),
+                        TimeUnit.MILLISECONDS.toNanos(Long.parseLong(fields[3].trim()))), recording);
+            }
+        }
+    }
+
+    private void schedule(Visit arrival, PrintWriter recording) {
+        long wait = arrival.due - SCHEDULE_AHEAD_NANOS - System.nanoTime();
+        if (wait > 0) {
+            sleep(wait);
+        }
+        events.put(arrival);
+        if (recording != null) {
+            recording.printf("%d,%s,%s,%d%n", TimeUnit.NANOSECONDS.toMillis(arrival.due - startNanos), arrival.vehicleRegNumber,
+                    arrival.parkingType, TimeUnit.NANOSECONDS.toMillis(arrival.dwellNanos));
+        }
+    }
+
+    private void serveGate(String gateId) {
+        long[] gateRoundTrips = roundTrips.get();
+        while (true) {
+            Visit visit;
+            try {
+                visit = events.poll(endNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (visit == null || visit.due >= endNanos) {
+                return;
+            }
+            String leftSpot = null;
+            if (visit.exiting) {
+                // freed before the exit, as another gate may hand the spot out as soon as the store releases it
+                // a replayed trace may hold overlapping visits of one plate, the first exit then took the spot
+                leftSpot = spotByVehicle.remove(visit.vehicleRegNumber);
+                if (leftSpot != null) {
+                    parkedVehicles.remove(leftSpot, visit.vehicleRegNumber);
+                }
+            }
+            long roundTripsBefore = gateRoundTrips[0];
+            long start = System.nanoTime();
+            GateResult result = visit.exiting
+                    ? parkingService.exitVehicle(GateRequest.exit(gateId, visit.vehicleRegNumber))
+                    : parkingService.enterVehicle(GateRequest.entry(gateId, visit.parkingType, visit.vehicleRegNumber));
+            long end = System.nanoTime();
+            operations.increment();
+            if (result.getStatus() == GateStatus.ERROR) {
+                gateErrors.increment();
+            }
+            if (visit.exiting) {
+                if (result.isOk()) {
+                    departedVehicles.add(visit.vehicleRegNumber);
+                } else if (leftSpot != null) {
+                    spotByVehicle.put(visit.vehicleRegNumber, leftSpot);
+                    parkedVehicles.put(leftSpot, visit.vehicleRegNumber);
+                }
+            } else if (result.isOk()) {
+                ParkingSpot parkingSpot = result.getTicket().getParkingSpot();
+                String spot = parkingSpot.getParkingType() + ":" + parkingSpot.getId();
+                spotByVehicle.put(visit.vehicleRegNumber, spot);
+                if (parkedVehicles.putIfAbsent(spot, visit.vehicleRegNumber) != null) {
+                    conflicts.increment();
+                }
+                events.put(visit.leaving(end));
+            } else {
+                // turned away or failed: comes back another day
+                departedVehicles.add(visit.vehicleRegNumber);
+            }
+            if (visit.due >= measureFromNanos) {
+                (visit.exiting ? exits : entries).record(result.getStatus(), end - start, end - visit.due,
+                        gateRoundTrips[0] - roundTripsBefore);
+            }
+        }
+    }
+
+    private static Map<String, Long> storeCalls() {
+        Map<String, Long> calls = new LinkedHashMap<>();
+        Metrics.getOperations().forEach((name, metrics) -> {
+            if (name.startsWith("spots.") || name.startsWith("tickets.")) {
+                calls.put(name, metrics.getCount());
+            }
+        });
+        return calls;
+    }
+
+    /**
+     * Store errors by operation, exhausted claim retries included: an entry turned away because its claim gave up
+     * looks like a full parking from the gate.
+     */
+    private static Map<String, Long> storeErrors() {
+        Map<String, Long> errors = new LinkedHashMap<>();
+        Metrics.getOperations().forEach((name, metrics) -> {
+            if (name.startsWith("spots.") || name.startsWith("tickets.") || name.startsWith("claims.")) {
+                errors.put(name, metrics.getErrors());
+            }
+        });
+        return errors;
+    }
+
+    /**
+     * Prints the errors of the whole run, warmup included, and returns how many there were with the spot conflicts.
+     */
+    private long reportErrors(Map<String, Long> storeErrorsBefore) {
+        StringBuilder storeErrors = new StringBuilder();
+        long failures = gateErrors.sum() + conflicts.sum();
+        for (Map.Entry<String, Long> errors : storeErrors().entrySet()) {
+            long count = errors.getValue() - storeErrorsBefore.getOrDefault(errors.getKey(), 0L);
+            if (count > 0) {
+                storeErrors.append(storeErrors.length() == 0 ? "" : ", ").append(errors.getKey()).append(' ').append(count);
+                failures += count;
+            }
+        }
+        System.out.printf("errors over the whole run: %d gate errors, store errors: %s%n", gateErrors.sum(),
+                storeErrors.length() == 0 ? "none" : storeErrors);
+        return failures;
+    }
+
+    private void report(Map<String, Long> storeCallsBefore) {
+        double seconds = durationNanos / 1_000_000_000d;
+        long entered = entries.count(GateStatus.OK);
+        long exited = exits.count(GateStatus.OK);
+        System.out.printf("throughput: %.1f entries/s, %.1f exits/s, %.1f gate operations/s%n",
+                entered / seconds, exited / seconds, (entries.total() + exits.total()) / seconds);
+        System.out.printf("entries: %d ok, %d full, %d errors%n",
+                entered, entries.count(GateStatus.NO_SPOT_AVAILABLE), entries.count(GateStatus.ERROR));
+        System.out.printf("exits: %d ok, %d unknown, %d errors%n",
+                exited, exits.count(GateStatus.UNKNOWN_VEHICLE), exits.count(GateStatus.ERROR));
+        entries.print("entry");
+        exits.print("exit");
+        System.out.printf("spot conflicts (a spot handed to two parked vehicles): %d%n", conflicts.sum());
+        System.out.printf("database round trips: %.2f per entry, %.2f per exit%n",
+                entries.roundTripsPerOperation(), exits.roundTripsPerOperation());
+        long storeCalls = 0;
+        for (Map.Entry<String, Long> calls : storeCalls().entrySet()) {
+            storeCalls += calls.getValue() - storeCallsBefore.getOrDefault(calls.getKey(), 0L);
+        }
+        long allOperations = operations.sum();
+        System.out.printf("store calls: %.2f per gate operation%n", allOperations == 0 ? 0d : storeCalls / (double) allOperations);
+    }
+
+    private static void sleep(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Visit implements Delayed {
+        private final long due;
+        private final String vehicleRegNumber;
+        private final ParkingType parkingType;
+        private final long dwellNanos;
+        private final boolean exiting;
+
+        private Visit(long due, String vehicleRegNumber, ParkingType parkingType, long dwellNanos) {
+            this(due, vehicleRegNumber, parkingType, dwellNanos, false);
+        }
+
+        private Visit(long due, String vehicleRegNumber, ParkingType parkingType, long dwellNanos, boolean exiting) {
+            this.due = due;
+            this.vehicleRegNumber = vehicleRegNumber;
+            this.parkingType = parkingType;
+            this.dwellNanos = dwellNanos;
+            this.exiting = exiting;
+        }
+
+        private Visit leaving(long parkedAt) {
+            return new Visit(parkedAt + dwellNanos, vehicleRegNumber, parkingType, dwellNanos, true);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(due - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(due, ((Visit) other).due);
+        }
+    }
+
+    private final class Stats {
+        private final Map<GateStatus, LongAdder> statuses = new ConcurrentHashMap<>();
+        private final LatencyHistogram serviceTime = new LatencyHistogram();
+        private final LatencyHistogram responseTime = new LatencyHistogram();
+        private final LongAdder roundTrips = new LongAdder();
+
+        private void record(GateStatus status, long serviceNanos, long responseNanos, long operationRoundTrips) {
+            statuses.computeIfAbsent(status, key -> new LongAdder()).increment();
+            serviceTime.record(serviceNanos);
+            responseTime.record(responseNanos);
+            roundTrips.add(operationRoundTrips);
+        }
+
+        private long count(GateStatus status) {
+            LongAdder count = statuses.get(status);
+            return count == null ? 0 : count.sum();
+        }
+
+        private long total() {
+            return statuses.values().stream().mapToLong(LongAdder::sum).sum();
+        }
+
+        private double roundTripsPerOperation() {
+            long total = total();
+            return total == 0 ? 0d : roundTrips.sum() / (double) total;
+        }
+
+        private void print(String operation) {
+            print(operation + " service time ", serviceTime.snapshot());
+            print(operation + " response time", responseTime.snapshot());
+        }
+
+        private void print(String label, LatencyHistogram.Snapshot snapshot) {
+            System.out.printf("%s: p50 %.3f ms, p99 %.3f ms, p999 %.3f ms, max %.3f ms%n", label,
+                    snapshot.getPercentileMillis(0.5), snapshot.getPercentileMillis(0.99),
+                    snapshot.getPercentileMillis(0.999), snapshot.getMaxMillis());
+        }
+    }
+
+    /**
+     * Counts, for the calling thread, the statements executed and the transactions committed or rolled back,
+     * each of them being one round trip to a database server.
+     */
+    private static final class RoundTripCountingDataBaseConfig extends EmbeddedDataBaseConfig {
+
+        private RoundTripCountingDataBaseConfig(String name) {
+            super(name);
+        }
+
+        @Override
+        public Connection getConnection() throws ClassNotFoundException, SQLException {
+            Connection con = super.getConnection();
+            // a connection bound to a unit of work is already counted
+            return isBound(con) ? con : counting(con);
+        }
+
+        private static Connection counting(Connection con) {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        String name = method.getName();
+                        if (name.equals("commit") || name.equals("rollback")) {
+                            roundTrips.get()[0]++;
+                        }
+                        Object result = invoke(con, method, args);
+                        if (result instanceof Statement) {
+                            return counting((Statement) result, method.getReturnType());
+                        }
+                        return result;
+                    });
+        }
+
+        private static Object counting(Statement statement, Class<?> type) {
+            return Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{type},
+                    (proxy, method, args) -> {
+                        if (method.getName().startsWith("execute")) {
+                            roundTrips.get()[0]++;
+                        }
+                        return invoke(statement, method, args);
+                    });
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
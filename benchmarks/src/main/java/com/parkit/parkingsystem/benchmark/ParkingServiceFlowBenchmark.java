@@ -0,0 +1,107 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.dao.InMemoryParkingSpotStore;
+import com.parkit.parkingsystem.dao.InMemoryTicketStore;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ParkingSpotStore;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketStore;
+import com.parkit.parkingsystem.dao.VisitCountCache;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One operation is a full visit: processIncomingVehicle then processExitingVehicle for the gate's own plate,
+ * run by 1, 4 and 16 concurrent gates, against the embedded database with or without the caches, or in memory only.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j2.configurationFile=log4j2-benchmark.properties")
+public class ParkingServiceFlowBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Parking {
+
+        @Param({"jdbc", "jdbc-cached", "memory"})
+        public String storage;
+
+        ParkingSpotStore parkingSpotStore;
+        TicketStore ticketStore;
+        final AtomicInteger nbGates = new AtomicInteger();
+        private PrintStream out;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            if (storage.equals("memory")) {
+                parkingSpotStore = InMemoryParkingSpotStore.withLayout("CAR:100,BIKE:100");
+                ticketStore = new InMemoryTicketStore();
+            } else {
+                EmbeddedDataBaseConfig dataBaseConfig = new EmbeddedDataBaseConfig("flow");
+                dataBaseConfig.createParking(100, 100);
+                ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+                parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+                TicketDAO ticketDAO = new TicketDAO();
+                ticketDAO.dataBaseConfig = dataBaseConfig;
+                if (storage.equals("jdbc-cached")) {
+                    parkingSpotDAO.loadSpotIndex();
+                    ticketDAO.loadActiveTicketCache();
+                    ticketDAO.visitCountCache = new VisitCountCache();
+                }
+                parkingSpotStore = parkingSpotDAO;
+                ticketStore = ticketDAO;
+            }
+            // ParkingService prints its prompts and receipts
+            out = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            System.setOut(out);
+            DataBaseConfig.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Gate {
+
+        ParkingService parkingService;
+
+        @Setup(Level.Trial)
+        public void setUp(Parking parking) {
+            String vehicleRegNumber = "GATE" + parking.nbGates.incrementAndGet();
+            parkingService = new ParkingService(new BenchmarkInputReader(1, vehicleRegNumber), parking.parkingSpotStore, parking.ticketStore);
+        }
+    }
+
+    private static void visit(Gate gate) {
+        gate.parkingService.processIncomingVehicle();
+        gate.parkingService.processExitingVehicle();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void entryAndExit1Gate(Gate gate) {
+        visit(gate);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void entryAndExit4Gates(Gate gate) {
+        visit(gate);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void entryAndExit16Gates(Gate gate) {
+        visit(gate);
+    }
+}
@@ -1,13 +1,35 @@
 package com.parkit.parkingsystem;
 
+import com.parkit.parkingsystem.api.ParkingHttpServer;
 import com.parkit.parkingsystem.service.InteractiveShell;
+import com.parkit.parkingsystem.service.ParkingSystem;
+import com.parkit.parkingsystem.service.TicketReconciliationService;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 public class App {
     private static final Logger logger = LogManager.getLogger("App");
     public static void main(String args[]){
+        if (args.length > 0 && args[0].equals("reconcile")) {
+            try {
+                System.out.println(TicketReconciliationService.run(args));
+            } catch (Exception e) {
+                logger.error("Unable to reconcile the tickets", e);
+            }
+            return;
+        }
         logger.info("Initializing Parking System");
-        InteractiveShell.loadInterface();
+        if (Boolean.parseBoolean(System.getProperty("parkit.console.enabled", "true"))) {
+            InteractiveShell.loadInterface();
+        } else {
+            // headless node: the HTTP server thread keeps the JVM running until it is stopped
+            if (ParkingHttpServer.PORT <= 0) {
+                logger.error("Running without console needs the HTTP API, set -Dparkit.http.port");
+                return;
+            }
+            ParkingSystem parkingSystem = new ParkingSystem();
+            Runtime.getRuntime().addShutdownHook(new Thread(parkingSystem::close));
+            parkingSystem.startHttpServer();
+        }
     }
 }
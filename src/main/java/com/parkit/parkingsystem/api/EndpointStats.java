@@ -0,0 +1,55 @@
+package com.parkit.parkingsystem.api;
+
+import com.parkit.parkingsystem.metrics.LatencyHistogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request count, status classes and latency of one HTTP endpoint, updated without locking by the server threads.
+ */
+public class EndpointStats {
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder clientErrors = new LongAdder();
+    private final LongAdder serverErrors = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public void record(int statusCode, long nanos) {
+        requests.increment();
+        if (statusCode == 503) {
+            rejected.increment();
+        } else if (statusCode >= 500) {
+            serverErrors.increment();
+        } else if (statusCode >= 400) {
+            clientErrors.increment();
+        }
+        latency.record(nanos);
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public Map<String, Object> toMap() {
+        long count = requests.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("requests", count);
+        stats.put("clientErrors", clientErrors.sum());
+        stats.put("serverErrors", serverErrors.sum());
+        stats.put("rejected", rejected.sum());
+        LatencyHistogram.Snapshot snapshot = latency.snapshot();
+        stats.put("avgMillis", snapshot.getMeanMillis());
+        stats.put("p50Millis", snapshot.getPercentileMillis(0.5));
+        stats.put("p99Millis", snapshot.getPercentileMillis(0.99));
+        stats.put("p999Millis", snapshot.getPercentileMillis(0.999));
+        stats.put("maxMillis", snapshot.getMaxMillis());
+        return stats;
+    }
+}
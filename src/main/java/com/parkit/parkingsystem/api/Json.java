@@ -0,0 +1,220 @@
+package com.parkit.parkingsystem.api;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON support for the gate API: flat objects (or arrays of them) in, nested objects and arrays of strings,
+ * numbers and booleans out.
+ */
+public class Json {
+
+    private Json() {
+    }
+
+    /**
+     * Parses a flat JSON object. Values are returned as strings, null values are left out.
+     */
+    public static Map<String, String> parseObject(String json) {
+        int[] pos = {0};
+        Map<String, String> values = readObject(json, pos);
+        if (skipWhitespace(json, pos[0]) != json.length()) {
+            throw new IllegalArgumentException("Unexpected content at " + pos[0]);
+        }
+        return values;
+    }
+
+    /**
+     * Parses an array of flat JSON objects.
+     */
+    public static List<Map<String, String>> parseArray(String json) {
+        List<Map<String, String>> objects = new ArrayList<>();
+        int[] pos = {0};
+        expect(json, pos, '[');
+        if (peek(json, pos) == ']') {
+            pos[0]++;
+        } else {
+            while (true) {
+                objects.add(readObject(json, pos));
+                char next = peek(json, pos);
+                pos[0]++;
+                if (next == ']') {
+                    break;
+                }
+                if (next != ',') {
+                    throw new IllegalArgumentException("Expected ',' or ']' at " + (pos[0] - 1));
+                }
+            }
+        }
+        if (skipWhitespace(json, pos[0]) != json.length()) {
+            throw new IllegalArgumentException("Unexpected content at " + pos[0]);
+        }
+        return objects;
+    }
+
+    public static String write(Map<String, ?> object) {
+        StringBuilder json = new StringBuilder(128);
+        appendObject(json, object);
+        return json.toString();
+    }
+
+    private static Map<String, String> readObject(String json, int[] pos) {
+        Map<String, String> values = new LinkedHashMap<>();
+        expect(json, pos, '{');
+        if (peek(json, pos) == '}') {
+            pos[0]++;
+            return values;
+        }
+        while (true) {
+            String key = readString(json, pos);
+            expect(json, pos, ':');
+            String value = readValue(json, pos);
+            if (value != null) {
+                values.put(key, value);
+            }
+            char next = peek(json, pos);
+            pos[0]++;
+            if (next == '}') {
+                return values;
+            }
+            if (next != ',') {
+                throw new IllegalArgumentException("Expected ',' or '}' at " + (pos[0] - 1));
+            }
+        }
+    }
+
+    private static void appendObject(StringBuilder json, Map<String, ?> object) {
+        json.append('{');
+        boolean first = true;
+        for (Map.Entry<String, ?> entry : object.entrySet()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            appendString(json, entry.getKey());
+            json.append(':');
+            appendValue(json, entry.getValue());
+        }
+        json.append('}');
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void appendValue(StringBuilder json, Object value) {
+        if (value == null) {
+            json.append("null");
+        } else if (value instanceof Map) {
+            appendObject(json, (Map<String, ?>) value);
+        } else if (value instanceof Iterable) {
+            json.append('[');
+            boolean first = true;
+            for (Object element : (Iterable<?>) value) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                appendValue(json, element);
+            }
+            json.append(']');
+        } else if (value instanceof Number || value instanceof Boolean) {
+            json.append(value);
+        } else {
+            appendString(json, value.toString());
+        }
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': json.append("\\\""); break;
+                case '\\': json.append("\\\\"); break;
+                case '\n': json.append("\\n"); break;
+                case '\r': json.append("\\r"); break;
+                case '\t': json.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    private static String readValue(String json, int[] pos) {
+        char c = peek(json, pos);
+        if (c == '"') {
+            return readString(json, pos);
+        }
+        int start = pos[0];
+        while (pos[0] < json.length() && ",}] \t\r\n".indexOf(json.charAt(pos[0])) < 0) {
+            pos[0]++;
+        }
+        String literal = json.substring(start, pos[0]);
+        if (literal.isEmpty() || c == '{' || c == '[') {
+            throw new IllegalArgumentException("Unsupported value at " + start);
+        }
+        return "null".equals(literal) ? null : literal;
+    }
+
+    private static String readString(String json, int[] pos) {
+        expect(json, pos, '"');
+        StringBuilder value = new StringBuilder();
+        while (pos[0] < json.length()) {
+            char c = json.charAt(pos[0]++);
+            if (c == '"') {
+                return value.toString();
+            }
+            if (c == '\\') {
+                if (pos[0] >= json.length()) {
+                    break;
+                }
+                char escaped = json.charAt(pos[0]++);
+                switch (escaped) {
+                    case 'n': value.append('\n'); break;
+                    case 'r': value.append('\r'); break;
+                    case 't': value.append('\t'); break;
+                    case 'b': value.append('\b'); break;
+                    case 'f': value.append('\f'); break;
+                    case 'u':
+                        if (pos[0] + 4 > json.length()) {
+                            throw new IllegalArgumentException("Truncated unicode escape");
+                        }
+                        value.append((char) Integer.parseInt(json.substring(pos[0], pos[0] + 4), 16));
+                        pos[0] += 4;
+                        break;
+                    default: value.append(escaped);
+                }
+            } else {
+                value.append(c);
+            }
+        }
+        throw new IllegalArgumentException("Unterminated string");
+    }
+
+    private static void expect(String json, int[] pos, char expected) {
+        if (peek(json, pos) != expected) {
+            throw new IllegalArgumentException("Expected '" + expected + "' at " + pos[0]);
+        }
+        pos[0]++;
+    }
+
+    private static char peek(String json, int[] pos) {
+        pos[0] = skipWhitespace(json, pos[0]);
+        if (pos[0] >= json.length()) {
+            throw new IllegalArgumentException("Unexpected end of JSON");
+        }
+        return json.charAt(pos[0]);
+    }
+
+    private static int skipWhitespace(String json, int pos) {
+        while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+}
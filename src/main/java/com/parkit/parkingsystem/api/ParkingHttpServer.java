@@ -0,0 +1,432 @@
+package com.parkit.parkingsystem.api;
+
+import com.parkit.parkingsystem.config.ConnectionPool;
+import com.parkit.parkingsystem.constants.GateOperation;
+import com.parkit.parkingsystem.constants.GateStatus;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotStore;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.model.GateRequest;
+import com.parkit.parkingsystem.model.GateResult;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingEngine;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JSON over HTTP access to the parking for gates, kiosks and payment terminals, built on the JDK http server.
+ * Entries, exits and fare quotes go through the {@link ParkingEngine}, whose bounded queue turns overload into 503 responses.
+ * Responses are written by the engine thread that completes the request, so the server threads never wait on the database.
+ * Requests waiting for a server thread are bounded too: beyond the queue, any request, {@code /occupancy} and
+ * {@code /stats} included, is answered 503 by the thread accepting the connections without being processed.
+ */
+public class ParkingHttpServer implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("ParkingHttpServer");
+
+    public static final int PORT = Integer.getInteger("parkit.http.port", 0);
+    public static final int THREADS = Integer.getInteger("parkit.http.threads", Math.max(4, Runtime.getRuntime().availableProcessors()));
+    public static final int QUEUE_CAPACITY = Integer.getInteger("parkit.http.queueCapacity", 1000);
+    public static final int BACKLOG = Integer.getInteger("parkit.http.backlog", 1024);
+    public static final int MAX_BATCH_SIZE = Integer.getInteger("parkit.http.maxBatchSize", 500);
+    private static final int MAX_BODY_BYTES = 4096;
+    private static final int MAX_BATCH_BODY_BYTES = 256 * 1024;
+    private static final String DEFAULT_GATE = "http";
+
+    static {
+        // the JDK server leaves Nagle's algorithm on, which delays small keep-alive responses by up to 40 ms;
+        // read once when the server classes load, so it has to be set before the first server is created
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final ParkingEngine parkingEngine;
+    private final ParkingSpotStore parkingSpotStore;
+    private final ConnectionPool connectionPool;
+    private final HttpServer server;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, EndpointStats> endpointStats = new LinkedHashMap<>();
+    private final ThreadLocal<Boolean> rejecting = new ThreadLocal<>();
+
+    public ParkingHttpServer(int port, ParkingEngine parkingEngine, ParkingSpotStore parkingSpotStore) throws IOException {
+        this(port, parkingEngine, parkingSpotStore, null);
+    }
+
+    /**
+     * @param connectionPool pool reported by {@code /stats}, null when the spots are not stored in a database
+     */
+    public ParkingHttpServer(int port, ParkingEngine parkingEngine, ParkingSpotStore parkingSpotStore,
+                             ConnectionPool connectionPool) throws IOException {
+        this(port, parkingEngine, parkingSpotStore, connectionPool, THREADS, QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param threads        threads serving the requests
+     * @param queueCapacity  requests waiting for a thread beyond which they are answered 503
+     */
+    public ParkingHttpServer(int port, ParkingEngine parkingEngine, ParkingSpotStore parkingSpotStore,
+                             ConnectionPool connectionPool, int threads, int queueCapacity) throws IOException {
+        this.parkingEngine = parkingEngine;
+        this.parkingSpotStore = parkingSpotStore;
+        this.connectionPool = connectionPool;
+        this.server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "parkit-http-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, this::reject);
+        server.setExecutor(executor);
+        createContext("/entry", this::handleEntry);
+        createContext("/exit", this::handleExit);
+        createContext("/batch", this::handleBatch);
+        createContext("/fare", this::handleFare);
+        createContext("/occupancy", this::handleOccupancy);
+        createContext("/stats", this::handleStats);
+    }
+
+    public void start() {
+        server.start();
+        logger.info("HTTP API listening on port {} with {} threads", getPort(), executor.getCorePoolSize());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public int getQueuedRequests() {
+        return executor.getQueue().size();
+    }
+
+    public EndpointStats getEndpointStats(String path) {
+        return endpointStats.get(path);
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs an exchange that no thread can take on the calling server thread, flagged so that it is only answered 503.
+     */
+    private void reject(Runnable exchange, ThreadPoolExecutor executor) {
+        rejecting.set(Boolean.TRUE);
+        try {
+            exchange.run();
+        } finally {
+            rejecting.remove();
+        }
+    }
+
+    private interface Endpoint {
+        void handle(HttpExchange exchange, EndpointStats stats, long start) throws IOException;
+    }
+
+    private void createContext(String path, Endpoint endpoint) {
+        EndpointStats stats = new EndpointStats();
+        endpointStats.put(path, stats);
+        HttpHandler handler = exchange -> {
+            long start = System.nanoTime();
+            try {
+                if (rejecting.get() != null) {
+                    respond(exchange, stats, start, 503, error("Too many requests"));
+                } else if (!path.equals(exchange.getRequestURI().getPath())) {
+                    respond(exchange, stats, start, 404, error("Not found"));
+                } else {
+                    endpoint.handle(exchange, stats, start);
+                }
+            } catch (Exception e) {
+                logger.error("Unable to handle " + exchange.getRequestMethod() + " " + path, e);
+                respond(exchange, stats, start, 500, error("Internal error"));
+            }
+        };
+        server.createContext(path, handler);
+    }
+
+    private void handleEntry(HttpExchange exchange, EndpointStats stats, long start) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, stats, start, 405, error("Method not allowed"));
+            return;
+        }
+        Map<String, String> body = readBody(exchange, stats, start);
+        if (body == null) {
+            return;
+        }
+        ParkingType parkingType;
+        try {
+            parkingType = ParkingType.valueOf(body.getOrDefault("parkingType", "").toUpperCase());
+        } catch (IllegalArgumentException e) {
+            respond(exchange, stats, start, 400, error("Unknown parking type"));
+            return;
+        }
+        submit(exchange, stats, start, GateRequest.entry(body.getOrDefault("gateId", DEFAULT_GATE), parkingType, body.get("vehicleRegNumber")));
+    }
+
+    private void handleExit(HttpExchange exchange, EndpointStats stats, long start) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, stats, start, 405, error("Method not allowed"));
+            return;
+        }
+        Map<String, String> body = readBody(exchange, stats, start);
+        if (body == null) {
+            return;
+        }
+        submit(exchange, stats, start, GateRequest.exit(body.getOrDefault("gateId", DEFAULT_GATE), body.get("vehicleRegNumber")));
+    }
+
+    private void handleBatch(HttpExchange exchange, EndpointStats stats, long start) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, stats, start, 405, error("Method not allowed"));
+            return;
+        }
+        String body = readBody(exchange, stats, start, MAX_BATCH_BODY_BYTES);
+        if (body == null) {
+            return;
+        }
+        List<Map<String, String>> items;
+        try {
+            items = Json.parseArray(body);
+        } catch (IllegalArgumentException e) {
+            respond(exchange, stats, start, 400, error("Malformed JSON: " + e.getMessage()));
+            return;
+        }
+        if (items.isEmpty() || items.size() > MAX_BATCH_SIZE) {
+            respond(exchange, stats, start, 400, error("A batch holds between 1 and " + MAX_BATCH_SIZE + " requests"));
+            return;
+        }
+        List<GateRequest> requests = new ArrayList<>(items.size());
+        for (Map<String, String> item : items) {
+            GateOperation operation;
+            ParkingType parkingType = null;
+            try {
+                operation = GateOperation.valueOf(item.getOrDefault("operation", "").toUpperCase());
+                if (item.containsKey("parkingType")) {
+                    parkingType = ParkingType.valueOf(item.get("parkingType").toUpperCase());
+                }
+            } catch (IllegalArgumentException e) {
+                respond(exchange, stats, start, 400, error("Unknown operation or parking type"));
+                return;
+            }
+            requests.add(new GateRequest(operation, item.getOrDefault("gateId", DEFAULT_GATE), parkingType, item.get("vehicleRegNumber")));
+        }
+        parkingEngine.submitAll(requests).whenComplete((results, error) -> {
+            if (error != null) {
+                logger.error("Unable to process a batch of " + requests.size() + " requests", error);
+                respond(exchange, stats, start, 500, error("Internal error"));
+                return;
+            }
+            List<Map<String, Object>> bodies = new ArrayList<>(results.size());
+            boolean rejected = true;
+            for (GateResult result : results) {
+                bodies.add(toMap(result));
+                rejected &= result.getStatus() == GateStatus.REJECTED;
+            }
+            // per item outcomes are in the body, the status code only tells whether the batch was processed
+            respond(exchange, stats, start, rejected ? 503 : 200, Collections.singletonMap("results", bodies));
+        });
+    }
+
+    private void handleFare(HttpExchange exchange, EndpointStats stats, long start) {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            respond(exchange, stats, start, 405, error("Method not allowed"));
+            return;
+        }
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        submit(exchange, stats, start, GateRequest.quote(query.getOrDefault("gateId", DEFAULT_GATE), query.get("vehicleRegNumber")));
+    }
+
+    private void handleOccupancy(HttpExchange exchange, EndpointStats stats, long start) {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            respond(exchange, stats, start, 405, error("Method not allowed"));
+            return;
+        }
+        Map<String, Object> occupancy = new LinkedHashMap<>();
+        for (ParkingType parkingType : ParkingType.values()) {
+            if (parkingType == ParkingType.UNKNOWN) {
+                continue;
+            }
+            int available = parkingSpotStore.getNbAvailableSlot(parkingType);
+            int spots = parkingSpotStore.getNbSlot(parkingType);
+            if (available < 0 || spots < 0) {
+                respond(exchange, stats, start, 500, error("Unable to count available spots"));
+                return;
+            }
+            Map<String, Object> counts = new LinkedHashMap<>();
+            counts.put("available", available);
+            counts.put("occupied", Math.max(0, spots - available));
+            counts.put("total", spots);
+            occupancy.put(parkingType.toString(), counts);
+        }
+        respond(exchange, stats, start, 200, occupancy);
+    }
+
+    private void handleStats(HttpExchange exchange, EndpointStats stats, long start) {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            respond(exchange, stats, start, 405, error("Method not allowed"));
+            return;
+        }
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        endpointStats.forEach((path, endpoint) -> endpoints.put(path, endpoint.toMap()));
+        Map<String, Object> engine = new LinkedHashMap<>();
+        engine.put("virtualThreads", parkingEngine.isOnVirtualThreads());
+        engine.put("activeWorkers", parkingEngine.getActiveWorkers());
+        engine.put("queuedRequests", parkingEngine.getQueuedRequests());
+        engine.put("rejectedRequests", parkingEngine.getRejectedRequests());
+        Map<String, Object> server = new LinkedHashMap<>();
+        server.put("activeThreads", executor.getActiveCount());
+        server.put("queuedRequests", getQueuedRequests());
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("endpoints", endpoints);
+        body.put("server", server);
+        body.put("engine", engine);
+        body.put("operations", Metrics.toMap());
+        if (connectionPool != null) {
+            Map<String, Object> pool = new LinkedHashMap<>();
+            pool.put("active", connectionPool.getActiveConnections());
+            pool.put("idle", connectionPool.getIdleConnections());
+            pool.put("waiting", connectionPool.getThreadsAwaitingConnection());
+            pool.put("borrows", connectionPool.getBorrowCount());
+            pool.put("avgWaitMillis", connectionPool.getAverageBorrowWaitMillis());
+            pool.put("maxWaitMillis", connectionPool.getMaxBorrowWaitMillis());
+            body.put("connectionPool", pool);
+        }
+        respond(exchange, stats, start, 200, body);
+    }
+
+    private void submit(HttpExchange exchange, EndpointStats stats, long start, GateRequest request) {
+        parkingEngine.submit(request).whenComplete((result, error) -> {
+            if (error != null) {
+                logger.error("Unable to process request from gate " + request.getGateId(), error);
+                respond(exchange, stats, start, 500, error("Internal error"));
+            } else {
+                respond(exchange, stats, start, statusCode(result), toMap(result));
+            }
+        });
+    }
+
+    private static int statusCode(GateResult result) {
+        switch (result.getStatus()) {
+            case OK: return result.getRequest().getOperation() == GateOperation.ENTRY ? 201 : 200;
+            case NO_SPOT_AVAILABLE:
+            case ALREADY_PARKED: return 409;
+            case UNKNOWN_VEHICLE: return 404;
+            case INVALID_REQUEST: return 400;
+            case REJECTED: return 503;
+            default: return 500;
+        }
+    }
+
+    private static Map<String, Object> toMap(GateResult result) {
+        GateRequest request = result.getRequest();
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("status", result.getStatus().toString());
+        body.put("gateId", request.getGateId());
+        body.put("vehicleRegNumber", request.getVehicleRegNumber());
+        Ticket ticket = result.getTicket();
+        if (ticket != null) {
+            body.put("parkingNumber", ticket.getParkingSpot().getId());
+            body.put("parkingType", ticket.getParkingSpot().getParkingType().toString());
+            body.put("inTime", toIsoString(ticket.getInTime()));
+            if (request.getOperation() == GateOperation.ENTRY) {
+                body.put("regularVehicle", result.isRegularVehicle());
+            } else {
+                body.put("outTime", toIsoString(ticket.getOutTime()));
+                body.put("price", ticket.getPrice());
+            }
+        }
+        return body;
+    }
+
+    private static String toIsoString(Date date) {
+        return date == null ? null : date.toInstant().toString();
+    }
+
+    private static Map<String, Object> error(String message) {
+        return Collections.singletonMap("error", message);
+    }
+
+    private Map<String, String> readBody(HttpExchange exchange, EndpointStats stats, long start) throws IOException {
+        String body = readBody(exchange, stats, start, MAX_BODY_BYTES);
+        if (body == null) {
+            return null;
+        }
+        try {
+            return Json.parseObject(body);
+        } catch (IllegalArgumentException e) {
+            respond(exchange, stats, start, 400, error("Malformed JSON: " + e.getMessage()));
+            return null;
+        }
+    }
+
+    private String readBody(HttpExchange exchange, EndpointStats stats, long start, int maxBytes) throws IOException {
+        byte[] bytes = exchange.getRequestBody().readNBytes(maxBytes + 1);
+        if (bytes.length > maxBytes) {
+            respond(exchange, stats, start, 413, error("Request body too large"));
+            return null;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        if (rawQuery == null) {
+            return parameters;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            int separator = parameter.indexOf('=');
+            if (separator > 0) {
+                parameters.put(URLDecoder.decode(parameter.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    private static void respond(HttpExchange exchange, EndpointStats stats, long start, int statusCode, Map<String, ?> body) {
+        byte[] bytes = Json.write(body).getBytes(StandardCharsets.UTF_8);
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            if (statusCode == 503) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+            }
+            // a known content length keeps the connection alive for the next request of the gate
+            exchange.sendResponseHeaders(statusCode, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        } catch (IOException e) {
+            logger.debug("Unable to send response", e);
+        } finally {
+            exchange.close();
+            stats.record(statusCode, System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.parkit.parkingsystem.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded JDBC connection pool shared by the DAOs of one database.
+ * Sizes and timeouts can be tuned with the {@code parkit.db.pool.*} system properties.
+ */
+public class ConnectionPool {
+
+    private static final Logger logger = LogManager.getLogger("ConnectionPool");
+
+    public static final int MIN_IDLE = Integer.getInteger("parkit.db.pool.minIdle", 2);
+    public static final int MAX_SIZE = Integer.getInteger("parkit.db.pool.maxSize", 10);
+    public static final long IDLE_TIMEOUT_MS = Long.getLong("parkit.db.pool.idleTimeoutMs", 60_000L);
+    public static final long CONNECTION_TIMEOUT_MS = Long.getLong("parkit.db.pool.connectionTimeoutMs", 30_000L);
+    public static final long VALIDATION_TIMEOUT_MS = Long.getLong("parkit.db.pool.validationTimeoutMs", 5_000L);
+    public static final long KEEPALIVE_MS = Long.getLong("parkit.db.pool.keepaliveMs", 0L);
+    public static final int STATEMENT_CACHE_SIZE = Integer.getInteger("parkit.db.pool.statementCacheSize", 64);
+
+    private final HikariDataSource dataSource;
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder borrowWaitNanos = new LongAdder();
+    private final AtomicLong maxBorrowWaitNanos = new AtomicLong();
+
+    public ConnectionPool(String jdbcUrl, String user, String password) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("parkit-" + Math.abs(jdbcUrl.hashCode()));
+        config.setJdbcUrl(jdbcUrl);
+        config.setUsername(user);
+        config.setPassword(password);
+        config.setMinimumIdle(MIN_IDLE);
+        config.setMaximumPoolSize(MAX_SIZE);
+        config.setIdleTimeout(IDLE_TIMEOUT_MS);
+        config.setConnectionTimeout(CONNECTION_TIMEOUT_MS);
+        config.setValidationTimeout(VALIDATION_TIMEOUT_MS);
+        config.setKeepaliveTime(KEEPALIVE_MS);
+        config.setRegisterMbeans(true);
+        if (jdbcUrl.startsWith("jdbc:mysql:")) {
+            // per-connection cache of the server side prepared statements (DBConstants queries)
+            config.addDataSourceProperty("cachePrepStmts", "true");
+            config.addDataSourceProperty("useServerPrepStmts", "true");
+            config.addDataSourceProperty("prepStmtCacheSize", String.valueOf(STATEMENT_CACHE_SIZE));
+            config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+            // executeBatch sends one multi-row insert / multi-statement update instead of one round trip per row
+            config.addDataSourceProperty("rewriteBatchedStatements", "true");
+        }
+        this.dataSource = new HikariDataSource(config);
+        logger.info("Connection pool started for {} (min idle {}, max size {})", jdbcUrl, MIN_IDLE, MAX_SIZE);
+    }
+
+    public Connection borrow() throws SQLException {
+        long start = System.nanoTime();
+        Connection con = dataSource.getConnection();
+        long waited = System.nanoTime() - start;
+        borrowCount.increment();
+        borrowWaitNanos.add(waited);
+        maxBorrowWaitNanos.accumulateAndGet(waited, Math::max);
+        return con;
+    }
+
+    public int getActiveConnections() {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        return pool == null ? 0 : pool.getActiveConnections();
+    }
+
+    public int getIdleConnections() {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        return pool == null ? 0 : pool.getIdleConnections();
+    }
+
+    public int getThreadsAwaitingConnection() {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        return pool == null ? 0 : pool.getThreadsAwaitingConnection();
+    }
+
+    public int getMaxSize() {
+        return dataSource.getMaximumPoolSize();
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.sum();
+    }
+
+    public double getAverageBorrowWaitMillis() {
+        long count = borrowCount.sum();
+        return count == 0 ? 0 : borrowWaitNanos.sum() / (count * 1_000_000d);
+    }
+
+    public double getMaxBorrowWaitMillis() {
+        return maxBorrowWaitNanos.get() / 1_000_000d;
+    }
+
+    public void close() {
+        logger.info("Closing connection pool: {}", this);
+        dataSource.close();
+    }
+
+    @Override
+    public String toString() {
+        return "active=" + getActiveConnections()
+                + ", idle=" + getIdleConnections()
+                + ", waiting=" + getThreadsAwaitingConnection()
+                + ", borrows=" + getBorrowCount()
+                + ", avgWaitMs=" + getAverageBorrowWaitMillis()
+                + ", maxWaitMs=" + getMaxBorrowWaitMillis();
+    }
+}
@@ -4,23 +4,69 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.sql.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DataBaseConfig {
 
     private static final Logger logger = LogManager.getLogger("DataBaseConfig");
 
+    private static final Map<String, ConnectionPool> pools = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<Map<String, Connection>> boundConnections = ThreadLocal.withInitial(HashMap::new);
+
     public Connection getConnection() throws ClassNotFoundException, SQLException {
-        logger.info("Create DB connection");
-        Class.forName("com.mysql.cj.jdbc.Driver");
-        return DriverManager.getConnection(
-                "jdbc:mysql://localhost:3306/prod?serverTimezone=UTC&enabledTLSProtocols=TLSv1.2","root","root");
+        Connection bound = boundConnections.get().get(getJdbcUrl());
+        if(bound != null){
+            return bound;
+        }
+        logger.debug("Borrow DB connection");
+        return getConnectionPool().borrow();
+    }
+
+    /**
+     * Makes every getConnection() of the current thread return the given connection until it is unbound,
+     * so that several DAO calls share one transaction.
+     */
+    public void bindConnection(Connection con) {
+        boundConnections.get().put(getJdbcUrl(), con);
+    }
+
+    public void unbindConnection() {
+        boundConnections.get().remove(getJdbcUrl());
+    }
+
+    public boolean isBound(Connection con) {
+        return con != null && con == boundConnections.get().get(getJdbcUrl());
+    }
+
+    public ConnectionPool getConnectionPool() {
+        return pools.computeIfAbsent(getJdbcUrl(), url -> new ConnectionPool(url, getUser(), getPassword()));
+    }
+
+    protected String getJdbcUrl() {
+        return "jdbc:mysql://localhost:3306/prod?serverTimezone=UTC&enabledTLSProtocols=TLSv1.2";
+    }
+
+    protected String getUser() {
+        return "root";
+    }
+
+    protected String getPassword() {
+        return "root";
+    }
+
+    public static void shutdown() {
+        pools.values().forEach(ConnectionPool::close);
+        pools.clear();
     }
 
     public void closeConnection(Connection con){
-        if(con!=null){
+        if(con!=null && !isBound(con)){
             try {
                 con.close();
-                logger.info("Closing DB connection");
+                logger.debug("Returning DB connection to pool");
             } catch (SQLException e) {
                 logger.error("Error while closing connection",e);
             }
@@ -31,7 +77,7 @@ public class DataBaseConfig {
         if(ps!=null){
             try {
                 ps.close();
-                logger.info("Closing Prepared Statement");
+                logger.debug("Closing Prepared Statement");
             } catch (SQLException e) {
                 logger.error("Error while closing prepared statement",e);
             }
@@ -42,7 +88,7 @@ public class DataBaseConfig {
         if(rs!=null){
             try {
                 rs.close();
-                logger.info("Closing Result Set");
+                logger.debug("Closing Result Set");
             } catch (SQLException e) {
                 logger.error("Error while closing result set",e);
             }
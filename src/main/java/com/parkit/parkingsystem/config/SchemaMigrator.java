@@ -0,0 +1,147 @@
+package com.parkit.parkingsystem.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies the versioned scripts of {@code db/migration} that are not yet recorded in the schema_version table.
+ * New scripts must be appended to {@link #MIGRATIONS}, never edited once released.
+ * <p>
+ * MySQL commits each DDL statement on its own, so a script failing halfway cannot be rolled back. The number of
+ * statements applied is recorded in schema_version_progress after each one, and the next run resumes the script
+ * after them instead of failing on the table or index already created.
+ */
+public class SchemaMigrator {
+
+    private static final Logger logger = LogManager.getLogger("SchemaMigrator");
+
+    private static final String[] MIGRATIONS = {
+            "V1__create_tables.sql",
+            "V2__add_lookup_indexes.sql",
+            "V3__add_open_ticket_column.sql",
+            "V4__add_ticket_history.sql",
+            "V5__add_journal_checkpoint.sql",
+            "V6__unique_open_ticket.sql"
+    };
+
+    private static final String CREATE_SCHEMA_VERSION = "create table if not exists schema_version(VERSION int PRIMARY KEY, SCRIPT varchar(100) NOT NULL, INSTALLED_ON DATETIME NOT NULL)";
+    private static final String GET_SCHEMA_VERSION = "select max(VERSION) from schema_version";
+    private static final String SAVE_SCHEMA_VERSION = "insert into schema_version(VERSION, SCRIPT, INSTALLED_ON) values(?,?,?)";
+    private static final String CREATE_SCHEMA_VERSION_PROGRESS = "create table if not exists schema_version_progress(VERSION int PRIMARY KEY, STATEMENTS int NOT NULL)";
+    private static final String GET_SCHEMA_VERSION_PROGRESS = "select STATEMENTS from schema_version_progress where VERSION = ?";
+    private static final String SAVE_SCHEMA_VERSION_PROGRESS = "insert into schema_version_progress(VERSION, STATEMENTS) values(?,?) on duplicate key update STATEMENTS = values(STATEMENTS)";
+
+    private final DataBaseConfig dataBaseConfig;
+
+    public SchemaMigrator(DataBaseConfig dataBaseConfig) {
+        this.dataBaseConfig = dataBaseConfig;
+    }
+
+    /**
+     * @return the number of scripts applied
+     */
+    public int migrate() throws ClassNotFoundException, SQLException, IOException {
+        Connection con = null;
+        int applied = 0;
+        try {
+            con = dataBaseConfig.getConnection();
+            try (Statement statement = con.createStatement()) {
+                statement.execute(CREATE_SCHEMA_VERSION);
+                statement.execute(CREATE_SCHEMA_VERSION_PROGRESS);
+            }
+            int currentVersion = getCurrentVersion(con);
+            for (String script : MIGRATIONS) {
+                int version = getVersion(script);
+                if (version <= currentVersion) {
+                    continue;
+                }
+                List<String> statements = readStatements(script);
+                int done = getProgress(con, version);
+                if (done > 0) {
+                    logger.info("Resuming schema migration {} after statement {} of {}", script, done, statements.size());
+                } else {
+                    logger.info("Applying schema migration {}", script);
+                }
+                try (Statement statement = con.createStatement()) {
+                    for (int i = done; i < statements.size(); i++) {
+                        statement.execute(statements.get(i));
+                        saveProgress(con, version, i + 1);
+                    }
+                }
+                try (PreparedStatement ps = con.prepareStatement(SAVE_SCHEMA_VERSION)) {
+                    ps.setInt(1, version);
+                    ps.setString(2, script);
+                    ps.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+                    ps.execute();
+                }
+                applied++;
+            }
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        logger.info("Database schema is up to date ({} migration(s) applied)", applied);
+        return applied;
+    }
+
+    private int getCurrentVersion(Connection con) throws SQLException {
+        try (Statement statement = con.createStatement(); ResultSet rs = statement.executeQuery(GET_SCHEMA_VERSION)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private int getProgress(Connection con, int version) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(GET_SCHEMA_VERSION_PROGRESS)) {
+            ps.setInt(1, version);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    private void saveProgress(Connection con, int version, int statements) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(SAVE_SCHEMA_VERSION_PROGRESS)) {
+            ps.setInt(1, version);
+            ps.setInt(2, statements);
+            ps.execute();
+        }
+    }
+
+    private static int getVersion(String script) {
+        return Integer.parseInt(script.substring(1, script.indexOf("__")));
+    }
+
+    private static List<String> readStatements(String script) throws IOException {
+        String content;
+        try (InputStream in = SchemaMigrator.class.getResourceAsStream("/db/migration/" + script)) {
+            if (in == null) {
+                throw new IOException("Migration script not found: " + script);
+            }
+            content = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        StringBuilder withoutComments = new StringBuilder();
+        for (String line : content.split("\n")) {
+            if (!line.trim().startsWith("--")) {
+                withoutComments.append(line).append('\n');
+            }
+        }
+        List<String> statements = new ArrayList<>();
+        for (String sql : withoutComments.toString().split(";")) {
+            if (!sql.trim().isEmpty()) {
+                statements.add(sql.trim());
+            }
+        }
+        return statements;
+    }
+}
@@ -3,10 +3,42 @@ package com.parkit.parkingsystem.constants;
 public class DBConstants {
 
     public static final String GET_NEXT_PARKING_SPOT = "select min(PARKING_NUMBER) from parking where AVAILABLE = true and TYPE = ?";
+    public static final String GET_AVAILABLE_PARKING_SPOTS = "select PARKING_NUMBER from parking where AVAILABLE = true and TYPE = ? order by PARKING_NUMBER limit ?";
+    public static final String GET_PARKING_SPOTS = "select PARKING_NUMBER, AVAILABLE, TYPE from parking";
     public static final String UPDATE_PARKING_SPOT = "update parking set available = ? where PARKING_NUMBER = ?";
+    public static final String COUNT_AVAILABLE_PARKING_SPOTS = "select count(*) from parking where AVAILABLE = true and TYPE = ?";
+    public static final String COUNT_PARKING_SPOTS = "select count(*) from parking where TYPE = ?";
+    public static final String COUNT_PARKING_SPOTS_BY_TYPE = "select TYPE, count(*), sum(case when AVAILABLE then 1 else 0 end) from parking group by TYPE";
+    public static final String CLAIM_PARKING_SPOT = "update parking set AVAILABLE = false where PARKING_NUMBER = ? and AVAILABLE = true";
 
     public static final String SAVE_TICKET = "insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?)";
-    public static final String UPDATE_TICKET = "update ticket set PRICE=?, OUT_TIME=? where ID=?";
+    // only an open ticket can be closed, so that a repeated exit does not free the spot of the next vehicle
+    public static final String UPDATE_TICKET = "update ticket set PRICE=?, OUT_TIME=? where ID=? and OUT_TIME is null";
     public static final String GET_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t,parking p where p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=? order by t.IN_TIME DESC limit 1"; //l'ordre d'affichage par défaut est ascendant, il faut qu'il soit descendant pour avoir la date la plus récente.
-    public static final String GET_NB_TICKET = "select count(*) from ticket where VEHICLE_REG_NUMBER=?";
+    public static final String GET_LAST_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE, (select count(*) from ticket c where c.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER) + coalesce((select v.NB_ARCHIVED_TICKET from vehicle_visit v where v.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER), 0) from ticket t,parking p where p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=? order by t.IN_TIME DESC limit 1";
+    // %s is replaced by one placeholder per vehicle, in both places; vehicles whose tickets are all archived come without ticket
+    public static final String GET_LAST_TICKETS = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE, l.VEHICLE_REG_NUMBER, l.NB_TICKET + coalesce(v.NB_ARCHIVED_TICKET, 0) from (select VEHICLE_REG_NUMBER, max(ID) ID, count(*) NB_TICKET from ticket where VEHICLE_REG_NUMBER in (%s) group by VEHICLE_REG_NUMBER) l join ticket t on t.ID = l.ID join parking p on p.PARKING_NUMBER = t.PARKING_NUMBER left join vehicle_visit v on v.VEHICLE_REG_NUMBER = l.VEHICLE_REG_NUMBER"
+            + " union all select null, null, null, null, null, null, v.VEHICLE_REG_NUMBER, v.NB_ARCHIVED_TICKET from vehicle_visit v where v.VEHICLE_REG_NUMBER in (%s) and not exists(select 1 from ticket t where t.VEHICLE_REG_NUMBER = v.VEHICLE_REG_NUMBER)";
+    public static final String GET_OPEN_TICKETS = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE, t.VEHICLE_REG_NUMBER from ticket t,parking p where p.parking_number = t.parking_number and t.OPEN_VEHICLE_REG_NUMBER is not null";
+    public static final String GET_NB_TICKET = "select (select count(*) from ticket where VEHICLE_REG_NUMBER=?) + coalesce((select NB_ARCHIVED_TICKET from vehicle_visit where VEHICLE_REG_NUMBER=?), 0)";
+    public static final String HAS_TICKET = "select exists(select 1 from ticket where VEHICLE_REG_NUMBER=?) or exists(select 1 from vehicle_visit where VEHICLE_REG_NUMBER=?)";
+
+    public static final String SAVE_TICKET_WITH_ID = "insert into ticket(ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?,?)";
+    public static final String DELETE_TICKET = "delete from ticket where ID=?";
+    public static final String REPLACE_TICKET_PRICE_AND_OUT_TIME = "update ticket set PRICE=?, OUT_TIME=? where ID=?";
+    public static final String GET_LATEST_TICKETS = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE, t.VEHICLE_REG_NUMBER, l.NB_TICKET + coalesce(v.NB_ARCHIVED_TICKET, 0) from (select VEHICLE_REG_NUMBER, max(ID) ID, count(*) NB_TICKET from ticket group by VEHICLE_REG_NUMBER) l join ticket t on t.ID = l.ID join parking p on p.PARKING_NUMBER = t.PARKING_NUMBER left join vehicle_visit v on v.VEHICLE_REG_NUMBER = l.VEHICLE_REG_NUMBER";
+    public static final String GET_ARCHIVED_VISITS = "select v.VEHICLE_REG_NUMBER, v.NB_ARCHIVED_TICKET from vehicle_visit v where not exists(select 1 from ticket t where t.VEHICLE_REG_NUMBER = v.VEHICLE_REG_NUMBER)";
+    public static final String GET_MAX_TICKET_ID = "select greatest((select coalesce(max(ID), 0) from ticket), (select coalesce(max(ID), 0) from ticket_history))";
+    public static final String GET_JOURNAL_CHECKPOINT = "select LSN from journal_checkpoint where ID = 1";
+    public static final String UPDATE_JOURNAL_CHECKPOINT = "update journal_checkpoint set LSN = ? where ID = 1 and LSN < ?";
+
+    public static final String GET_ARCHIVE_BATCH = "select min(ID), max(ID) from (select ID from ticket where OUT_TIME is not null and OUT_TIME < ? order by ID limit ?) b";
+    public static final String ARCHIVE_TICKETS = "insert into ticket_history(ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) select ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME from ticket where ID between ? and ? and OUT_TIME is not null and OUT_TIME < ?";
+    public static final String COUNT_ARCHIVED_TICKETS = "insert into vehicle_visit(VEHICLE_REG_NUMBER, NB_ARCHIVED_TICKET) select VEHICLE_REG_NUMBER, count(*) from ticket where ID between ? and ? and OUT_TIME is not null and OUT_TIME < ? group by VEHICLE_REG_NUMBER on duplicate key update NB_ARCHIVED_TICKET = NB_ARCHIVED_TICKET + values(NB_ARCHIVED_TICKET)";
+    public static final String DELETE_ARCHIVED_TICKETS = "delete from ticket where ID between ? and ? and OUT_TIME is not null and OUT_TIME < ?";
+
+    // the tickets are filtered on their out time first, then the visit number of each one counts the earlier tickets
+    // of the vehicle through its (VEHICLE_REG_NUMBER, IN_TIME) index, whatever their out time
+    public static final String GET_CLOSED_TICKETS_WITH_VISIT = "select t.ID, t.VEHICLE_REG_NUMBER, p.TYPE, t.IN_TIME, t.OUT_TIME, t.PRICE, (select count(*) from ticket e where e.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER and (e.IN_TIME < t.IN_TIME or e.IN_TIME = t.IN_TIME and e.ID <= t.ID)) + coalesce(v.NB_ARCHIVED_TICKET, 0) from ticket t join parking p on p.PARKING_NUMBER = t.PARKING_NUMBER left join vehicle_visit v on v.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER where t.OUT_TIME is not null and t.OUT_TIME >= ? and t.OUT_TIME < ?";
+    public static final String UPDATE_TICKET_PRICE = "update ticket set PRICE=? where ID=?";
 }
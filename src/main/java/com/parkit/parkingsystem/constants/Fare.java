@@ -1,6 +1,14 @@
 package com.parkit.parkingsystem.constants;
 
+/**
+ * Rules of the standard tariff, used unless a tariff file is configured.
+ */
 public class Fare {
     public static final double BIKE_RATE_PER_HOUR = 1.0;
     public static final double CAR_RATE_PER_HOUR = 1.5;
+    public static final long BIKE_RATE_CENTS_PER_HOUR = 100;
+    public static final long CAR_RATE_CENTS_PER_HOUR = 150;
+    public static final int FREE_MINUTES = 30;
+    public static final int LOYALTY_VISITS = 2;
+    public static final int LOYALTY_PERCENT = 95;
 }
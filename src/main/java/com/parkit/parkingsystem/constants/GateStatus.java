@@ -0,0 +1,11 @@
+package com.parkit.parkingsystem.constants;
+
+public enum GateStatus {
+    OK,
+    NO_SPOT_AVAILABLE,
+    UNKNOWN_VEHICLE,
+    ALREADY_PARKED,
+    INVALID_REQUEST,
+    REJECTED,
+    ERROR
+}
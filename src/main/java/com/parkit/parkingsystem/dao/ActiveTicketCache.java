@@ -0,0 +1,95 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.model.LastTicket;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tickets of the vehicles currently parked, keyed by registration number, with the number of tickets of the vehicle
+ * when it is known: it cannot change while the vehicle has an open ticket.
+ * Always hands out copies so callers can modify them without changing the cached ticket.
+ */
+public class ActiveTicketCache {
+
+    private final Map<String, LastTicket> openTickets = new ConcurrentHashMap<>();
+
+    public Ticket get(String vehicleRegNumber) {
+        LastTicket lastTicket = openTickets.get(vehicleRegNumber);
+        return lastTicket == null ? null : copy(lastTicket.getTicket());
+    }
+
+    /**
+     * @return the open ticket of the vehicle with its number of tickets, -1 if unknown, or null if it is not parked
+     */
+    public LastTicket getLastTicket(String vehicleRegNumber) {
+        LastTicket lastTicket = openTickets.get(vehicleRegNumber);
+        return lastTicket == null ? null : new LastTicket(copy(lastTicket.getTicket()), lastTicket.getNbTicket());
+    }
+
+    public void put(Ticket ticket) {
+        put(ticket, -1);
+    }
+
+    public void put(Ticket ticket, int nbTicket) {
+        openTickets.put(ticket.getVehicleRegNumber(), new LastTicket(copy(ticket), nbTicket));
+    }
+
+    public void setNbTicket(String vehicleRegNumber, int ticketId, int nbTicket) {
+        openTickets.computeIfPresent(vehicleRegNumber, (key, lastTicket) -> lastTicket.getTicket().getId() == ticketId
+                ? new LastTicket(lastTicket.getTicket(), nbTicket) : lastTicket);
+    }
+
+    public void remove(String vehicleRegNumber, int ticketId) {
+        openTickets.computeIfPresent(vehicleRegNumber, (key, lastTicket) -> lastTicket.getTicket().getId() == ticketId ? null : lastTicket);
+    }
+
+    public int size() {
+        return openTickets.size();
+    }
+
+    /**
+     * Compares the cache with the open tickets found in the database.
+     * When repair is set, cached tickets that are not open in the database any more are evicted:
+     * a missing entry is always safe since lookups then fall back to the database.
+     *
+     * @return the number of vehicles for which the cache and the database disagree
+     */
+    public int reconcile(Map<String, Ticket> openTicketsInDataBase, boolean repair) {
+        int drift = 0;
+        for (Ticket ticket : openTicketsInDataBase.values()) {
+            LastTicket lastTicket = openTickets.get(ticket.getVehicleRegNumber());
+            Ticket cached = lastTicket == null ? null : lastTicket.getTicket();
+            if (cached == null || cached.getId() != ticket.getId()) {
+                drift++;
+                if (cached != null && repair) {
+                    remove(cached.getVehicleRegNumber(), cached.getId());
+                }
+            }
+        }
+        for (LastTicket lastTicket : openTickets.values()) {
+            Ticket cached = lastTicket.getTicket();
+            if (!openTicketsInDataBase.containsKey(cached.getVehicleRegNumber())) {
+                drift++;
+                if (repair) {
+                    remove(cached.getVehicleRegNumber(), cached.getId());
+                }
+            }
+        }
+        return drift;
+    }
+
+    static Ticket copy(Ticket ticket) {
+        Ticket copy = new Ticket();
+        copy.setId(ticket.getId());
+        ParkingSpot parkingSpot = ticket.getParkingSpot();
+        copy.setParkingSpot(new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(), parkingSpot.isAvailable()));
+        copy.setVehicleRegNumber(ticket.getVehicleRegNumber());
+        copy.setPrice(ticket.getPrice());
+        copy.setInTimeMillis(ticket.getInTimeMillis());
+        copy.setOutTimeMillis(ticket.getOutTimeMillis());
+        return copy;
+    }
+}
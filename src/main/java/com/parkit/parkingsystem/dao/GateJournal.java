@@ -0,0 +1,356 @@
+package com.parkit.parkingsystem.dao;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the gate writes, in segment files named after their first event.
+ * The events of a unit of work are kept aside until it commits, then appended in memory,
+ * and a single flusher thread writes and fsyncs
+ * everything appended since its last pass (group commit): one fsync covers all the gates that committed meanwhile.
+ * Durable events are handed to a listener, which applies them to the database.
+ * <p>
+ * Each record is its length, a CRC32 and the event, so a record torn by a crash is detected and cut off on the next start.
+ */
+public class GateJournal implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("GateJournal");
+
+    public static final long SEGMENT_BYTES = Long.getLong("parkit.journal.segmentBytes", 64L * 1024 * 1024);
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int RECORD_HEADER = 8;
+
+    private final Path directory;
+    private final Consumer<List<JournalEvent>> durableListener;
+    private final Thread flusher;
+
+    // held by a gate while it writes, and by a unit of work from its first write until it commits or rolls back
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ThreadLocal<List<JournalEvent>> unitOfWorkEvents = new ThreadLocal<>();
+
+    // guarded by this
+    private final ByteArrayOutputStream eventBytes = new ByteArrayOutputStream();
+    private final DataOutputStream eventOut = new DataOutputStream(eventBytes);
+    private final CRC32 crc = new CRC32();
+    private ByteArrayOutputStream pendingBytes = new ByteArrayOutputStream();
+    private List<JournalEvent> pendingEvents = new ArrayList<>();
+    private volatile long lastLsn;
+    private boolean closed;
+
+    // guarded by durableLock
+    private final Object durableLock = new Object();
+    private long durableLsn;
+    private IOException failure;
+
+    // only used by the flusher
+    private FileChannel segment;
+
+    private GateJournal(Path directory, long lastLsn, Consumer<List<JournalEvent>> durableListener) throws IOException {
+        this.directory = directory;
+        this.durableListener = durableListener;
+        this.lastLsn = lastLsn;
+        this.durableLsn = lastLsn;
+        this.segment = openSegment(lastLsn + 1);
+        this.flusher = new Thread(this::flushLoop, "parkit-journal");
+        flusher.setDaemon(true);
+    }
+
+    /**
+     * Opens a new segment after the given event and starts the flusher.
+     *
+     * @param lastLsn the last event of the journal, see {@link #readEvents}
+     */
+    public static GateJournal open(Path directory, long lastLsn, Consumer<List<JournalEvent>> durableListener) throws IOException {
+        Files.createDirectories(directory);
+        GateJournal journal = new GateJournal(directory, lastLsn, durableListener);
+        journal.flusher.start();
+        logger.info("Gate journal opened in {} after event {}", directory, lastLsn);
+        return journal;
+    }
+
+    /**
+     * Reads the events after the given one from the segments of the directory, in journal order.
+     * A record torn at the end of the last segment is cut off; anywhere else it means the journal is corrupted.
+     */
+    public static List<JournalEvent> readEvents(Path directory, long afterLsn) throws IOException {
+        List<JournalEvent> events = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return events;
+        }
+        List<Path> segments = listSegments(directory);
+        for (int i = 0; i < segments.size(); i++) {
+            Path segmentFile = segments.get(i);
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segmentFile));
+            CRC32 checksum = new CRC32();
+            while (buffer.remaining() > 0) {
+                int position = buffer.position();
+                boolean torn = buffer.remaining() < RECORD_HEADER;
+                int length = torn ? 0 : buffer.getInt();
+                long expectedCrc = torn ? 0 : buffer.getInt() & 0xFFFFFFFFL;
+                torn = torn || length <= 0 || buffer.remaining() < length;
+                if (!torn) {
+                    checksum.reset();
+                    checksum.update(buffer.array(), buffer.position(), length);
+                    torn = checksum.getValue() != expectedCrc;
+                }
+                if (torn) {
+                    if (i < segments.size() - 1) {
+                        throw new IOException("Corrupted journal segment " + segmentFile + " at " + position);
+                    }
+                    logger.warn("Cutting off a torn record at the end of {} at {}", segmentFile, position);
+                    try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.WRITE)) {
+                        channel.truncate(position);
+                        channel.force(true);
+                    }
+                    break;
+                }
+                JournalEvent event = JournalEvent.readFrom(
+                        new DataInputStream(new ByteArrayInputStream(buffer.array(), buffer.position(), length)));
+                buffer.position(buffer.position() + length);
+                if (event.getLsn() > afterLsn) {
+                    events.add(event);
+                }
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Starts a write of the calling gate, ended by {@link #endWrite()} once the store is written and its events
+     * are recorded. The first write of a unit of work keeps the journal locked until the unit of work commits,
+     * when its events are appended, or rolls back, when they are dropped. So the journal order is the order in
+     * which the gates see the writes, and a write rolled back never reaches the journal nor the database.
+     */
+    public void beginWrite() {
+        writeLock.lock();
+        if (UnitOfWork.inProgress() && unitOfWorkEvents.get() == null) {
+            writeLock.lock();
+            unitOfWorkEvents.set(new ArrayList<>());
+            // registered before the store registers its undo, which therefore runs while the journal is still locked
+            UnitOfWork.afterRollback(this::dropEvents);
+            UnitOfWork.beforeCommit(this::appendEvents);
+        }
+    }
+
+    /**
+     * Records an event of the current write: kept until the unit of work commits, or appended right away without one.
+     */
+    public void record(JournalEvent event) {
+        if (!writeLock.isHeldByCurrentThread()) {
+            throw new IllegalStateException("Journal events can only be recorded between beginWrite and endWrite");
+        }
+        List<JournalEvent> events = unitOfWorkEvents.get();
+        if (events != null) {
+            events.add(event);
+            return;
+        }
+        synchronized (this) {
+            append(event);
+        }
+    }
+
+    /**
+     * Ends a write. Without a unit of work, waits until its events are on disk.
+     */
+    public void endWrite() {
+        boolean unitOfWork = unitOfWorkEvents.get() != null;
+        long lsn = lastLsn;
+        writeLock.unlock();
+        if (!unitOfWork) {
+            awaitDurable(lsn);
+        }
+    }
+
+    private void appendEvents() {
+        List<JournalEvent> events = unitOfWorkEvents.get();
+        unitOfWorkEvents.remove();
+        long lsn;
+        try {
+            synchronized (this) {
+                events.forEach(this::append);
+                lsn = lastLsn;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        awaitDurable(lsn);
+    }
+
+    private void dropEvents() {
+        if (unitOfWorkEvents.get() != null) {
+            unitOfWorkEvents.remove();
+            writeLock.unlock();
+        }
+    }
+
+    private void append(JournalEvent event) {
+        if (closed) {
+            throw new IllegalStateException("The gate journal is closed");
+        }
+        event.setLsn(lastLsn + 1);
+        try {
+            eventBytes.reset();
+            event.writeTo(eventOut);
+            crc.reset();
+            crc.update(eventBytes.toByteArray());
+            DataOutputStream out = new DataOutputStream(pendingBytes);
+            out.writeInt(eventBytes.size());
+            out.writeInt((int) crc.getValue());
+            eventBytes.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        lastLsn = event.getLsn();
+        pendingEvents.add(event);
+        notifyAll();
+    }
+
+    public void awaitDurable(long lsn) {
+        synchronized (durableLock) {
+            while (durableLsn < lsn) {
+                if (failure != null) {
+                    throw new UncheckedIOException("The gate journal can not be written", failure);
+                }
+                try {
+                    durableLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new UncheckedIOException(new InterruptedIOException("Interrupted while waiting for the gate journal"));
+                }
+            }
+        }
+    }
+
+    public long getLastLsn() {
+        return lastLsn;
+    }
+
+    /**
+     * Deletes the segments whose events are all applied to the database.
+     * The current segment is never deleted: a segment goes only once the next one starts at or before the applied event.
+     */
+    public static void deleteAppliedSegments(Path directory, long appliedLsn) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        List<Path> segments = listSegments(directory);
+        for (int i = 0; i < segments.size() - 1; i++) {
+            if (firstLsn(segments.get(i + 1)) - 1 > appliedLsn) {
+                break;
+            }
+            Files.delete(segments.get(i));
+        }
+    }
+
+    /**
+     * Writes the pending events and stops the flusher.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+            segment.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            logger.error("Error closing the gate journal", e);
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            ByteArrayOutputStream bytes;
+            List<JournalEvent> events;
+            long upTo;
+            synchronized (this) {
+                while (pendingEvents.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        closed = true;
+                    }
+                }
+                if (pendingEvents.isEmpty()) {
+                    return;
+                }
+                bytes = pendingBytes;
+                events = pendingEvents;
+                upTo = lastLsn;
+                pendingBytes = new ByteArrayOutputStream(bytes.size());
+                pendingEvents = new ArrayList<>();
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+                while (buffer.hasRemaining()) {
+                    segment.write(buffer);
+                }
+                segment.force(false);
+                if (segment.size() >= SEGMENT_BYTES) {
+                    segment.close();
+                    segment = openSegment(upTo + 1);
+                }
+            } catch (IOException e) {
+                logger.error("Error writing the gate journal, gates can not commit any more", e);
+                synchronized (durableLock) {
+                    failure = e;
+                    durableLock.notifyAll();
+                }
+                return;
+            }
+            synchronized (durableLock) {
+                durableLsn = upTo;
+                durableLock.notifyAll();
+            }
+            try {
+                durableListener.accept(events);
+            } catch (RuntimeException e) {
+                logger.error("Error handing journal events over", e);
+            }
+        }
+    }
+
+    private FileChannel openSegment(long firstLsn) throws IOException {
+        Path segmentFile = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstLsn, SEGMENT_SUFFIX));
+        return FileChannel.open(segmentFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static List<Path> listSegments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static long firstLsn(Path segmentFile) {
+        String name = segmentFile.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
@@ -0,0 +1,148 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parking spots kept in memory only, for small sites and load tests that run without a database.
+ * Availability lives in a {@link ParkingSpotIndex} so concurrent gates claim spots with compare-and-set,
+ * and writes made inside a {@link UnitOfWork} are reverted if it is rolled back.
+ * Subclasses can persist each change of availability, see {@link #availabilityChanged}.
+ */
+public class InMemoryParkingSpotStore implements ParkingSpotStore {
+
+    public static final String DEFAULT_LAYOUT = "CAR:3,BIKE:2";
+
+    private final ParkingSpotIndex spotIndex;
+    private final ParkingType[] parkingTypes;
+
+    public InMemoryParkingSpotStore(List<ParkingSpot> parkingSpots) {
+        int maxParkingNumber = 0;
+        for (ParkingSpot parkingSpot : parkingSpots) {
+            maxParkingNumber = Math.max(maxParkingNumber, parkingSpot.getId());
+        }
+        this.spotIndex = new ParkingSpotIndex(maxParkingNumber);
+        this.parkingTypes = new ParkingType[maxParkingNumber + 1];
+        for (ParkingSpot parkingSpot : parkingSpots) {
+            parkingTypes[parkingSpot.getId()] = parkingSpot.getParkingType();
+            spotIndex.addSpot(parkingSpot.getId(), parkingSpot.getParkingType(), parkingSpot.isAvailable());
+        }
+    }
+
+    /**
+     * Creates available spots numbered from 1 following a layout such as {@code CAR:3,BIKE:2},
+     * which is the parking created by the database scripts.
+     */
+    public static InMemoryParkingSpotStore withLayout(String layout) {
+        return new InMemoryParkingSpotStore(parseLayout(layout));
+    }
+
+    static List<ParkingSpot> parseLayout(String layout) {
+        List<ParkingSpot> parkingSpots = new ArrayList<>();
+        for (String entry : layout.split(",")) {
+            String[] typeAndCount = entry.trim().split(":");
+            if (typeAndCount.length != 2) {
+                throw new IllegalArgumentException("Invalid parking layout entry: " + entry);
+            }
+            ParkingType parkingType = ParkingType.valueOf(typeAndCount[0].trim());
+            int count = Integer.parseInt(typeAndCount[1].trim());
+            for (int i = 0; i < count; i++) {
+                parkingSpots.add(new ParkingSpot(parkingSpots.size() + 1, parkingType, true));
+            }
+        }
+        return parkingSpots;
+    }
+
+    @Override
+    public int getNextAvailableSlot(ParkingType parkingType) {
+        return spotIndex.getLowestAvailable(parkingType);
+    }
+
+    @Override
+    public int getNbAvailableSlot(ParkingType parkingType) {
+        return spotIndex.countAvailable(parkingType);
+    }
+
+    @Override
+    public int getNbSlot(ParkingType parkingType) {
+        return spotIndex.countSpots(parkingType);
+    }
+
+    @Override
+    public int claimNextAvailableSlot(ParkingType parkingType) {
+        int parkingNumber = spotIndex.claimLowestAvailable(parkingType);
+        if (parkingNumber <= 0) {
+            return -1;
+        }
+        availabilityChanged(parkingNumber, parkingType);
+        UnitOfWork.afterRollback(() -> setAvailable(parkingNumber, parkingType, true));
+        return parkingNumber;
+    }
+
+    @Override
+    public List<Integer> claimAvailableSlots(ParkingType parkingType, int count) {
+        List<Integer> claimedNumbers = new ArrayList<>(count);
+        while (claimedNumbers.size() < count) {
+            int parkingNumber = claimNextAvailableSlot(parkingType);
+            if (parkingNumber <= 0) {
+                break;
+            }
+            claimedNumbers.add(parkingNumber);
+        }
+        return claimedNumbers;
+    }
+
+    @Override
+    public boolean updateParking(ParkingSpot parkingSpot) {
+        int parkingNumber = parkingSpot.getId();
+        if (parkingNumber <= 0 || parkingNumber >= parkingTypes.length
+                || parkingTypes[parkingNumber] != parkingSpot.getParkingType()) {
+            return false;
+        }
+        ParkingType parkingType = parkingSpot.getParkingType();
+        boolean available = parkingSpot.isAvailable();
+        if (setAvailable(parkingNumber, parkingType, available)) {
+            UnitOfWork.afterRollback(() -> setAvailable(parkingNumber, parkingType, !available));
+        }
+        return true;
+    }
+
+    @Override
+    public boolean updateParkings(List<ParkingSpot> parkingSpots) {
+        boolean updated = true;
+        for (ParkingSpot parkingSpot : parkingSpots) {
+            updated &= updateParking(parkingSpot);
+        }
+        return updated;
+    }
+
+    /**
+     * Called after every change of availability of a spot, including the ones undone on rollback.
+     */
+    protected void availabilityChanged(int parkingNumber, ParkingType parkingType) {
+    }
+
+    protected boolean isAvailable(int parkingNumber) {
+        ParkingType parkingType = getParkingType(parkingNumber);
+        return parkingType != null && spotIndex.isAvailable(parkingNumber, parkingType);
+    }
+
+    protected ParkingType getParkingType(int parkingNumber) {
+        return parkingNumber > 0 && parkingNumber < parkingTypes.length ? parkingTypes[parkingNumber] : null;
+    }
+
+    protected int getMaxParkingNumber() {
+        return parkingTypes.length - 1;
+    }
+
+    private boolean setAvailable(int parkingNumber, ParkingType parkingType, boolean available) {
+        if (spotIndex.setAvailable(parkingNumber, parkingType, available)) {
+            availabilityChanged(parkingNumber, parkingType);
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,155 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.model.LastTicket;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tickets kept in memory only, for small sites and load tests that run without a database.
+ * Only the latest ticket and the number of tickets of each vehicle are kept, which is all the gates read.
+ * Tickets are copied in and out, and writes made inside a {@link UnitOfWork} are reverted if it is rolled back.
+ */
+public class InMemoryTicketStore implements TicketStore {
+
+    private final Map<String, Visits> visitsByVehicle = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+
+    @Override
+    public UnitOfWork beginUnitOfWork() {
+        return UnitOfWork.begin();
+    }
+
+    @Override
+    public boolean saveTicket(Ticket ticket) {
+        ticket.setId(nextId.getAndIncrement());
+        Ticket saved = ActiveTicketCache.copy(ticket);
+        String vehicleRegNumber = ticket.getVehicleRegNumber();
+        Visits[] previous = new Visits[1];
+        boolean[] parked = new boolean[1];
+        Visits written = visitsByVehicle.compute(vehicleRegNumber, (key, visits) -> {
+            if (visits != null && isOpen(visits.lastTicket) && saved.getOutTimeMillis() == Ticket.NO_TIME) {
+                parked[0] = true;
+                return visits;
+            }
+            previous[0] = visits;
+            return new Visits(saved, visits == null ? 1 : visits.nbTicket + 1);
+        });
+        if (parked[0]) {
+            return false;
+        }
+        UnitOfWork.afterRollback(() -> restore(vehicleRegNumber, written, previous[0]));
+        return true;
+    }
+
+    @Override
+    public boolean saveTickets(List<Ticket> tickets) {
+        boolean saved = true;
+        for (Ticket ticket : tickets) {
+            saved &= saveTicket(ticket);
+        }
+        return saved;
+    }
+
+    /**
+     * Loads the visits of a vehicle read from another store. The latest ticket is null when all of them were archived.
+     */
+    public void restoreVisits(String vehicleRegNumber, Ticket lastTicket, int nbTicket) {
+        if (lastTicket != null) {
+            lastTicket = ActiveTicketCache.copy(lastTicket);
+            reserveIds(lastTicket.getId());
+        }
+        visitsByVehicle.put(vehicleRegNumber, new Visits(lastTicket, nbTicket));
+    }
+
+    /**
+     * Makes the following saved tickets get ids above the given one.
+     */
+    public void reserveIds(int maxId) {
+        nextId.accumulateAndGet(maxId + 1, Math::max);
+    }
+
+    @Override
+    public Ticket getTicket(String vehicleRegNumber) {
+        Visits visits = visitsByVehicle.get(vehicleRegNumber);
+        return visits == null || visits.lastTicket == null ? null : ActiveTicketCache.copy(visits.lastTicket);
+    }
+
+    @Override
+    public LastTicket getLastTicket(String vehicleRegNumber) {
+        Visits visits = visitsByVehicle.get(vehicleRegNumber);
+        return visits == null || visits.lastTicket == null
+                ? null : new LastTicket(ActiveTicketCache.copy(visits.lastTicket), visits.nbTicket);
+    }
+
+    @Override
+    public boolean hasTicket(String vehicleRegNumber) {
+        return visitsByVehicle.containsKey(vehicleRegNumber);
+    }
+
+    @Override
+    public int getNbTicket(String vehicleRegNumber) {
+        Visits visits = visitsByVehicle.get(vehicleRegNumber);
+        return visits == null ? 0 : visits.nbTicket;
+    }
+
+    /**
+     * Only the latest ticket of a vehicle can be updated, older ones are not kept, and only while it is open.
+     */
+    @Override
+    public boolean updateTicket(Ticket ticket) {
+        Ticket updated = ActiveTicketCache.copy(ticket);
+        String vehicleRegNumber = ticket.getVehicleRegNumber();
+        Visits[] previous = new Visits[1];
+        Visits written = visitsByVehicle.computeIfPresent(vehicleRegNumber, (key, visits) -> {
+            if (visits.lastTicket == null || visits.lastTicket.getId() != ticket.getId() || !isOpen(visits.lastTicket)) {
+                return visits;
+            }
+            previous[0] = visits;
+            Ticket lastTicket = ActiveTicketCache.copy(visits.lastTicket);
+            lastTicket.setPrice(updated.getPrice());
+            lastTicket.setOutTimeMillis(updated.getOutTimeMillis());
+            return new Visits(lastTicket, visits.nbTicket);
+        });
+        if (previous[0] == null) {
+            return false;
+        }
+        UnitOfWork.afterRollback(() -> restore(vehicleRegNumber, written, previous[0]));
+        return true;
+    }
+
+    @Override
+    public boolean updateTickets(List<Ticket> tickets) {
+        boolean updated = true;
+        for (Ticket ticket : tickets) {
+            updated &= updateTicket(ticket);
+        }
+        return updated;
+    }
+
+    public int size() {
+        return visitsByVehicle.size();
+    }
+
+    private static boolean isOpen(Ticket ticket) {
+        return ticket != null && ticket.getOutTimeMillis() == Ticket.NO_TIME;
+    }
+
+    private void restore(String vehicleRegNumber, Visits written, Visits previous) {
+        // leaves the entry alone if another gate wrote it in the meantime
+        visitsByVehicle.computeIfPresent(vehicleRegNumber, (key, visits) -> visits == written ? previous : visits);
+    }
+
+    private static final class Visits {
+        private final Ticket lastTicket;
+        private final int nbTicket;
+
+        private Visits(Ticket lastTicket, int nbTicket) {
+            this.lastTicket = lastTicket;
+            this.nbTicket = nbTicket;
+        }
+    }
+}
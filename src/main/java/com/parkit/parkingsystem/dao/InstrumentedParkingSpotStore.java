@@ -0,0 +1,130 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.metrics.OperationMetrics;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.List;
+
+/**
+ * Records the calls, errors and latency of every method of a spot store in the {@link Metrics} named
+ * {@code spots.<method>}. A method fails when it throws, returns false, or returns -1 for a count.
+ */
+public class InstrumentedParkingSpotStore implements ParkingSpotStore, AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("InstrumentedParkingSpotStore");
+
+    private final ParkingSpotStore parkingSpotStore;
+    private final OperationMetrics getNextAvailableSlot = Metrics.operation("spots.getNextAvailableSlot");
+    private final OperationMetrics getNbAvailableSlot = Metrics.operation("spots.getNbAvailableSlot");
+    private final OperationMetrics getNbSlot = Metrics.operation("spots.getNbSlot");
+    private final OperationMetrics claimNextAvailableSlot = Metrics.operation("spots.claimNextAvailableSlot");
+    private final OperationMetrics claimAvailableSlots = Metrics.operation("spots.claimAvailableSlots");
+    private final OperationMetrics updateParking = Metrics.operation("spots.updateParking");
+    private final OperationMetrics updateParkings = Metrics.operation("spots.updateParkings");
+
+    public InstrumentedParkingSpotStore(ParkingSpotStore parkingSpotStore) {
+        this.parkingSpotStore = parkingSpotStore;
+    }
+
+    @Override
+    public int getNextAvailableSlot(ParkingType parkingType) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            int parkingNumber = parkingSpotStore.getNextAvailableSlot(parkingType);
+            failed = false;
+            return parkingNumber;
+        } finally {
+            getNextAvailableSlot.record(start, failed);
+        }
+    }
+
+    @Override
+    public int getNbAvailableSlot(ParkingType parkingType) {
+        long start = System.nanoTime();
+        int available = -1;
+        try {
+            available = parkingSpotStore.getNbAvailableSlot(parkingType);
+            return available;
+        } finally {
+            getNbAvailableSlot.record(start, available < 0);
+        }
+    }
+
+    @Override
+    public int getNbSlot(ParkingType parkingType) {
+        long start = System.nanoTime();
+        int spots = -1;
+        try {
+            spots = parkingSpotStore.getNbSlot(parkingType);
+            return spots;
+        } finally {
+            getNbSlot.record(start, spots < 0);
+        }
+    }
+
+    @Override
+    public int claimNextAvailableSlot(ParkingType parkingType) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            int parkingNumber = parkingSpotStore.claimNextAvailableSlot(parkingType);
+            failed = false;
+            return parkingNumber;
+        } finally {
+            claimNextAvailableSlot.record(start, failed);
+        }
+    }
+
+    @Override
+    public List<Integer> claimAvailableSlots(ParkingType parkingType, int count) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            List<Integer> parkingNumbers = parkingSpotStore.claimAvailableSlots(parkingType, count);
+            failed = false;
+            return parkingNumbers;
+        } finally {
+            claimAvailableSlots.record(start, failed);
+        }
+    }
+
+    @Override
+    public boolean updateParking(ParkingSpot parkingSpot) {
+        long start = System.nanoTime();
+        boolean updated = false;
+        try {
+            updated = parkingSpotStore.updateParking(parkingSpot);
+            return updated;
+        } finally {
+            updateParking.record(start, !updated);
+        }
+    }
+
+    @Override
+    public boolean updateParkings(List<ParkingSpot> parkingSpots) {
+        long start = System.nanoTime();
+        boolean updated = false;
+        try {
+            updated = parkingSpotStore.updateParkings(parkingSpots);
+            return updated;
+        } finally {
+            updateParkings.record(start, !updated);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (parkingSpotStore instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) parkingSpotStore).close();
+            } catch (Exception e) {
+                logger.error("Error closing spot store", e);
+            }
+        }
+    }
+}
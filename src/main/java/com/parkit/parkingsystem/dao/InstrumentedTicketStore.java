@@ -0,0 +1,174 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.metrics.OperationMetrics;
+import com.parkit.parkingsystem.model.LastTicket;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the calls, errors and latency of every method of a ticket store in the {@link Metrics} named
+ * {@code tickets.<method>}. A method fails when it throws, returns false, returns null for a
+ * lookup of several vehicles, or returns -1 for a count.
+ */
+public class InstrumentedTicketStore implements TicketStore, AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("InstrumentedTicketStore");
+
+    private final TicketStore ticketStore;
+    private final OperationMetrics beginUnitOfWork = Metrics.operation("tickets.beginUnitOfWork");
+    private final OperationMetrics saveTicket = Metrics.operation("tickets.saveTicket");
+    private final OperationMetrics saveTickets = Metrics.operation("tickets.saveTickets");
+    private final OperationMetrics getTicket = Metrics.operation("tickets.getTicket");
+    private final OperationMetrics getLastTicket = Metrics.operation("tickets.getLastTicket");
+    private final OperationMetrics getLastTickets = Metrics.operation("tickets.getLastTickets");
+    private final OperationMetrics hasTicket = Metrics.operation("tickets.hasTicket");
+    private final OperationMetrics getNbTicket = Metrics.operation("tickets.getNbTicket");
+    private final OperationMetrics updateTicket = Metrics.operation("tickets.updateTicket");
+    private final OperationMetrics updateTickets = Metrics.operation("tickets.updateTickets");
+
+    public InstrumentedTicketStore(TicketStore ticketStore) {
+        this.ticketStore = ticketStore;
+    }
+
+    @Override
+    public UnitOfWork beginUnitOfWork() throws ClassNotFoundException, SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            UnitOfWork unitOfWork = ticketStore.beginUnitOfWork();
+            failed = false;
+            return unitOfWork;
+        } finally {
+            beginUnitOfWork.record(start, failed);
+        }
+    }
+
+    @Override
+    public boolean saveTicket(Ticket ticket) {
+        long start = System.nanoTime();
+        boolean saved = false;
+        try {
+            saved = ticketStore.saveTicket(ticket);
+            return saved;
+        } finally {
+            saveTicket.record(start, !saved);
+        }
+    }
+
+    @Override
+    public boolean saveTickets(List<Ticket> tickets) {
+        long start = System.nanoTime();
+        boolean saved = false;
+        try {
+            saved = ticketStore.saveTickets(tickets);
+            return saved;
+        } finally {
+            saveTickets.record(start, !saved);
+        }
+    }
+
+    @Override
+    public Ticket getTicket(String vehicleRegNumber) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Ticket ticket = ticketStore.getTicket(vehicleRegNumber);
+            failed = false;
+            return ticket;
+        } finally {
+            getTicket.record(start, failed);
+        }
+    }
+
+    @Override
+    public LastTicket getLastTicket(String vehicleRegNumber) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            LastTicket lastTicket = ticketStore.getLastTicket(vehicleRegNumber);
+            failed = false;
+            return lastTicket;
+        } finally {
+            getLastTicket.record(start, failed);
+        }
+    }
+
+    @Override
+    public Map<String, LastTicket> getLastTickets(Collection<String> vehicleRegNumbers) {
+        long start = System.nanoTime();
+        Map<String, LastTicket> lastTickets = null;
+        try {
+            lastTickets = ticketStore.getLastTickets(vehicleRegNumbers);
+            return lastTickets;
+        } finally {
+            getLastTickets.record(start, lastTickets == null);
+        }
+    }
+
+    @Override
+    public boolean hasTicket(String vehicleRegNumber) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            boolean known = ticketStore.hasTicket(vehicleRegNumber);
+            failed = false;
+            return known;
+        } finally {
+            hasTicket.record(start, failed);
+        }
+    }
+
+    @Override
+    public int getNbTicket(String vehicleRegNumber) {
+        long start = System.nanoTime();
+        int nbTicket = -1;
+        try {
+            nbTicket = ticketStore.getNbTicket(vehicleRegNumber);
+            return nbTicket;
+        } finally {
+            getNbTicket.record(start, nbTicket < 0);
+        }
+    }
+
+    @Override
+    public boolean updateTicket(Ticket ticket) {
+        long start = System.nanoTime();
+        boolean updated = false;
+        try {
+            updated = ticketStore.updateTicket(ticket);
+            return updated;
+        } finally {
+            updateTicket.record(start, !updated);
+        }
+    }
+
+    @Override
+    public boolean updateTickets(List<Ticket> tickets) {
+        long start = System.nanoTime();
+        boolean updated = false;
+        try {
+            updated = ticketStore.updateTickets(tickets);
+            return updated;
+        } finally {
+            updateTickets.record(start, !updated);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (ticketStore instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) ticketStore).close();
+            } catch (Exception e) {
+                logger.error("Error closing ticket store", e);
+            }
+        }
+    }
+}
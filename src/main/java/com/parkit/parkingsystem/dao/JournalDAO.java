@@ -0,0 +1,208 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Database side of the {@link GateJournal}: applies journal events to the ticket and parking tables
+ * and loads the state the gates are served from.
+ */
+public class JournalDAO {
+
+    private static final Logger logger = LogManager.getLogger("JournalDAO");
+
+    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+
+    /**
+     * @return the last journal event applied to the database
+     */
+    public long getCheckpoint() throws ClassNotFoundException, SQLException {
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = con.prepareStatement(DBConstants.GET_JOURNAL_CHECKPOINT);
+            ResultSet rs = ps.executeQuery();
+            long checkpoint = rs.next() ? rs.getLong(1) : 0;
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            return checkpoint;
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Applies the events, in journal order, and moves the checkpoint to the last one in the same transaction,
+     * so that an event is applied exactly once even if the batch is replayed after a crash.
+     * Each kind of write goes in one JDBC batch: inserts, then updates, then deletes, then spots,
+     * which keeps the order of the writes of any single ticket or spot.
+     * Every event must change exactly one row, otherwise nothing is applied and the checkpoint stays where it was.
+     */
+    public void apply(List<JournalEvent> events) throws ClassNotFoundException, SQLException {
+        if (events.isEmpty()) {
+            return;
+        }
+        List<JournalEvent> savedTickets = new ArrayList<>();
+        List<JournalEvent> updatedTickets = new ArrayList<>();
+        List<JournalEvent> deletedTickets = new ArrayList<>();
+        List<JournalEvent> parkingSpots = new ArrayList<>();
+        for (JournalEvent event : events) {
+            switch (event.getKind()) {
+                case TICKET_SAVED:
+                    savedTickets.add(event);
+                    break;
+                case TICKET_UPDATED:
+                    updatedTickets.add(event);
+                    break;
+                case TICKET_DELETED:
+                    deletedTickets.add(event);
+                    break;
+                case SPOT_UPDATED:
+                    parkingSpots.add(event);
+                    break;
+            }
+        }
+        long lsn = events.get(events.size() - 1).getLsn();
+        try (UnitOfWork unitOfWork = UnitOfWork.begin(dataBaseConfig)) {
+            Connection con = dataBaseConfig.getConnection();
+            if (!savedTickets.isEmpty()) {
+                PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET_WITH_ID);
+                for (JournalEvent event : savedTickets) {
+                    Ticket ticket = event.getTicket();
+                    ps.setInt(1, ticket.getId());
+                    ps.setInt(2, ticket.getParkingSpot().getId());
+                    ps.setString(3, ticket.getVehicleRegNumber());
+                    ps.setDouble(4, ticket.getPrice());
+                    ps.setTimestamp(5, new Timestamp(ticket.getInTimeMillis()));
+                    ps.setTimestamp(6, (ticket.getOutTimeMillis() == Ticket.NO_TIME) ? null : (new Timestamp(ticket.getOutTimeMillis())));
+                    ps.addBatch();
+                }
+                checkApplied(savedTickets, ps.executeBatch());
+                dataBaseConfig.closePreparedStatement(ps);
+            }
+            if (!updatedTickets.isEmpty()) {
+                PreparedStatement ps = con.prepareStatement(DBConstants.REPLACE_TICKET_PRICE_AND_OUT_TIME);
+                for (JournalEvent event : updatedTickets) {
+                    Ticket ticket = event.getTicket();
+                    ps.setDouble(1, ticket.getPrice());
+                    ps.setTimestamp(2, (ticket.getOutTimeMillis() == Ticket.NO_TIME) ? null : (new Timestamp(ticket.getOutTimeMillis())));
+                    ps.setInt(3, ticket.getId());
+                    ps.addBatch();
+                }
+                checkApplied(updatedTickets, ps.executeBatch());
+                dataBaseConfig.closePreparedStatement(ps);
+            }
+            if (!deletedTickets.isEmpty()) {
+                PreparedStatement ps = con.prepareStatement(DBConstants.DELETE_TICKET);
+                for (JournalEvent event : deletedTickets) {
+                    ps.setInt(1, event.getTicket().getId());
+                    ps.addBatch();
+                }
+                checkApplied(deletedTickets, ps.executeBatch());
+                dataBaseConfig.closePreparedStatement(ps);
+            }
+            if (!parkingSpots.isEmpty()) {
+                PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT);
+                for (JournalEvent event : parkingSpots) {
+                    ParkingSpot parkingSpot = event.getParkingSpot();
+                    ps.setBoolean(1, parkingSpot.isAvailable());
+                    ps.setInt(2, parkingSpot.getId());
+                    ps.addBatch();
+                }
+                checkApplied(parkingSpots, ps.executeBatch());
+                dataBaseConfig.closePreparedStatement(ps);
+            }
+            PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_JOURNAL_CHECKPOINT);
+            ps.setLong(1, lsn);
+            ps.setLong(2, lsn);
+            int updateRowCount = ps.executeUpdate();
+            dataBaseConfig.closePreparedStatement(ps);
+            if (updateRowCount != 1) {
+                throw new SQLException("Journal events up to " + lsn + " are already applied");
+            }
+            unitOfWork.commit();
+        }
+    }
+
+    private static void checkApplied(List<JournalEvent> events, int[] updateRowCounts) throws SQLException {
+        for (int i = 0; i < events.size(); i++) {
+            if (updateRowCounts[i] != 1 && updateRowCounts[i] != Statement.SUCCESS_NO_INFO) {
+                throw new SQLException("Journal event " + events.get(i).getLsn() + " (" + events.get(i).getKind()
+                        + ") changed " + updateRowCounts[i] + " rows instead of one");
+            }
+        }
+    }
+
+    public List<ParkingSpot> getParkingSpots() throws ClassNotFoundException, SQLException {
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = con.prepareStatement(DBConstants.GET_PARKING_SPOTS);
+            ResultSet rs = ps.executeQuery();
+            List<ParkingSpot> parkingSpots = new ArrayList<>();
+            while (rs.next()) {
+                parkingSpots.add(new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(3)), rs.getBoolean(2)));
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            return parkingSpots;
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Loads the latest ticket and the number of tickets of every vehicle, and the highest ticket id ever given.
+     */
+    public void loadTickets(InMemoryTicketStore ticketStore) throws ClassNotFoundException, SQLException {
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = con.prepareStatement(DBConstants.GET_LATEST_TICKETS);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                Ticket ticket = new Ticket();
+                ticket.setParkingSpot(new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(6)), false));
+                ticket.setId(rs.getInt(2));
+                ticket.setPrice(rs.getDouble(3));
+                ticket.setInTime(rs.getTimestamp(4));
+                ticket.setOutTime(rs.getTimestamp(5));
+                ticket.setVehicleRegNumber(rs.getString(7));
+                ticketStore.restoreVisits(ticket.getVehicleRegNumber(), ticket, rs.getInt(8));
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            ps = con.prepareStatement(DBConstants.GET_ARCHIVED_VISITS);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                ticketStore.restoreVisits(rs.getString(1), null, rs.getInt(2));
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            ps = con.prepareStatement(DBConstants.GET_MAX_TICKET_ID);
+            rs = ps.executeQuery();
+            if (rs.next()) {
+                ticketStore.reserveIds(rs.getInt(1));
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            logger.info("Loaded the tickets of {} vehicles", ticketStore.size());
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * One write of a gate, as recorded in the {@link GateJournal} and later applied to the database.
+ * Events of the same ticket or spot must be applied in journal order.
+ */
+public class JournalEvent {
+
+    public enum Kind {
+        // TICKET_DELETED compensated a rolled back save in journals written before events waited for the commit
+        TICKET_SAVED, TICKET_UPDATED, TICKET_DELETED, SPOT_UPDATED
+    }
+
+    private final Kind kind;
+    private final Ticket ticket;
+    private final ParkingSpot parkingSpot;
+    private long lsn;
+
+    private JournalEvent(Kind kind, Ticket ticket, ParkingSpot parkingSpot) {
+        this.kind = kind;
+        this.ticket = ticket;
+        this.parkingSpot = parkingSpot;
+    }
+
+    public static JournalEvent ticketSaved(Ticket ticket) {
+        return new JournalEvent(Kind.TICKET_SAVED, ActiveTicketCache.copy(ticket), null);
+    }
+
+    public static JournalEvent ticketUpdated(Ticket ticket) {
+        return new JournalEvent(Kind.TICKET_UPDATED, ActiveTicketCache.copy(ticket), null);
+    }
+
+    public static JournalEvent spotUpdated(int parkingNumber, ParkingType parkingType, boolean available) {
+        return new JournalEvent(Kind.SPOT_UPDATED, null, new ParkingSpot(parkingNumber, parkingType, available));
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public Ticket getTicket() {
+        return ticket;
+    }
+
+    public ParkingSpot getParkingSpot() {
+        return parkingSpot;
+    }
+
+    /**
+     * @return the position of the event in the journal, set when it is appended
+     */
+    public long getLsn() {
+        return lsn;
+    }
+
+    void setLsn(long lsn) {
+        this.lsn = lsn;
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(lsn);
+        out.writeByte(kind.ordinal());
+        if (kind == Kind.SPOT_UPDATED) {
+            out.writeInt(parkingSpot.getId());
+            out.writeByte(parkingSpot.getParkingType().ordinal());
+            out.writeBoolean(parkingSpot.isAvailable());
+            return;
+        }
+        out.writeInt(ticket.getId());
+        out.writeInt(ticket.getParkingSpot().getId());
+        out.writeByte(ticket.getParkingSpot().getParkingType().ordinal());
+        out.writeUTF(ticket.getVehicleRegNumber());
+        out.writeDouble(ticket.getPrice());
+        out.writeLong(ticket.getInTimeMillis());
+        out.writeLong(ticket.getOutTimeMillis());
+    }
+
+    static JournalEvent readFrom(DataInput in) throws IOException {
+        long lsn = in.readLong();
+        Kind kind = Kind.values()[in.readByte()];
+        JournalEvent event;
+        if (kind == Kind.SPOT_UPDATED) {
+            int parkingNumber = in.readInt();
+            ParkingType parkingType = ParkingType.values()[in.readByte()];
+            event = new JournalEvent(kind, null, new ParkingSpot(parkingNumber, parkingType, in.readBoolean()));
+        } else {
+            Ticket ticket = new Ticket();
+            ticket.setId(in.readInt());
+            int parkingNumber = in.readInt();
+            ticket.setParkingSpot(new ParkingSpot(parkingNumber, ParkingType.values()[in.readByte()], false));
+            ticket.setVehicleRegNumber(in.readUTF());
+            ticket.setPrice(in.readDouble());
+            ticket.setInTimeMillis(in.readLong());
+            ticket.setOutTimeMillis(in.readLong());
+            event = new JournalEvent(kind, ticket, null);
+        }
+        event.lsn = lsn;
+        return event;
+    }
+}
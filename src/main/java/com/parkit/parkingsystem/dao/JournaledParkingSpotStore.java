@@ -0,0 +1,79 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import java.util.List;
+
+/**
+ * Spots served from memory, every change of availability being recorded in the {@link GateJournal}.
+ * The events of a unit of work are appended when it commits, and the commit waits until they are on disk.
+ */
+public class JournaledParkingSpotStore implements ParkingSpotStore {
+
+    private final InMemoryParkingSpotStore parkingSpotStore;
+    private final GateJournal journal;
+
+    public JournaledParkingSpotStore(InMemoryParkingSpotStore parkingSpotStore, GateJournal journal) {
+        this.parkingSpotStore = parkingSpotStore;
+        this.journal = journal;
+    }
+
+    @Override
+    public int getNextAvailableSlot(ParkingType parkingType) {
+        return parkingSpotStore.getNextAvailableSlot(parkingType);
+    }
+
+    @Override
+    public int getNbAvailableSlot(ParkingType parkingType) {
+        return parkingSpotStore.getNbAvailableSlot(parkingType);
+    }
+
+    @Override
+    public int getNbSlot(ParkingType parkingType) {
+        return parkingSpotStore.getNbSlot(parkingType);
+    }
+
+    @Override
+    public int claimNextAvailableSlot(ParkingType parkingType) {
+        List<Integer> claimedNumbers = claimAvailableSlots(parkingType, 1);
+        return claimedNumbers.isEmpty() ? -1 : claimedNumbers.get(0);
+    }
+
+    @Override
+    public List<Integer> claimAvailableSlots(ParkingType parkingType, int count) {
+        journal.beginWrite();
+        try {
+            List<Integer> claimedNumbers = parkingSpotStore.claimAvailableSlots(parkingType, count);
+            for (int parkingNumber : claimedNumbers) {
+                journal.record(JournalEvent.spotUpdated(parkingNumber, parkingType, false));
+            }
+            return claimedNumbers;
+        } finally {
+            journal.endWrite();
+        }
+    }
+
+    @Override
+    public boolean updateParking(ParkingSpot parkingSpot) {
+        return updateParkings(List.of(parkingSpot));
+    }
+
+    @Override
+    public boolean updateParkings(List<ParkingSpot> parkingSpots) {
+        boolean updated = true;
+        journal.beginWrite();
+        try {
+            for (ParkingSpot parkingSpot : parkingSpots) {
+                if (parkingSpotStore.updateParking(parkingSpot)) {
+                    journal.record(JournalEvent.spotUpdated(parkingSpot.getId(), parkingSpot.getParkingType(), parkingSpot.isAvailable()));
+                } else {
+                    updated = false;
+                }
+            }
+        } finally {
+            journal.endWrite();
+        }
+        return updated;
+    }
+}
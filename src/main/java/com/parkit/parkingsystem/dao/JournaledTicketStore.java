@@ -0,0 +1,98 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.model.LastTicket;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tickets served from memory, every write being recorded in the {@link GateJournal}.
+ * The events of a unit of work are appended when it commits, and the commit waits until they are on disk,
+ * so a gate answers as soon as the journal is written, without waiting for the database.
+ */
+public class JournaledTicketStore implements TicketStore {
+
+    private final InMemoryTicketStore ticketStore;
+    private final GateJournal journal;
+
+    public JournaledTicketStore(InMemoryTicketStore ticketStore, GateJournal journal) {
+        this.ticketStore = ticketStore;
+        this.journal = journal;
+    }
+
+    @Override
+    public UnitOfWork beginUnitOfWork() {
+        return ticketStore.beginUnitOfWork();
+    }
+
+    @Override
+    public boolean saveTicket(Ticket ticket) {
+        return saveTickets(List.of(ticket));
+    }
+
+    @Override
+    public boolean saveTickets(List<Ticket> tickets) {
+        int saved = 0;
+        journal.beginWrite();
+        try {
+            for (Ticket ticket : tickets) {
+                if (ticketStore.saveTicket(ticket)) {
+                    saved++;
+                    journal.record(JournalEvent.ticketSaved(ticket));
+                }
+            }
+        } finally {
+            journal.endWrite();
+        }
+        return saved == tickets.size();
+    }
+
+    @Override
+    public Ticket getTicket(String vehicleRegNumber) {
+        return ticketStore.getTicket(vehicleRegNumber);
+    }
+
+    @Override
+    public LastTicket getLastTicket(String vehicleRegNumber) {
+        return ticketStore.getLastTicket(vehicleRegNumber);
+    }
+
+    @Override
+    public Map<String, LastTicket> getLastTickets(Collection<String> vehicleRegNumbers) {
+        return ticketStore.getLastTickets(vehicleRegNumbers);
+    }
+
+    @Override
+    public boolean hasTicket(String vehicleRegNumber) {
+        return ticketStore.hasTicket(vehicleRegNumber);
+    }
+
+    @Override
+    public int getNbTicket(String vehicleRegNumber) {
+        return ticketStore.getNbTicket(vehicleRegNumber);
+    }
+
+    @Override
+    public boolean updateTicket(Ticket ticket) {
+        return updateTickets(List.of(ticket));
+    }
+
+    @Override
+    public boolean updateTickets(List<Ticket> tickets) {
+        int updated = 0;
+        journal.beginWrite();
+        try {
+            for (Ticket ticket : tickets) {
+                if (ticketStore.updateTicket(ticket)) {
+                    updated++;
+                    journal.record(JournalEvent.ticketUpdated(ticket));
+                }
+            }
+        } finally {
+            journal.endWrite();
+        }
+        return updated == tickets.size();
+    }
+}
@@ -0,0 +1,125 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parking spots of a standalone site, kept in a memory-mapped file: a header, one type byte per spot number
+ * and an availability bitmap. Claims still go through the in-memory {@link ParkingSpotIndex},
+ * every change of availability is then written to the mapped bitmap.
+ */
+public class MappedFileParkingSpotStore extends InMemoryParkingSpotStore implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("MappedFileParkingSpotStore");
+
+    private static final int MAGIC = 0x504B5350;
+    private static final int TYPES_OFFSET = 8;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int bitmapOffset;
+
+    private MappedFileParkingSpotStore(List<ParkingSpot> parkingSpots, FileChannel channel, MappedByteBuffer buffer) {
+        super(parkingSpots);
+        this.channel = channel;
+        this.buffer = buffer;
+        this.bitmapOffset = TYPES_OFFSET + getMaxParkingNumber() + 1;
+    }
+
+    /**
+     * Opens the spots file, or creates it with the given layout (see {@link InMemoryParkingSpotStore#withLayout})
+     * if it does not exist yet. The layout of an existing file is kept.
+     */
+    public static MappedFileParkingSpotStore open(Path file, String layout) throws IOException {
+        boolean exists = Files.exists(file) && Files.size(file) > 0;
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedFileParkingSpotStore store;
+            if (exists) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+                store = new MappedFileParkingSpotStore(readSpots(file, buffer), channel, buffer);
+                logger.info("Opened {} parking spots from {}", store.getMaxParkingNumber(), file);
+            } else {
+                List<ParkingSpot> parkingSpots = parseLayout(layout);
+                int maxParkingNumber = parkingSpots.size();
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(maxParkingNumber));
+                store = new MappedFileParkingSpotStore(parkingSpots, channel, buffer);
+                store.writeSpots(parkingSpots);
+                logger.info("Created {} parking spots in {}", maxParkingNumber, file);
+            }
+            return store;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    protected void availabilityChanged(int parkingNumber, ParkingType parkingType) {
+        int offset = bitmapOffset + (parkingNumber >>> 3);
+        int bit = 1 << (parkingNumber & 7);
+        // the bit is read back from the index under the lock so that the last writer always leaves the latest state
+        synchronized (buffer) {
+            byte bits = buffer.get(offset);
+            buffer.put(offset, (byte) (isAvailable(parkingNumber) ? bits | bit : bits & ~bit));
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            logger.error("Error closing parking spots file", e);
+        }
+    }
+
+    private static int fileSize(int maxParkingNumber) {
+        return TYPES_OFFSET + maxParkingNumber + 1 + (maxParkingNumber + 8) / 8;
+    }
+
+    private static List<ParkingSpot> readSpots(Path file, MappedByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < TYPES_OFFSET || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a parking spots file: " + file);
+        }
+        int maxParkingNumber = buffer.getInt(4);
+        if (buffer.capacity() < fileSize(maxParkingNumber)) {
+            throw new IOException("Truncated parking spots file: " + file);
+        }
+        int bitmapOffset = TYPES_OFFSET + maxParkingNumber + 1;
+        ParkingType[] parkingTypes = ParkingType.values();
+        List<ParkingSpot> parkingSpots = new ArrayList<>();
+        for (int parkingNumber = 1; parkingNumber <= maxParkingNumber; parkingNumber++) {
+            int type = buffer.get(TYPES_OFFSET + parkingNumber);
+            if (type > 0) {
+                boolean available = (buffer.get(bitmapOffset + (parkingNumber >>> 3)) & (1 << (parkingNumber & 7))) != 0;
+                parkingSpots.add(new ParkingSpot(parkingNumber, parkingTypes[type - 1], available));
+            }
+        }
+        return parkingSpots;
+    }
+
+    private void writeSpots(List<ParkingSpot> parkingSpots) {
+        buffer.putInt(4, getMaxParkingNumber());
+        for (ParkingSpot parkingSpot : parkingSpots) {
+            buffer.put(TYPES_OFFSET + parkingSpot.getId(), (byte) (parkingSpot.getParkingType().ordinal() + 1));
+            availabilityChanged(parkingSpot.getId(), parkingSpot.getParkingType());
+        }
+        // written last: a file left without it by a crash is rejected instead of being read as an empty parking
+        buffer.putInt(0, MAGIC);
+        buffer.force();
+    }
+}
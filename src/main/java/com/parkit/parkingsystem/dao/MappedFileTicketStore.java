@@ -0,0 +1,332 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.LastTicket;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tickets of a standalone site, appended as fixed-width records to a file mapped in segments of {@link #SEGMENT_SIZE} bytes.
+ * The id of a ticket is its record number plus one, so a ticket is read or updated in place without any lookup.
+ * An in-memory index maps each vehicle to its latest record and its number of tickets; it is rebuilt from the file on open.
+ */
+public class MappedFileTicketStore implements TicketStore, AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("MappedFileTicketStore");
+
+    public static final int SEGMENT_SIZE = 1 << 24;
+    public static final int MAX_REG_NUMBER_LENGTH = 16;
+
+    private static final int MAGIC = 0x504B5443;
+    private static final int RECORD_SIZE = 64;
+    private static final int RECORD_COUNT_OFFSET = 4;
+
+    private static final byte STATE_SAVED = 1;
+    private static final byte STATE_ABORTED = 2;
+
+    private static final int STATE = 0;
+    private static final int PARKING_TYPE = 1;
+    private static final int REG_NUMBER_LENGTH = 2;
+    private static final int PARKING_NUMBER = 4;
+    private static final int IN_TIME = 8;
+    private static final int OUT_TIME = 16;
+    private static final int PRICE = 24;
+    private static final int REG_NUMBER = 32;
+
+    // the out time of a record is published with release and read with acquire, see updateTicket
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final FileChannel channel;
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private final AtomicInteger nextRecord = new AtomicInteger();
+    // latest record number in the high half, number of tickets in the low half
+    private final Map<String, Long> latestRecords = new ConcurrentHashMap<>();
+
+    private MappedFileTicketStore(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Opens the tickets file, creating it if needed, and rebuilds the index of the vehicles from its records.
+     */
+    public static MappedFileTicketStore open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedFileTicketStore store = new MappedFileTicketStore(channel);
+        try {
+            store.load(file);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return store;
+    }
+
+    @Override
+    public UnitOfWork beginUnitOfWork() {
+        return UnitOfWork.begin();
+    }
+
+    @Override
+    public boolean saveTicket(Ticket ticket) {
+        byte[] vehicleRegNumber = ticket.getVehicleRegNumber().getBytes(StandardCharsets.UTF_8);
+        if (vehicleRegNumber.length > MAX_REG_NUMBER_LENGTH) {
+            logger.error("Vehicle registration number too long: {}", ticket.getVehicleRegNumber());
+            return false;
+        }
+        int record;
+        try {
+            record = nextRecord.getAndIncrement();
+            MappedByteBuffer segment = segment(record);
+            int offset = offset(record);
+            segment.put(offset + PARKING_TYPE, (byte) ticket.getParkingSpot().getParkingType().ordinal());
+            segment.put(offset + REG_NUMBER_LENGTH, (byte) vehicleRegNumber.length);
+            segment.putInt(offset + PARKING_NUMBER, ticket.getParkingSpot().getId());
+            segment.putLong(offset + IN_TIME, ticket.getInTimeMillis());
+            segment.putLong(offset + OUT_TIME, ticket.getOutTimeMillis());
+            segment.putDouble(offset + PRICE, ticket.getPrice());
+            for (int i = 0; i < vehicleRegNumber.length; i++) {
+                segment.put(offset + REG_NUMBER + i, vehicleRegNumber[i]);
+            }
+            // the state byte goes last so that a record torn by a crash is skipped when the index is rebuilt
+            segment.put(offset + STATE, STATE_SAVED);
+            updateRecordCount(record + 1);
+        } catch (IOException e) {
+            logger.error("Error saving ticket", e);
+            return false;
+        }
+        ticket.setId(record + 1);
+        String regNumber = ticket.getVehicleRegNumber();
+        Long[] previous = new Long[1];
+        boolean[] parked = new boolean[1];
+        Long written = latestRecords.compute(regNumber, (key, latest) -> {
+            if (latest != null && ticket.getOutTimeMillis() == Ticket.NO_TIME && isOpen(record(latest))) {
+                parked[0] = true;
+                return latest;
+            }
+            previous[0] = latest;
+            // an older record may be saved last when two gates enter the same vehicle at once
+            return latest == null ? entry(record, 1) : entry(Math.max(record(latest), record), nbTicket(latest) + 1);
+        });
+        if (parked[0]) {
+            segmentOrNull(record).put(offset(record) + STATE, STATE_ABORTED);
+            return false;
+        }
+        UnitOfWork.afterRollback(() -> {
+            segmentOrNull(record).put(offset(record) + STATE, STATE_ABORTED);
+            latestRecords.computeIfPresent(regNumber, (key, latest) -> latest.equals(written) ? previous[0] : latest);
+        });
+        return true;
+    }
+
+    @Override
+    public boolean saveTickets(List<Ticket> tickets) {
+        boolean saved = true;
+        for (Ticket ticket : tickets) {
+            saved &= saveTicket(ticket);
+        }
+        return saved;
+    }
+
+    @Override
+    public Ticket getTicket(String vehicleRegNumber) {
+        Long latest = latestRecords.get(vehicleRegNumber);
+        return latest == null ? null : readTicket(record(latest));
+    }
+
+    @Override
+    public LastTicket getLastTicket(String vehicleRegNumber) {
+        Long latest = latestRecords.get(vehicleRegNumber);
+        return latest == null ? null : new LastTicket(readTicket(record(latest)), nbTicket(latest));
+    }
+
+    @Override
+    public boolean hasTicket(String vehicleRegNumber) {
+        return latestRecords.containsKey(vehicleRegNumber);
+    }
+
+    @Override
+    public int getNbTicket(String vehicleRegNumber) {
+        Long latest = latestRecords.get(vehicleRegNumber);
+        return latest == null ? 0 : nbTicket(latest);
+    }
+
+    @Override
+    public boolean updateTicket(Ticket ticket) {
+        int record = ticket.getId() - 1;
+        MappedByteBuffer segment = record < 0 ? null : segmentOrNull(record);
+        if (segment == null || segment.get(offset(record) + STATE) != STATE_SAVED) {
+            return false;
+        }
+        int offset = offset(record);
+        double previousPrice = segment.getDouble(offset + PRICE);
+        boolean[] closed = new boolean[1];
+        // under the lock of the vehicle entry, so that two exits of the same vehicle never both close its ticket
+        latestRecords.computeIfPresent(ticket.getVehicleRegNumber(), (key, latest) -> {
+            if (segment.getLong(offset + OUT_TIME) == Ticket.NO_TIME) {
+                // the index entry is left as is, so nothing publishes the price to readers but the release of the
+                // out time: a ticket read with an out time is then read with the price written before it
+                segment.putDouble(offset + PRICE, ticket.getPrice());
+                LONGS.setRelease(segment, offset + OUT_TIME, ticket.getOutTimeMillis());
+                closed[0] = true;
+            }
+            return latest;
+        });
+        if (!closed[0]) {
+            return false;
+        }
+        UnitOfWork.afterRollback(() -> {
+            segment.putDouble(offset + PRICE, previousPrice);
+            LONGS.setRelease(segment, offset + OUT_TIME, Ticket.NO_TIME);
+        });
+        return true;
+    }
+
+    private boolean isOpen(int record) {
+        MappedByteBuffer segment = segmentOrNull(record);
+        return segment != null && segment.getLong(offset(record) + OUT_TIME) == Ticket.NO_TIME;
+    }
+
+    @Override
+    public boolean updateTickets(List<Ticket> tickets) {
+        boolean updated = true;
+        for (Ticket ticket : tickets) {
+            updated &= updateTicket(ticket);
+        }
+        return updated;
+    }
+
+    public int size() {
+        return latestRecords.size();
+    }
+
+    @Override
+    public void close() {
+        try {
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+            channel.close();
+        } catch (IOException e) {
+            logger.error("Error closing tickets file", e);
+        }
+    }
+
+    private void load(Path file) throws IOException {
+        MappedByteBuffer header = segment(-1);
+        if (header.getInt(0) == 0) {
+            header.putInt(0, MAGIC);
+        } else if (header.getInt(0) != MAGIC) {
+            throw new IOException("Not a tickets file: " + file);
+        }
+        int recordCount = header.getInt(RECORD_COUNT_OFFSET);
+        for (int record = 0; record < recordCount; record++) {
+            MappedByteBuffer segment = segment(record);
+            int offset = offset(record);
+            if (segment.get(offset + STATE) == STATE_SAVED) {
+                String vehicleRegNumber = readRegNumber(segment, offset);
+                latestRecords.merge(vehicleRegNumber, entry(record, 1),
+                        (latest, added) -> entry(record(added), nbTicket(latest) + 1));
+            }
+        }
+        nextRecord.set(recordCount);
+        logger.info("Opened {} tickets of {} vehicles from {}", recordCount, latestRecords.size(), file);
+    }
+
+    private Ticket readTicket(int record) {
+        MappedByteBuffer segment = segmentOrNull(record);
+        int offset = offset(record);
+        Ticket ticket = new Ticket();
+        ticket.setId(record + 1);
+        ParkingType parkingType = ParkingType.values()[segment.get(offset + PARKING_TYPE)];
+        ticket.setParkingSpot(new ParkingSpot(segment.getInt(offset + PARKING_NUMBER), parkingType, false));
+        ticket.setVehicleRegNumber(readRegNumber(segment, offset));
+        ticket.setInTimeMillis(segment.getLong(offset + IN_TIME));
+        long outTime = (long) LONGS.getAcquire(segment, offset + OUT_TIME);
+        double price = segment.getDouble(offset + PRICE);
+        ticket.setOutTimeMillis(outTime);
+        ticket.setPrice(price);
+        return ticket;
+    }
+
+    private static String readRegNumber(MappedByteBuffer segment, int offset) {
+        byte[] vehicleRegNumber = new byte[segment.get(offset + REG_NUMBER_LENGTH)];
+        for (int i = 0; i < vehicleRegNumber.length; i++) {
+            vehicleRegNumber[i] = segment.get(offset + REG_NUMBER + i);
+        }
+        return new String(vehicleRegNumber, StandardCharsets.UTF_8);
+    }
+
+    private void updateRecordCount(int recordCount) {
+        MappedByteBuffer header = segments[0];
+        synchronized (header) {
+            if (header.getInt(RECORD_COUNT_OFFSET) < recordCount) {
+                header.putInt(RECORD_COUNT_OFFSET, recordCount);
+            }
+        }
+    }
+
+    private static long entry(int record, int nbTicket) {
+        return ((long) record << 32) | nbTicket;
+    }
+
+    private static int record(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    private static int nbTicket(long entry) {
+        return (int) entry;
+    }
+
+    // the header takes the place of record -1
+    private static long position(int record) {
+        return (record + 1L) * RECORD_SIZE;
+    }
+
+    private static int offset(int record) {
+        return (int) (position(record) % SEGMENT_SIZE);
+    }
+
+    private MappedByteBuffer segmentOrNull(int record) {
+        int index = (int) (position(record) / SEGMENT_SIZE);
+        MappedByteBuffer[] mapped = segments;
+        return index < mapped.length ? mapped[index] : null;
+    }
+
+    private MappedByteBuffer segment(int record) throws IOException {
+        MappedByteBuffer segment = segmentOrNull(record);
+        if (segment != null) {
+            return segment;
+        }
+        int index = (int) (position(record) / SEGMENT_SIZE);
+        synchronized (this) {
+            MappedByteBuffer[] mapped = segments;
+            if (index < mapped.length) {
+                return mapped[index];
+            }
+            MappedByteBuffer[] grown = Arrays.copyOf(mapped, index + 1);
+            for (int i = mapped.length; i <= index; i++) {
+                grown[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * SEGMENT_SIZE, SEGMENT_SIZE);
+            }
+            segments = grown;
+            return grown[index];
+        }
+    }
+}
@@ -3,6 +3,8 @@ package com.parkit.parkingsystem.dao;
 import com.parkit.parkingsystem.config.DataBaseConfig;
 import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.metrics.OperationMetrics;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -10,33 +12,250 @@ import org.apache.logging.log4j.Logger;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-public class ParkingSpotDAO {
+public class ParkingSpotDAO implements ParkingSpotStore {
     private static final Logger logger = LogManager.getLogger("ParkingSpotDAO");
 
+    private static final int MAX_CLAIM_ATTEMPTS = Integer.getInteger("parkit.claim.maxAttempts", 16);
+
+    // a claim given up while spots may still be free answers like a full parking, so it is counted apart
+    private static final OperationMetrics exhaustedClaims = Metrics.operation("claims.exhausted");
+
     public DataBaseConfig dataBaseConfig = new DataBaseConfig();
 
-    public int getNextAvailableSlot(ParkingType parkingType){
+    public volatile ParkingSpotIndex spotIndex;
+
+    private Map<ParkingSpot, Integer> lastDriftedSpots = new HashMap<>();
+
+    public boolean loadSpotIndex(){
+        List<ParkingSpot> parkingSpots = getParkingSpots();
+        if(parkingSpots == null){
+            return false;
+        }
+        int maxParkingNumber = 0;
+        for(ParkingSpot parkingSpot : parkingSpots){
+            maxParkingNumber = Math.max(maxParkingNumber, parkingSpot.getId());
+        }
+        ParkingSpotIndex index = new ParkingSpotIndex(maxParkingNumber);
+        for(ParkingSpot parkingSpot : parkingSpots){
+            index.addSpot(parkingSpot.getId(), parkingSpot.getParkingType(), parkingSpot.isAvailable());
+        }
+        spotIndex = index;
+        return true;
+    }
+
+    private List<ParkingSpot> getParkingSpots(){
         Connection con = null;
-        int result=-1;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.GET_NEXT_PARKING_SPOT);
-            ps.setString(1, parkingType.toString());
+            PreparedStatement ps = con.prepareStatement(DBConstants.GET_PARKING_SPOTS);
             ResultSet rs = ps.executeQuery();
-            if(rs.next()){
-                result = rs.getInt(1);;
+            List<ParkingSpot> parkingSpots = new ArrayList<>();
+            while(rs.next()){
+                parkingSpots.add(new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(3)), rs.getBoolean(2)));
             }
             dataBaseConfig.closeResultSet(rs);
             dataBaseConfig.closePreparedStatement(ps);
+            return parkingSpots;
         }catch (Exception ex){
-            logger.error("Error fetching next available slot",ex);
+            logger.error("Error loading parking spots",ex);
+            return null;
         }finally {
             dataBaseConfig.closeConnection(con);
         }
-        return result;
     }
 
+    @Override
+    public int getNextAvailableSlot(ParkingType parkingType){
+        if(spotIndex != null){
+            return spotIndex.getLowestAvailable(parkingType);
+        }
+        return selectNextAvailableSlot(parkingType);
+    }
+
+    @Override
+    public int getNbAvailableSlot(ParkingType parkingType){
+        if(spotIndex != null){
+            return spotIndex.countAvailable(parkingType);
+        }
+        return countParkingSpots(DBConstants.COUNT_AVAILABLE_PARKING_SPOTS, parkingType);
+    }
+
+    @Override
+    public int getNbSlot(ParkingType parkingType){
+        if(spotIndex != null){
+            return spotIndex.countSpots(parkingType);
+        }
+        return countParkingSpots(DBConstants.COUNT_PARKING_SPOTS, parkingType);
+    }
+
+    /**
+     * Compares the occupancy counters of the spot index with the parking table. When the availability differs, the
+     * spots are compared one by one, and with repair a spot found different on two checks in a row, without any gate
+     * moving it in between, is set in place on the live index, so the claims and releases made meanwhile are kept:
+     * a single difference may only be a claim or a release not committed yet. Spots added to or removed from the
+     * table are only logged.
+     *
+     * @return the number of spots whose count differs from the table, or -1 if it could not be compared
+     */
+    public int checkSpotIndex(boolean repair){
+        ParkingSpotIndex index = spotIndex;
+        Map<ParkingType, int[]> counts = countParkingSpotsByType();
+        if(index == null || counts == null){
+            return -1;
+        }
+        int drift = 0;
+        boolean availableDrift = false;
+        for(ParkingType parkingType : ParkingType.values()){
+            int[] spotsAndAvailable = counts.getOrDefault(parkingType, new int[2]);
+            int spotDrift = spotsAndAvailable[0] - index.countSpots(parkingType);
+            if(spotDrift != 0){
+                logger.warn("The parking table has {} {} spot(s) more than the spot index, a restart is needed to serve them", spotDrift, parkingType);
+            }
+            int typeAvailableDrift = spotsAndAvailable[1] - index.countAvailable(parkingType);
+            availableDrift |= typeAvailableDrift != 0;
+            drift += Math.abs(spotDrift) + Math.abs(typeAvailableDrift);
+        }
+        if(availableDrift || !lastDriftedSpots.isEmpty()){
+            List<ParkingSpot> parkingSpots = getParkingSpots();
+            if(parkingSpots == null){
+                return -1;
+            }
+            Map<ParkingSpot, Integer> driftedSpots = new HashMap<>();
+            for(ParkingSpot parkingSpot : parkingSpots){
+                int changes = index.getChanges(parkingSpot.getId());
+                if(index.isAvailable(parkingSpot.getId(), parkingSpot.getParkingType()) != parkingSpot.isAvailable()){
+                    driftedSpots.put(parkingSpot, changes);
+                }
+            }
+            int repaired = 0;
+            for(Map.Entry<ParkingSpot, Integer> driftedSpot : driftedSpots.entrySet()){
+                ParkingSpot parkingSpot = driftedSpot.getKey();
+                if(repair && driftedSpot.getValue().equals(lastDriftedSpots.get(parkingSpot))
+                        && index.repair(parkingSpot.getId(), parkingSpot.getParkingType(), parkingSpot.isAvailable(), driftedSpot.getValue())){
+                    repaired++;
+                }
+            }
+            lastDriftedSpots = driftedSpots;
+            if(!driftedSpots.isEmpty()){
+                logger.warn("Spot index differs from the database on {} spot(s), {} repaired", driftedSpots.size(), repaired);
+            }
+        }
+        return drift;
+    }
+
+    /**
+     * Marks the lowest available spot of the given type as unavailable and returns its number, or -1 if none is left.
+     * The update only succeeds if the spot is still available, so two gates can never be given the same spot.
+     * Inside a unit of work the select may keep reading the snapshot of its first read, so the spots lost to
+     * another gate are skipped on the next attempts rather than selected again.
+     */
+    @Override
+    public int claimNextAvailableSlot(ParkingType parkingType){
+        long start = System.nanoTime();
+        int attempts = 0;
+        Set<Integer> lostNumbers = new HashSet<>();
+        while(true){
+            int parkingNumber;
+            if(spotIndex != null){
+                parkingNumber = spotIndex.claimLowestAvailable(parkingType);
+            }else if(attempts++ < MAX_CLAIM_ATTEMPTS){
+                if(lostNumbers.isEmpty()){
+                    parkingNumber = selectNextAvailableSlot(parkingType);
+                }else{
+                    List<Integer> candidates = selectAvailableSlots(parkingType, 1, lostNumbers);
+                    parkingNumber = candidates.isEmpty() ? -1 : candidates.get(0);
+                }
+            }else{
+                logger.error("Unable to claim a parking slot after {} attempts", MAX_CLAIM_ATTEMPTS);
+                exhaustedClaims.record(start, true);
+                return -1;
+            }
+            if(parkingNumber <= 0){
+                return -1;
+            }
+            int claimed = claimParkingSpot(parkingNumber);
+            if(claimed == 1){
+                if(spotIndex != null){
+                    int claimedNumber = parkingNumber;
+                    UnitOfWork.afterRollback(() -> spotIndex.setAvailable(claimedNumber, parkingType, true));
+                }
+                return parkingNumber;
+            }
+            if(claimed < 0){
+                if(spotIndex != null){
+                    spotIndex.setAvailable(parkingNumber, parkingType, true);
+                }
+                return -1;
+            }
+            // another gate took this spot first: try the next candidate
+            lostNumbers.add(parkingNumber);
+        }
+    }
+
+    /**
+     * Claims up to {@code count} spots of the given type with one JDBC batch per attempt and returns their numbers,
+     * fewer if the parking is full. Meant to run inside a unit of work, which releases the spots on rollback.
+     */
+    @Override
+    public List<Integer> claimAvailableSlots(ParkingType parkingType, int count){
+        long start = System.nanoTime();
+        List<Integer> claimedNumbers = new ArrayList<>(count);
+        int attempts = 0;
+        Set<Integer> lostNumbers = new HashSet<>();
+        while(claimedNumbers.size() < count){
+            List<Integer> candidates;
+            if(spotIndex != null){
+                candidates = new ArrayList<>();
+                while(candidates.size() < count - claimedNumbers.size()){
+                    int parkingNumber = spotIndex.claimLowestAvailable(parkingType);
+                    if(parkingNumber <= 0){
+                        break;
+                    }
+                    candidates.add(parkingNumber);
+                }
+            }else if(attempts++ < MAX_CLAIM_ATTEMPTS){
+                candidates = selectAvailableSlots(parkingType, count - claimedNumbers.size(), lostNumbers);
+            }else{
+                logger.error("Unable to claim {} parking slots after {} attempts", count, MAX_CLAIM_ATTEMPTS);
+                exhaustedClaims.record(start, true);
+                break;
+            }
+            if(candidates.isEmpty()){
+                break;
+            }
+            int[] claimed = claimParkingSpots(candidates);
+            if(claimed == null){
+                if(spotIndex != null){
+                    candidates.forEach(parkingNumber -> spotIndex.setAvailable(parkingNumber, parkingType, true));
+                }
+                break;
+            }
+            for(int i = 0; i < candidates.size(); i++){
+                // 0 means another gate took this spot first, the loop looks for a replacement
+                if(claimed[i] == 1){
+                    int claimedNumber = candidates.get(i);
+                    claimedNumbers.add(claimedNumber);
+                    if(spotIndex != null){
+                        UnitOfWork.afterRollback(() -> spotIndex.setAvailable(claimedNumber, parkingType, true));
+                    }
+                }else{
+                    lostNumbers.add(candidates.get(i));
+                }
+            }
+        }
+        return claimedNumbers;
+    }
+
+    @Override
     public boolean updateParking(ParkingSpot parkingSpot){
         //update the availability fo that parking slot
         Connection con = null;
@@ -47,6 +266,9 @@ public class ParkingSpotDAO {
             ps.setInt(2, parkingSpot.getId());
             int updateRowCount = ps.executeUpdate();
             dataBaseConfig.closePreparedStatement(ps);
+            if(updateRowCount == 1 && spotIndex != null){
+                updateSpotIndex(parkingSpot);
+            }
             return (updateRowCount == 1);
         }catch (Exception ex){
             logger.error("Error updating parking info",ex);
@@ -56,4 +278,181 @@ public class ParkingSpotDAO {
         }
     }
 
+    /**
+     * Writes the availability of all the spots with one JDBC batch.
+     * Meant to run inside a unit of work so that the batch is applied in a single transaction.
+     */
+    @Override
+    public boolean updateParkings(List<ParkingSpot> parkingSpots){
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT);
+            for(ParkingSpot parkingSpot : parkingSpots){
+                ps.setBoolean(1, parkingSpot.isAvailable());
+                ps.setInt(2, parkingSpot.getId());
+                ps.addBatch();
+            }
+            int[] updateRowCounts = ps.executeBatch();
+            dataBaseConfig.closePreparedStatement(ps);
+            boolean updated = true;
+            for(int i = 0; i < parkingSpots.size(); i++){
+                if(updateRowCounts[i] != 1 && updateRowCounts[i] != Statement.SUCCESS_NO_INFO){
+                    updated = false;
+                    continue;
+                }
+                if(spotIndex != null){
+                    updateSpotIndex(parkingSpots.get(i));
+                }
+            }
+            return updated;
+        }catch (Exception ex){
+            logger.error("Error updating parking info",ex);
+            return false;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * A spot taken leaves the index at once, so that no other gate is handed it, and comes back on rollback. A spot
+     * released only comes back once the release is committed: a gate handed it earlier would lose it in the database
+     * and leave it missing from the index.
+     */
+    private void updateSpotIndex(ParkingSpot parkingSpot){
+        ParkingSpotIndex index = spotIndex;
+        int parkingNumber = parkingSpot.getId();
+        ParkingType parkingType = parkingSpot.getParkingType();
+        if(parkingSpot.isAvailable()){
+            UnitOfWork.afterCommit(() -> index.setAvailable(parkingNumber, parkingType, true));
+        }else if(index.setAvailable(parkingNumber, parkingType, false)){
+            UnitOfWork.afterRollback(() -> index.setAvailable(parkingNumber, parkingType, true));
+        }
+    }
+
+    private int countParkingSpots(String query, ParkingType parkingType){
+        Connection con = null;
+        int result=-1;
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = con.prepareStatement(query);
+            ps.setString(1, parkingType.toString());
+            ResultSet rs = ps.executeQuery();
+            if(rs.next()){
+                result = rs.getInt(1);
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+        }catch (Exception ex){
+            logger.error("Error counting slots",ex);
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        return result;
+    }
+
+    private Map<ParkingType, int[]> countParkingSpotsByType(){
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = con.prepareStatement(DBConstants.COUNT_PARKING_SPOTS_BY_TYPE);
+            ResultSet rs = ps.executeQuery();
+            Map<ParkingType, int[]> counts = new EnumMap<>(ParkingType.class);
+            while(rs.next()){
+                counts.put(ParkingType.valueOf(rs.getString(1)), new int[]{rs.getInt(2), rs.getInt(3)});
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            return counts;
+        }catch (Exception ex){
+            logger.error("Error counting slots by type",ex);
+            return null;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private List<Integer> selectAvailableSlots(ParkingType parkingType, int count, Set<Integer> excludedNumbers){
+        Connection con = null;
+        List<Integer> result = new ArrayList<>(count);
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = con.prepareStatement(DBConstants.GET_AVAILABLE_PARKING_SPOTS);
+            ps.setString(1, parkingType.toString());
+            ps.setInt(2, count + excludedNumbers.size());
+            ResultSet rs = ps.executeQuery();
+            while(rs.next() && result.size() < count){
+                int parkingNumber = rs.getInt(1);
+                if(!excludedNumbers.contains(parkingNumber)){
+                    result.add(parkingNumber);
+                }
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+        }catch (Exception ex){
+            logger.error("Error fetching available slots",ex);
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        return result;
+    }
+
+    private int selectNextAvailableSlot(ParkingType parkingType){
+        Connection con = null;
+        int result=-1;
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = con.prepareStatement(DBConstants.GET_NEXT_PARKING_SPOT);
+            ps.setString(1, parkingType.toString());
+            ResultSet rs = ps.executeQuery();
+            if(rs.next()){
+                result = rs.getInt(1);;
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+        }catch (Exception ex){
+            logger.error("Error fetching next available slot",ex);
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        return result;
+    }
+
+    private int claimParkingSpot(int parkingNumber){
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = con.prepareStatement(DBConstants.CLAIM_PARKING_SPOT);
+            ps.setInt(1, parkingNumber);
+            int updateRowCount = ps.executeUpdate();
+            dataBaseConfig.closePreparedStatement(ps);
+            return updateRowCount;
+        }catch (Exception ex){
+            logger.error("Error claiming parking slot",ex);
+            return -1;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private int[] claimParkingSpots(List<Integer> parkingNumbers){
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = con.prepareStatement(DBConstants.CLAIM_PARKING_SPOT);
+            for(int parkingNumber : parkingNumbers){
+                ps.setInt(1, parkingNumber);
+                ps.addBatch();
+            }
+            int[] updateRowCounts = ps.executeBatch();
+            dataBaseConfig.closePreparedStatement(ps);
+            return updateRowCounts;
+        }catch (Exception ex){
+            logger.error("Error claiming parking slots",ex);
+            return null;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
 }
@@ -0,0 +1,134 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory availability of the parking spots, one bit per spot number and per {@link ParkingType}.
+ * Loaded once from the parking table and kept up to date by {@link ParkingSpotDAO}.
+ * Bits are flipped with compare-and-set so concurrent gates never get the same spot from {@link #claimLowestAvailable}.
+ * Each flip also moves a striped counter of the available spots of its type, so that occupancy is read in constant
+ * time without the gates contending on a single counter, and a per-spot counter of changes, so that a spot can be
+ * repaired only if no gate moved it since it was compared with the database.
+ */
+public class ParkingSpotIndex {
+
+    private final Map<ParkingType, AtomicLongArray> availableSpots = new EnumMap<>(ParkingType.class);
+    private final Map<ParkingType, LongAdder> availableCounts = new EnumMap<>(ParkingType.class);
+    private final int[] spotCounts = new int[ParkingType.values().length];
+    private final AtomicIntegerArray changes;
+    private final int capacity;
+
+    public ParkingSpotIndex(int maxParkingNumber) {
+        this.capacity = maxParkingNumber + 1;
+        this.changes = new AtomicIntegerArray(capacity);
+        for (ParkingType parkingType : ParkingType.values()) {
+            availableSpots.put(parkingType, new AtomicLongArray((capacity + 63) >>> 6));
+            availableCounts.put(parkingType, new LongAdder());
+        }
+    }
+
+    /**
+     * Registers a spot of the parking, counted by {@link #countSpots}. Meant to be called once per spot while loading.
+     */
+    public void addSpot(int parkingNumber, ParkingType parkingType, boolean available) {
+        if (parkingNumber <= 0 || parkingNumber >= capacity) {
+            return;
+        }
+        spotCounts[parkingType.ordinal()]++;
+        setAvailable(parkingNumber, parkingType, available);
+    }
+
+    public int getLowestAvailable(ParkingType parkingType) {
+        AtomicLongArray words = availableSpots.get(parkingType);
+        for (int i = 0; i < words.length(); i++) {
+            long word = words.get(i);
+            if (word != 0) {
+                return (i << 6) + Long.numberOfTrailingZeros(word);
+            }
+        }
+        return -1;
+    }
+
+    public boolean isAvailable(int parkingNumber, ParkingType parkingType) {
+        if (parkingNumber <= 0 || parkingNumber >= capacity) {
+            return false;
+        }
+        return (availableSpots.get(parkingType).get(parkingNumber >>> 6) & (1L << (parkingNumber & 63))) != 0;
+    }
+
+    public int countAvailable(ParkingType parkingType) {
+        return (int) availableCounts.get(parkingType).sum();
+    }
+
+    public int countSpots(ParkingType parkingType) {
+        return spotCounts[parkingType.ordinal()];
+    }
+
+    public int claimLowestAvailable(ParkingType parkingType) {
+        AtomicLongArray words = availableSpots.get(parkingType);
+        for (int i = 0; i < words.length(); i++) {
+            long word = words.get(i);
+            while (word != 0) {
+                long lowest = word & -word;
+                if (words.compareAndSet(i, word, word & ~lowest)) {
+                    availableCounts.get(parkingType).decrement();
+                    int parkingNumber = (i << 6) + Long.numberOfTrailingZeros(lowest);
+                    changes.incrementAndGet(parkingNumber);
+                    return parkingNumber;
+                }
+                word = words.get(i);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if the availability of the spot changed
+     */
+    public boolean setAvailable(int parkingNumber, ParkingType parkingType, boolean available) {
+        if (parkingNumber <= 0 || parkingNumber >= capacity) {
+            return false;
+        }
+        AtomicLongArray words = availableSpots.get(parkingType);
+        int i = parkingNumber >>> 6;
+        long bit = 1L << (parkingNumber & 63);
+        while (true) {
+            long word = words.get(i);
+            long updated = available ? (word | bit) : (word & ~bit);
+            if (word == updated) {
+                return false;
+            }
+            if (words.compareAndSet(i, word, updated)) {
+                availableCounts.get(parkingType).add(available ? 1 : -1);
+                changes.incrementAndGet(parkingNumber);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the number of times the availability of the spot changed, to give to {@link #repair}
+     */
+    public int getChanges(int parkingNumber) {
+        if (parkingNumber <= 0 || parkingNumber >= capacity) {
+            return 0;
+        }
+        return changes.get(parkingNumber);
+    }
+
+    /**
+     * Sets the availability of a spot found different from the database, unless it changed since {@code changes}
+     * was read.
+     *
+     * @return true if the availability of the spot changed
+     */
+    public boolean repair(int parkingNumber, ParkingType parkingType, boolean available, int changes) {
+        return getChanges(parkingNumber) == changes && setAvailable(parkingNumber, parkingType, available);
+    }
+}
@@ -0,0 +1,43 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import java.util.List;
+
+/**
+ * Storage of the parking spots and of their availability.
+ * Writes made inside a {@link UnitOfWork} are undone if it is closed without being committed.
+ */
+public interface ParkingSpotStore {
+
+    /**
+     * @return the lowest available spot number of the given type, or -1 if there is none
+     */
+    int getNextAvailableSlot(ParkingType parkingType);
+
+    /**
+     * @return the number of available spots of the given type, or -1 on error
+     */
+    int getNbAvailableSlot(ParkingType parkingType);
+
+    /**
+     * @return the number of spots of the given type, available or not, or -1 on error
+     */
+    int getNbSlot(ParkingType parkingType);
+
+    /**
+     * Marks the lowest available spot of the given type as unavailable and returns its number, or -1 if none is left.
+     * Two concurrent callers are never given the same spot.
+     */
+    int claimNextAvailableSlot(ParkingType parkingType);
+
+    /**
+     * Claims up to {@code count} spots of the given type and returns their numbers, fewer if the parking is full.
+     */
+    List<Integer> claimAvailableSlots(ParkingType parkingType, int count);
+
+    boolean updateParking(ParkingSpot parkingSpot);
+
+    boolean updateParkings(List<ParkingSpot> parkingSpots);
+}
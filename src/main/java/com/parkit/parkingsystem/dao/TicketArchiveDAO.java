@@ -0,0 +1,70 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
+
+public class TicketArchiveDAO {
+
+    private static final Logger logger = LogManager.getLogger("TicketArchiveDAO");
+
+    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+
+    /**
+     * Moves at most batchSize tickets closed before the given date from ticket to ticket_history,
+     * adding them to the archived visit count of their vehicle, in one short transaction.
+     *
+     * @return the number of archived tickets, or -1 on error
+     */
+    public int archiveClosedTickets(Date closedBefore, int batchSize) {
+        Timestamp outTime = new Timestamp(closedBefore.getTime());
+        try (UnitOfWork unitOfWork = UnitOfWork.begin(dataBaseConfig)) {
+            Connection con = dataBaseConfig.getConnection();
+            int minId;
+            int maxId;
+            PreparedStatement ps = con.prepareStatement(DBConstants.GET_ARCHIVE_BATCH);
+            ps.setTimestamp(1, outTime);
+            ps.setInt(2, batchSize);
+            ResultSet rs = ps.executeQuery();
+            rs.next();
+            minId = rs.getInt(1);
+            maxId = rs.getInt(2);
+            boolean empty = rs.wasNull();
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            if (empty) {
+                return 0;
+            }
+            int archived = executeForBatch(con, DBConstants.ARCHIVE_TICKETS, minId, maxId, outTime);
+            executeForBatch(con, DBConstants.COUNT_ARCHIVED_TICKETS, minId, maxId, outTime);
+            int deleted = executeForBatch(con, DBConstants.DELETE_ARCHIVED_TICKETS, minId, maxId, outTime);
+            if (archived != deleted) {
+                logger.error("Archived {} tickets but deleted {}, rolling back", archived, deleted);
+                return -1;
+            }
+            unitOfWork.commit();
+            return archived;
+        } catch (Exception ex) {
+            logger.error("Error archiving closed tickets", ex);
+            return -1;
+        }
+    }
+
+    private int executeForBatch(Connection con, String sql, int minId, int maxId, Timestamp outTime) throws SQLException {
+        PreparedStatement ps = con.prepareStatement(sql);
+        ps.setInt(1, minId);
+        ps.setInt(2, maxId);
+        ps.setTimestamp(3, outTime);
+        int updateRowCount = ps.executeUpdate();
+        dataBaseConfig.closePreparedStatement(ps);
+        return updateRowCount;
+    }
+}
@@ -3,6 +3,7 @@ package com.parkit.parkingsystem.dao;
 import com.parkit.parkingsystem.config.DataBaseConfig;
 import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.LastTicket;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
 import org.apache.logging.log4j.LogManager;
@@ -11,36 +12,177 @@ import org.apache.logging.log4j.Logger;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
-public class TicketDAO {
+public class TicketDAO implements TicketStore {
 
     private static final Logger logger = LogManager.getLogger("TicketDAO");
 
     public DataBaseConfig dataBaseConfig = new DataBaseConfig();
 
+    public ActiveTicketCache activeTicketCache;
+
+    public VisitCountCache visitCountCache;
+
+    @Override
+    public UnitOfWork beginUnitOfWork() throws ClassNotFoundException, SQLException {
+        return UnitOfWork.begin(dataBaseConfig);
+    }
+
+    public boolean loadActiveTicketCache() {
+        Map<String, Ticket> openTickets = getOpenTickets();
+        if (openTickets == null) {
+            return false;
+        }
+        ActiveTicketCache cache = new ActiveTicketCache();
+        openTickets.values().forEach(cache::put);
+        activeTicketCache = cache;
+        logger.info("Loaded {} open tickets", cache.size());
+        return true;
+    }
+
+    /**
+     * Compares the active ticket cache with the open tickets of the database, for instance
+     * to detect tickets closed by another instance.
+     *
+     * @return the number of vehicles for which the cache and the database disagree, or -1 on error
+     */
+    public int checkActiveTicketCache(boolean repair) {
+        Map<String, Ticket> openTickets = getOpenTickets();
+        if (activeTicketCache == null || openTickets == null) {
+            return -1;
+        }
+        int drift = activeTicketCache.reconcile(openTickets, repair);
+        if (drift > 0) {
+            logger.warn("Active ticket cache differs from the database for {} vehicle(s)", drift);
+        }
+        return drift;
+    }
+
+    @Override
     public boolean saveTicket(Ticket ticket) {
         Connection con = null;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET);
+            PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS);
             //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
             //ps.setInt(1,ticket.getId());
             ps.setInt(1, ticket.getParkingSpot().getId());
             ps.setString(2, ticket.getVehicleRegNumber());
             ps.setDouble(3, ticket.getPrice());
-            ps.setTimestamp(4, new Timestamp(ticket.getInTime().getTime()));
-            ps.setTimestamp(5, (ticket.getOutTime() == null) ? null : (new Timestamp(ticket.getOutTime().getTime())));
-            return ps.execute();
+            ps.setTimestamp(4, new Timestamp(ticket.getInTimeMillis()));
+            ps.setTimestamp(5, (ticket.getOutTimeMillis() == Ticket.NO_TIME) ? null : (new Timestamp(ticket.getOutTimeMillis())));
+            VisitCountCache visitCounts = visitCountCache;
+            // begun before the insert, which commits at once without a unit of work
+            VisitCountCache.Increment increment = visitCounts == null ? null : visitCounts.beginIncrement(ticket.getVehicleRegNumber());
+            int updateRowCount = ps.executeUpdate();
+            ResultSet rs = ps.getGeneratedKeys();
+            if (rs.next()) {
+                ticket.setId(rs.getInt(1));
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            if (updateRowCount == 1 && (activeTicketCache != null || visitCounts != null)) {
+                ActiveTicketCache activeTickets = activeTicketCache;
+                Ticket saved = ticket;
+                UnitOfWork.afterCommit(() -> {
+                    if (increment != null) {
+                        visitCounts.commitIncrement(increment, 1);
+                    }
+                    cacheSavedTicket(saved, activeTickets, visitCounts);
+                });
+            }
+            return (updateRowCount == 1);
         } catch (Exception ex) {
-            logger.error("Error fetching next available slot", ex);
+            logger.error("Error saving ticket", ex);
+            return false;
         } finally {
             dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Inserts all the tickets with one JDBC batch and sets their ids.
+     * Meant to run inside a unit of work so that the batch is saved in a single transaction.
+     */
+    @Override
+    public boolean saveTickets(List<Ticket> tickets) {
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS);
+            for (Ticket ticket : tickets) {
+                ps.setInt(1, ticket.getParkingSpot().getId());
+                ps.setString(2, ticket.getVehicleRegNumber());
+                ps.setDouble(3, ticket.getPrice());
+                ps.setTimestamp(4, new Timestamp(ticket.getInTimeMillis()));
+                ps.setTimestamp(5, (ticket.getOutTimeMillis() == Ticket.NO_TIME) ? null : (new Timestamp(ticket.getOutTimeMillis())));
+                ps.addBatch();
+            }
+            VisitCountCache visitCounts = visitCountCache;
+            Map<VisitCountCache.Increment, Integer> increments = new HashMap<>();
+            if (visitCounts != null) {
+                Map<String, VisitCountCache.Increment> byVehicle = new HashMap<>();
+                for (Ticket ticket : tickets) {
+                    increments.merge(byVehicle.computeIfAbsent(ticket.getVehicleRegNumber(), visitCounts::beginIncrement), 1, Integer::sum);
+                }
+            }
+            int[] updateRowCounts = ps.executeBatch();
+            ResultSet rs = ps.getGeneratedKeys();
+            for (int i = 0; i < tickets.size() && rs.next(); i++) {
+                tickets.get(i).setId(rs.getInt(1));
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            for (int updateRowCount : updateRowCounts) {
+                if (updateRowCount != 1 && updateRowCount != Statement.SUCCESS_NO_INFO) {
+                    return false;
+                }
+            }
+            if (activeTicketCache != null || visitCounts != null) {
+                ActiveTicketCache activeTickets = activeTicketCache;
+                List<Ticket> saved = new ArrayList<>(tickets);
+                UnitOfWork.afterCommit(() -> {
+                    if (visitCounts != null) {
+                        increments.forEach(visitCounts::commitIncrement);
+                    }
+                    saved.forEach(ticket -> cacheSavedTicket(ticket, activeTickets, visitCounts));
+                });
+            }
+            return true;
+        } catch (Exception ex) {
+            logger.error("Error saving tickets", ex);
             return false;
+        } finally {
+            dataBaseConfig.closeConnection(con);
         }
     }
 
+    /**
+     * Caches the committed ticket if open, with the number of tickets when the visit count cache knows it.
+     */
+    private static void cacheSavedTicket(Ticket ticket, ActiveTicketCache activeTickets, VisitCountCache visitCounts) {
+        if (activeTickets != null && ticket.getOutTimeMillis() == Ticket.NO_TIME) {
+            activeTickets.put(ticket, visitCounts == null ? -1 : visitCounts.getNbTicket(ticket.getVehicleRegNumber()));
+        }
+    }
+
+    @Override
     public Ticket getTicket(String vehicleRegNumber) {
+        if (activeTicketCache != null) {
+            Ticket openTicket = activeTicketCache.get(vehicleRegNumber);
+            if (openTicket != null) {
+                return openTicket;
+            }
+        }
         Connection con = null;
         Ticket ticket = null;
         try {
@@ -50,14 +192,7 @@ public class TicketDAO {
             ps.setString(1, vehicleRegNumber);
             ResultSet rs = ps.executeQuery();
             if (rs.next()) {
-                ticket = new Ticket();
-                ParkingSpot parkingSpot = new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(6)), false);
-                ticket.setParkingSpot(parkingSpot);
-                ticket.setId(rs.getInt(2));
-                ticket.setVehicleRegNumber(vehicleRegNumber);
-                ticket.setPrice(rs.getDouble(3));
-                ticket.setInTime(rs.getTimestamp(4));
-                ticket.setOutTime(rs.getTimestamp(5));
+                ticket = toTicket(rs, vehicleRegNumber);
             }
             dataBaseConfig.closeResultSet(rs);
             dataBaseConfig.closePreparedStatement(ps);
@@ -69,36 +204,185 @@ public class TicketDAO {
         }
     }
 
+    /**
+     * Latest ticket of the vehicle together with its number of tickets, fetched with a single query.
+     */
+    @Override
+    public LastTicket getLastTicket(String vehicleRegNumber) {
+        ActiveTicketCache activeTickets = activeTicketCache;
+        if (activeTickets != null) {
+            LastTicket openTicket = activeTickets.getLastTicket(vehicleRegNumber);
+            if (openTicket != null && openTicket.getNbTicket() < 0) {
+                int nbTicket = readNbTicket(vehicleRegNumber);
+                if (nbTicket >= 0) {
+                    activeTickets.setNbTicket(vehicleRegNumber, openTicket.getTicket().getId(), nbTicket);
+                }
+                return new LastTicket(openTicket.getTicket(), Math.max(0, nbTicket));
+            }
+            if (openTicket != null) {
+                return openTicket;
+            }
+        }
+        VisitCountCache visitCounts = visitCountCache;
+        long version = visitCounts == null ? 0 : visitCounts.getVersion(vehicleRegNumber);
+        Connection con = null;
+        LastTicket lastTicket = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = con.prepareStatement(DBConstants.GET_LAST_TICKET);
+            ps.setString(1, vehicleRegNumber);
+            ResultSet rs = ps.executeQuery();
+            if (rs.next()) {
+                lastTicket = new LastTicket(toTicket(rs, vehicleRegNumber), rs.getInt(7));
+                if (visitCounts != null) {
+                    visitCounts.putNbTicket(vehicleRegNumber, lastTicket.getNbTicket(), version);
+                }
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+        } catch (Exception ex) {
+            logger.error("Error fetching last ticket", ex);
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        return lastTicket;
+    }
+
+    /**
+     * Reads the latest ticket and the number of visits of all the vehicles with one query.
+     */
+    @Override
+    public Map<String, LastTicket> getLastTickets(Collection<String> vehicleRegNumbers) {
+        Map<String, LastTicket> lastTickets = new HashMap<>();
+        if (vehicleRegNumbers.isEmpty()) {
+            return lastTickets;
+        }
+        String placeholders = String.join(",", Collections.nCopies(vehicleRegNumbers.size(), "?"));
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = con.prepareStatement(String.format(DBConstants.GET_LAST_TICKETS, placeholders, placeholders));
+            int index = 1;
+            for (int i = 0; i < 2; i++) {
+                for (String vehicleRegNumber : vehicleRegNumbers) {
+                    ps.setString(index++, vehicleRegNumber);
+                }
+            }
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                String vehicleRegNumber = rs.getString(7);
+                Ticket ticket = rs.getString(6) == null ? null : toTicket(rs, vehicleRegNumber);
+                lastTickets.put(vehicleRegNumber, new LastTicket(ticket, rs.getInt(8)));
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+        } catch (Exception ex) {
+            logger.error("Error fetching last tickets", ex);
+            return null;
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        return lastTickets;
+    }
+
+    @Override
+    public boolean hasTicket(String vehicleRegNumber) {
+        VisitCountCache visitCounts = visitCountCache;
+        long version = 0;
+        if (visitCounts != null) {
+            int nbTicket = visitCounts.getNbTicket(vehicleRegNumber);
+            if (nbTicket >= 0) {
+                return nbTicket > 0;
+            }
+            version = visitCounts.getVersion(vehicleRegNumber);
+        }
+        Connection con = null;
+        boolean hasTicket = false;
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = con.prepareStatement(DBConstants.HAS_TICKET);
+            ps.setString(1, vehicleRegNumber);
+            ps.setString(2, vehicleRegNumber);
+            ResultSet rs = ps.executeQuery();
+            if (rs.next()) {
+                hasTicket = rs.getBoolean(1);
+                if (!hasTicket && visitCounts != null) {
+                    visitCounts.putNbTicket(vehicleRegNumber, 0, version);
+                }
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+        } catch (Exception ex) {
+            logger.error("Error checking vehicle tickets", ex);
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        return hasTicket;
+    }
+
+    @Override
     public int getNbTicket(String vehicleRegNumber) {
+        return Math.max(0, readNbTicket(vehicleRegNumber));
+    }
+
+    /**
+     * @return the number of tickets of the vehicle, or -1 if it could not be read
+     */
+    private int readNbTicket(String vehicleRegNumber) {
+        VisitCountCache visitCounts = visitCountCache;
+        long version = 0;
+        if (visitCounts != null) {
+            int nbTicket = visitCounts.getNbTicket(vehicleRegNumber);
+            if (nbTicket >= 0) {
+                return nbTicket;
+            }
+            version = visitCounts.getVersion(vehicleRegNumber);
+        }
         Connection con = null;
         int nbTicket = 0;
         try {
             con = dataBaseConfig.getConnection();
             PreparedStatement ps = con.prepareStatement(DBConstants.GET_NB_TICKET);
             ps.setString(1, vehicleRegNumber);
+            ps.setString(2, vehicleRegNumber);
             ResultSet rs = ps.executeQuery();
             if (rs.next()) {
                 nbTicket = rs.getInt(1);
             }
             dataBaseConfig.closeResultSet(rs);
             dataBaseConfig.closePreparedStatement(ps);
+            if (visitCounts != null) {
+                visitCounts.putNbTicket(vehicleRegNumber, nbTicket, version);
+            }
+            return nbTicket;
         } catch (Exception ex) {
             logger.error("Error fetching nb tickett", ex);
+            return -1;
         } finally {
             dataBaseConfig.closeConnection(con);
-            return nbTicket;
         }
     }
 
+    @Override
     public boolean updateTicket(Ticket ticket) {
         Connection con = null;
         try {
             con = dataBaseConfig.getConnection();
             PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_TICKET);
             ps.setDouble(1, ticket.getPrice());
-            ps.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
+            ps.setTimestamp(2, new Timestamp(ticket.getOutTimeMillis()));
             ps.setInt(3, ticket.getId());
-            ps.execute();
+            int updateRowCount = ps.executeUpdate();
+            dataBaseConfig.closePreparedStatement(ps);
+            if (updateRowCount != 1) {
+                return false;
+            }
+            if (activeTicketCache != null) {
+                ActiveTicketCache cache = activeTicketCache;
+                String vehicleRegNumber = ticket.getVehicleRegNumber();
+                int ticketId = ticket.getId();
+                UnitOfWork.afterCommit(() -> cache.remove(vehicleRegNumber, ticketId));
+            }
             return true;
         } catch (Exception ex) {
             logger.error("Error saving ticket info", ex);
@@ -107,4 +391,75 @@ public class TicketDAO {
         }
         return false;
     }
+
+    /**
+     * Writes the price and out time of all the tickets with one JDBC batch.
+     * Meant to run inside a unit of work so that the batch is applied in a single transaction.
+     */
+    @Override
+    public boolean updateTickets(List<Ticket> tickets) {
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_TICKET);
+            for (Ticket ticket : tickets) {
+                ps.setDouble(1, ticket.getPrice());
+                ps.setTimestamp(2, new Timestamp(ticket.getOutTimeMillis()));
+                ps.setInt(3, ticket.getId());
+                ps.addBatch();
+            }
+            int[] updateRowCounts = ps.executeBatch();
+            dataBaseConfig.closePreparedStatement(ps);
+            for (int updateRowCount : updateRowCounts) {
+                if (updateRowCount != 1 && updateRowCount != Statement.SUCCESS_NO_INFO) {
+                    return false;
+                }
+            }
+            if (activeTicketCache != null) {
+                ActiveTicketCache cache = activeTicketCache;
+                List<Ticket> closed = new ArrayList<>(tickets);
+                UnitOfWork.afterCommit(() -> closed.forEach(ticket -> cache.remove(ticket.getVehicleRegNumber(), ticket.getId())));
+            }
+            return true;
+        } catch (Exception ex) {
+            logger.error("Error saving tickets info", ex);
+            return false;
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private Map<String, Ticket> getOpenTickets() {
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = con.prepareStatement(DBConstants.GET_OPEN_TICKETS);
+            ResultSet rs = ps.executeQuery();
+            Map<String, Ticket> openTickets = new HashMap<>();
+            while (rs.next()) {
+                Ticket ticket = toTicket(rs, rs.getString(7));
+                openTickets.put(ticket.getVehicleRegNumber(), ticket);
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            return openTickets;
+        } catch (Exception ex) {
+            logger.error("Error fetching open tickets", ex);
+            return null;
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private Ticket toTicket(ResultSet rs, String vehicleRegNumber) throws SQLException {
+        Ticket ticket = new Ticket();
+        ParkingSpot parkingSpot = new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(6)), false);
+        ticket.setParkingSpot(parkingSpot);
+        ticket.setId(rs.getInt(2));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setPrice(rs.getDouble(3));
+        ticket.setInTime(rs.getTimestamp(4));
+        ticket.setOutTime(rs.getTimestamp(5));
+        return ticket;
+    }
 }
@@ -0,0 +1,97 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+
+/**
+ * Reads the closed tickets for the reconciliation job through one forward-only cursor, and writes back their prices.
+ */
+public class TicketReconciliationDAO {
+
+    private static final Logger logger = LogManager.getLogger("TicketReconciliationDAO");
+
+    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+
+    public interface ClosedTicketConsumer {
+        /**
+         * @param visits number of tickets of the vehicle up to this one, archived ones included
+         */
+        void accept(int id, String vehicleRegNumber, ParkingType parkingType, long inTimeMillis, long outTimeMillis,
+                    double price, int visits) throws InterruptedException;
+    }
+
+    /**
+     * Hands every ticket closed in [from, to) to the consumer, on the calling thread, as rows arrive from the database:
+     * the tickets are never all held in memory. MySQL streams the rows one by one; other drivers fetch them
+     * fetchSize at a time.
+     *
+     * @return the number of tickets read
+     */
+    public long readClosedTickets(Timestamp from, Timestamp to, int fetchSize, ClosedTicketConsumer consumer)
+            throws ClassNotFoundException, SQLException, InterruptedException {
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = con.prepareStatement(DBConstants.GET_CLOSED_TICKETS_WITH_VISIT,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            // Connector/J only streams with this value, any positive fetch size still buffers the whole result
+            ps.setFetchSize("MySQL".equals(con.getMetaData().getDatabaseProductName()) ? Integer.MIN_VALUE : fetchSize);
+            ps.setTimestamp(1, from);
+            ps.setTimestamp(2, to);
+            ResultSet rs = ps.executeQuery();
+            long count = 0;
+            try {
+                while (rs.next()) {
+                    consumer.accept(rs.getInt(1), rs.getString(2), ParkingType.valueOf(rs.getString(3)),
+                            rs.getTimestamp(4).getTime(), rs.getTimestamp(5).getTime(), rs.getDouble(6), rs.getInt(7));
+                    count++;
+                }
+            } finally {
+                dataBaseConfig.closeResultSet(rs);
+                dataBaseConfig.closePreparedStatement(ps);
+            }
+            return count;
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Sets the price of the first count tickets in one JDBC batch and one transaction.
+     *
+     * @return false if any ticket could not be updated, in which case none is
+     */
+    public boolean updatePrices(int[] ids, double[] prices, int count) {
+        try (UnitOfWork unitOfWork = UnitOfWork.begin(dataBaseConfig)) {
+            Connection con = dataBaseConfig.getConnection();
+            PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_TICKET_PRICE);
+            for (int i = 0; i < count; i++) {
+                ps.setDouble(1, prices[i]);
+                ps.setInt(2, ids[i]);
+                ps.addBatch();
+            }
+            int[] updateRowCounts = ps.executeBatch();
+            dataBaseConfig.closePreparedStatement(ps);
+            for (int updateRowCount : updateRowCounts) {
+                if (updateRowCount != 1 && updateRowCount != Statement.SUCCESS_NO_INFO) {
+                    return false;
+                }
+            }
+            unitOfWork.commit();
+            return true;
+        } catch (Exception ex) {
+            logger.error("Error updating the price of " + count + " tickets", ex);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.model.LastTicket;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage of the parking tickets.
+ * Writes made inside a {@link UnitOfWork} are undone if it is closed without being committed.
+ */
+public interface TicketStore {
+
+    /**
+     * Starts the unit of work that the following calls of the current thread, on this store and on the spot store, join.
+     */
+    UnitOfWork beginUnitOfWork() throws ClassNotFoundException, SQLException;
+
+    /**
+     * Saves a new ticket and sets its id. A store may refuse an open ticket for a vehicle that already has one.
+     */
+    boolean saveTicket(Ticket ticket);
+
+    boolean saveTickets(List<Ticket> tickets);
+
+    /**
+     * @return the latest ticket of the vehicle, or null if it never came
+     */
+    Ticket getTicket(String vehicleRegNumber);
+
+    /**
+     * @return the latest ticket of the vehicle together with its number of tickets, or null if it never came
+     */
+    LastTicket getLastTicket(String vehicleRegNumber);
+
+    /**
+     * Looks up a burst of vehicles at once, by default one after the other.
+     *
+     * @return the latest ticket and the number of tickets of the vehicles that came before, by plate, the ticket being
+     * null for a vehicle whose tickets are all archived; or null if the store could not be read
+     */
+    default Map<String, LastTicket> getLastTickets(Collection<String> vehicleRegNumbers) {
+        Map<String, LastTicket> lastTickets = new HashMap<>();
+        for (String vehicleRegNumber : vehicleRegNumbers) {
+            LastTicket lastTicket = getLastTicket(vehicleRegNumber);
+            if (lastTicket != null) {
+                lastTickets.put(vehicleRegNumber, lastTicket);
+            } else if (hasTicket(vehicleRegNumber)) {
+                lastTickets.put(vehicleRegNumber, new LastTicket(null, getNbTicket(vehicleRegNumber)));
+            }
+        }
+        return lastTickets;
+    }
+
+    boolean hasTicket(String vehicleRegNumber);
+
+    int getNbTicket(String vehicleRegNumber);
+
+    /**
+     * Writes the price and the out time of the ticket.
+     *
+     * @return false if the ticket is unknown or already closed
+     */
+    boolean updateTicket(Ticket ticket);
+
+    boolean updateTickets(List<Ticket> tickets);
+}
@@ -0,0 +1,146 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One connection and one transaction shared by all the DAO calls made on the current thread
+ * until the unit of work is closed. Closing it without {@link #commit()} rolls the transaction back.
+ * A unit of work begun without a database only collects the commit and rollback callbacks of in-memory stores.
+ */
+public class UnitOfWork implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("UnitOfWork");
+
+    private static final ThreadLocal<UnitOfWork> current = new ThreadLocal<>();
+
+    private final DataBaseConfig dataBaseConfig;
+    private final Connection connection;
+    private final List<Runnable> beforeCommitActions = new ArrayList<>();
+    private final List<Runnable> afterCommitActions = new ArrayList<>();
+    private final List<Runnable> afterRollbackActions = new ArrayList<>();
+    private boolean committed;
+
+    private UnitOfWork(DataBaseConfig dataBaseConfig, Connection connection) {
+        this.dataBaseConfig = dataBaseConfig;
+        this.connection = connection;
+    }
+
+    public static UnitOfWork begin() {
+        if (current.get() != null) {
+            throw new IllegalStateException("A unit of work is already in progress on this thread");
+        }
+        UnitOfWork unitOfWork = new UnitOfWork(null, null);
+        current.set(unitOfWork);
+        return unitOfWork;
+    }
+
+    public static UnitOfWork begin(DataBaseConfig dataBaseConfig) throws ClassNotFoundException, SQLException {
+        if (current.get() != null) {
+            throw new IllegalStateException("A unit of work is already in progress on this thread");
+        }
+        Connection connection = dataBaseConfig.getConnection();
+        try {
+            connection.setAutoCommit(false);
+        } catch (SQLException e) {
+            dataBaseConfig.closeConnection(connection);
+            throw e;
+        }
+        dataBaseConfig.bindConnection(connection);
+        UnitOfWork unitOfWork = new UnitOfWork(dataBaseConfig, connection);
+        current.set(unitOfWork);
+        return unitOfWork;
+    }
+
+    /**
+     * Whether a unit of work is in progress on the current thread.
+     */
+    public static boolean inProgress() {
+        return current.get() != null;
+    }
+
+    /**
+     * Runs the action when the current unit of work commits, or right away if there is none.
+     * An exception thrown by the action makes the commit fail, the unit of work is then rolled back on close.
+     */
+    public static void beforeCommit(Runnable action) {
+        UnitOfWork unitOfWork = current.get();
+        if (unitOfWork == null) {
+            action.run();
+        } else {
+            unitOfWork.beforeCommitActions.add(action);
+        }
+    }
+
+    /**
+     * Runs the action once the current unit of work is committed, or right away if there is none.
+     */
+    public static void afterCommit(Runnable action) {
+        UnitOfWork unitOfWork = current.get();
+        if (unitOfWork == null) {
+            action.run();
+        } else {
+            unitOfWork.afterCommitActions.add(action);
+        }
+    }
+
+    /**
+     * Runs the action if the current unit of work is rolled back. Does nothing if there is none.
+     */
+    public static void afterRollback(Runnable action) {
+        UnitOfWork unitOfWork = current.get();
+        if (unitOfWork != null) {
+            unitOfWork.afterRollbackActions.add(action);
+        }
+    }
+
+    public void commit() throws SQLException {
+        beforeCommitActions.forEach(Runnable::run);
+        if (connection != null) {
+            connection.commit();
+        }
+        committed = true;
+        afterCommitActions.forEach(UnitOfWork::runSafely);
+    }
+
+    @Override
+    public void close() {
+        if (connection == null) {
+            current.remove();
+            if (!committed) {
+                // undo in reverse order, the latest write may depend on the earlier ones
+                for (int i = afterRollbackActions.size() - 1; i >= 0; i--) {
+                    runSafely(afterRollbackActions.get(i));
+                }
+            }
+            return;
+        }
+        try {
+            if (!committed) {
+                connection.rollback();
+                afterRollbackActions.forEach(UnitOfWork::runSafely);
+            }
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            logger.error("Error while ending unit of work", e);
+        } finally {
+            current.remove();
+            dataBaseConfig.unbindConnection();
+            dataBaseConfig.closeConnection(connection);
+        }
+    }
+
+    private static void runSafely(Runnable action) {
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            logger.error("Error while running unit of work callback", e);
+        }
+    }
+}
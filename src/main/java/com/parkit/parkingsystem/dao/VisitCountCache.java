@@ -0,0 +1,139 @@
+package com.parkit.parkingsystem.dao;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Number of tickets per registration number for the most recently seen vehicles. A vehicle missing from the cache
+ * is read from the database, whatever this instance saw of it, and so is a vehicle whose count was read more than
+ * {@link #TTL_SECONDS} ago: tickets saved by other instances are only counted once the count is read again.
+ * <p>
+ * A count read from the database is only kept if no ticket of the vehicle started being saved meanwhile: saving moves
+ * the version of the vehicle's stripe before the ticket can be committed, and a read taken before that version moved
+ * may miss the new ticket. Once committed, the count is set from the one cached before the save, which cannot include
+ * the ticket, rather than incremented, so a count read after the commit is never counted twice.
+ */
+public class VisitCountCache {
+
+    public static final int MAX_SIZE = Integer.getInteger("parkit.visitCount.maxSize", 100_000);
+    public static final long TTL_SECONDS = Long.getLong("parkit.visitCount.ttlSeconds", 300);
+
+    private static final int STRIPES = 1024;
+
+    private final Map<String, Count> nbTickets;
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+    private final long ttlNanos;
+
+    public VisitCountCache() {
+        this(MAX_SIZE, TimeUnit.SECONDS.toMillis(TTL_SECONDS));
+    }
+
+    public VisitCountCache(int maxSize, long ttlMillis) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.nbTickets = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Count> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return the cached number of tickets, or -1 if it has to be read from the database
+     */
+    public int getNbTicket(String vehicleRegNumber) {
+        synchronized (nbTickets) {
+            Count count = getCount(vehicleRegNumber);
+            return count == null ? -1 : count.nbTicket;
+        }
+    }
+
+    /**
+     * @return the version to give to {@link #putNbTicket} with the count read from the database after this call
+     */
+    public long getVersion(String vehicleRegNumber) {
+        return versions.get(stripe(vehicleRegNumber));
+    }
+
+    /**
+     * Keeps a count read from the database, unless a ticket of the vehicle started being saved since {@code version}
+     * was taken. A higher count already cached is kept.
+     */
+    public void putNbTicket(String vehicleRegNumber, int nbTicket, long version) {
+        synchronized (nbTickets) {
+            if (versions.get(stripe(vehicleRegNumber)) == version) {
+                Count count = nbTickets.get(vehicleRegNumber);
+                if (count == null || count.nbTicket <= nbTicket) {
+                    nbTickets.put(vehicleRegNumber, new Count(nbTicket, System.nanoTime()));
+                }
+            }
+        }
+    }
+
+    /**
+     * To call before a ticket of the vehicle is written, and so before it can be committed: counts read from the
+     * database up to now are no longer kept.
+     *
+     * @return what to give to {@link #commitIncrement} once the tickets are committed
+     */
+    public Increment beginIncrement(String vehicleRegNumber) {
+        synchronized (nbTickets) {
+            versions.incrementAndGet(stripe(vehicleRegNumber));
+            return new Increment(vehicleRegNumber, getCount(vehicleRegNumber));
+        }
+    }
+
+    /**
+     * Counts the committed tickets from the count cached when the save began. A vehicle that was not cached then
+     * is dropped, its count being unknown. Counts read from the database before this call are no longer kept.
+     */
+    public void commitIncrement(Increment increment, int nbSaved) {
+        synchronized (nbTickets) {
+            versions.incrementAndGet(stripe(increment.vehicleRegNumber));
+            if (increment.before == null) {
+                nbTickets.remove(increment.vehicleRegNumber);
+            } else {
+                nbTickets.put(increment.vehicleRegNumber, new Count(increment.before.nbTicket + nbSaved, increment.before.readAt));
+            }
+        }
+    }
+
+    private Count getCount(String vehicleRegNumber) {
+        Count count = nbTickets.get(vehicleRegNumber);
+        if (count != null && System.nanoTime() - count.readAt >= ttlNanos) {
+            nbTickets.remove(vehicleRegNumber);
+            return null;
+        }
+        return count;
+    }
+
+    private static int stripe(String vehicleRegNumber) {
+        return (vehicleRegNumber.hashCode() & 0x7fffffff) % STRIPES;
+    }
+
+    private static final class Count {
+        private final int nbTicket;
+        // when the count was last read from the database, incrementing it keeps that time
+        private final long readAt;
+
+        private Count(int nbTicket, long readAt) {
+            this.nbTicket = nbTicket;
+            this.readAt = readAt;
+        }
+    }
+
+    /**
+     * Tickets of a vehicle being saved, see {@link #beginIncrement}.
+     */
+    public static final class Increment {
+        private final String vehicleRegNumber;
+        private final Count before;
+
+        private Increment(String vehicleRegNumber, Count before) {
+            this.vehicleRegNumber = vehicleRegNumber;
+            this.before = before;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.parkit.parkingsystem.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of the operation metrics of the app, looked up by name once and then recorded into directly.
+ * Once {@link #registerMBeans()} is called every operation is also published over JMX as
+ * {@code com.parkit.parkingsystem:type=Operation,name=<name>}.
+ */
+public final class Metrics {
+
+    private static final Logger logger = LogManager.getLogger("Metrics");
+
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("parkit.metrics.enabled", "true"));
+    private static final String DOMAIN = "com.parkit.parkingsystem";
+
+    private static final ConcurrentMap<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+    private static volatile boolean mbeansRegistered;
+
+    private Metrics() {
+    }
+
+    public static OperationMetrics operation(String name) {
+        OperationMetrics metrics = operations.get(name);
+        if (metrics != null) {
+            return metrics;
+        }
+        metrics = operations.computeIfAbsent(name, OperationMetrics::new);
+        if (mbeansRegistered) {
+            registerMBean(metrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * @return the operations that were called at least once, sorted by name
+     */
+    public static Map<String, OperationMetrics> getOperations() {
+        Map<String, OperationMetrics> called = new LinkedHashMap<>();
+        operations.keySet().stream().sorted().forEach(name -> {
+            OperationMetrics metrics = operations.get(name);
+            if (metrics.getCount() > 0) {
+                called.put(name, metrics);
+            }
+        });
+        return called;
+    }
+
+    public static Map<String, Object> toMap() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        getOperations().forEach((name, metrics) -> stats.put(name, metrics.toMap()));
+        return stats;
+    }
+
+    public static synchronized void registerMBeans() {
+        if (mbeansRegistered) {
+            return;
+        }
+        mbeansRegistered = true;
+        operations.values().forEach(Metrics::registerMBean);
+    }
+
+    private static void registerMBean(OperationMetrics metrics) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=Operation,name=" + ObjectName.quote(metrics.getName()));
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(metrics, objectName);
+            }
+        } catch (JMException e) {
+            logger.error("Unable to publish the metrics of " + metrics.getName() + " over JMX", e);
+        }
+    }
+}
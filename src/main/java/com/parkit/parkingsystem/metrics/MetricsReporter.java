@@ -0,0 +1,43 @@
+package com.parkit.parkingsystem.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Logs what every operation did since the previous run: calls, errors and latency percentiles.
+ * Meant to be scheduled every {@code parkit.metrics.logIntervalSeconds}.
+ */
+public class MetricsReporter implements Runnable {
+
+    private static final Logger logger = LogManager.getLogger("Metrics");
+
+    public static final long INTERVAL_SECONDS = Long.getLong("parkit.metrics.logIntervalSeconds", 60L);
+
+    private final Map<String, LatencyHistogram.Snapshot> previousLatencies = new HashMap<>();
+    private final Map<String, Long> previousErrors = new HashMap<>();
+
+    @Override
+    public void run() {
+        try {
+            Metrics.getOperations().forEach((name, metrics) -> {
+                LatencyHistogram.Snapshot latency = metrics.getLatency();
+                long errors = metrics.getErrors();
+                LatencyHistogram.Snapshot previousLatency = previousLatencies.put(name, latency);
+                Long previous = previousErrors.put(name, errors);
+                LatencyHistogram.Snapshot interval = previousLatency == null ? latency : latency.minus(previousLatency);
+                if (interval.getCount() == 0) {
+                    return;
+                }
+                logger.info(String.format("%s count=%d errors=%d mean=%.3gms p50=%.3gms p99=%.3gms p999=%.3gms max=%.3gms",
+                        name, interval.getCount(), errors - (previous == null ? 0 : previous), interval.getMeanMillis(),
+                        interval.getPercentileMillis(0.5), interval.getPercentileMillis(0.99),
+                        interval.getPercentileMillis(0.999), interval.getMaxMillis()));
+            });
+        } catch (Exception e) {
+            logger.error("Unable to log the metrics", e);
+        }
+    }
+}
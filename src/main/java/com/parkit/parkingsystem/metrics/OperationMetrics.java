@@ -0,0 +1,87 @@
+package com.parkit.parkingsystem.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Calls, errors and latency of one store method or workflow. Recording allocates nothing:
+ * <pre>
+ * long start = System.nanoTime();
+ * ...
+ * metrics.record(start, failed);
+ * </pre>
+ */
+public class OperationMetrics implements OperationMetricsMXBean {
+
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+
+    OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    public void record(long startNanos, boolean error) {
+        latency.record(System.nanoTime() - startNanos);
+        if (error) {
+            errors.increment();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public LatencyHistogram.Snapshot getLatency() {
+        return latency.snapshot();
+    }
+
+    @Override
+    public long getCount() {
+        return latency.snapshot().getCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return latency.snapshot().getMeanMillis();
+    }
+
+    @Override
+    public double getP50Millis() {
+        return latency.snapshot().getPercentileMillis(0.5);
+    }
+
+    @Override
+    public double getP99Millis() {
+        return latency.snapshot().getPercentileMillis(0.99);
+    }
+
+    @Override
+    public double getP999Millis() {
+        return latency.snapshot().getPercentileMillis(0.999);
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return latency.snapshot().getMaxMillis();
+    }
+
+    public Map<String, Object> toMap() {
+        LatencyHistogram.Snapshot snapshot = latency.snapshot();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", snapshot.getCount());
+        stats.put("errors", errors.sum());
+        stats.put("meanMillis", snapshot.getMeanMillis());
+        stats.put("p50Millis", snapshot.getPercentileMillis(0.5));
+        stats.put("p99Millis", snapshot.getPercentileMillis(0.99));
+        stats.put("p999Millis", snapshot.getPercentileMillis(0.999));
+        stats.put("maxMillis", snapshot.getMaxMillis());
+        return stats;
+    }
+}
@@ -0,0 +1,21 @@
+package com.parkit.parkingsystem.metrics;
+
+/**
+ * JMX view of an {@link OperationMetrics}, counted since the start.
+ */
+public interface OperationMetricsMXBean {
+
+    long getCount();
+
+    long getErrors();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    double getMaxMillis();
+}
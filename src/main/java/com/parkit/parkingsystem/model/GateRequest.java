@@ -0,0 +1,46 @@
+package com.parkit.parkingsystem.model;
+
+import com.parkit.parkingsystem.constants.GateOperation;
+import com.parkit.parkingsystem.constants.ParkingType;
+
+public class GateRequest {
+    private final GateOperation operation;
+    private final String gateId;
+    private final ParkingType parkingType;
+    private final String vehicleRegNumber;
+
+    public GateRequest(GateOperation operation, String gateId, ParkingType parkingType, String vehicleRegNumber) {
+        this.operation = operation;
+        this.gateId = gateId;
+        this.parkingType = parkingType;
+        this.vehicleRegNumber = vehicleRegNumber;
+    }
+
+    public static GateRequest entry(String gateId, ParkingType parkingType, String vehicleRegNumber) {
+        return new GateRequest(GateOperation.ENTRY, gateId, parkingType, vehicleRegNumber);
+    }
+
+    public static GateRequest exit(String gateId, String vehicleRegNumber) {
+        return new GateRequest(GateOperation.EXIT, gateId, null, vehicleRegNumber);
+    }
+
+    public static GateRequest quote(String gateId, String vehicleRegNumber) {
+        return new GateRequest(GateOperation.QUOTE, gateId, null, vehicleRegNumber);
+    }
+
+    public GateOperation getOperation() {
+        return operation;
+    }
+
+    public String getGateId() {
+        return gateId;
+    }
+
+    public ParkingType getParkingType() {
+        return parkingType;
+    }
+
+    public String getVehicleRegNumber() {
+        return vehicleRegNumber;
+    }
+}
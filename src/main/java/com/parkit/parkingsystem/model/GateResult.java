@@ -0,0 +1,60 @@
+package com.parkit.parkingsystem.model;
+
+import com.parkit.parkingsystem.constants.GateStatus;
+
+public class GateResult {
+    private final GateRequest request;
+    private final GateStatus status;
+    private final Ticket ticket;
+    private final boolean regularVehicle;
+    private final int visits;
+
+    public GateResult(GateRequest request, GateStatus status, Ticket ticket, boolean regularVehicle) {
+        this(request, status, ticket, regularVehicle, 0);
+    }
+
+    public GateResult(GateRequest request, GateStatus status, Ticket ticket, boolean regularVehicle, int visits) {
+        this.request = request;
+        this.status = status;
+        this.ticket = ticket;
+        this.regularVehicle = regularVehicle;
+        this.visits = visits;
+    }
+
+    public static GateResult of(GateRequest request, GateStatus status) {
+        return new GateResult(request, status, null, false);
+    }
+
+    public GateRequest getRequest() {
+        return request;
+    }
+
+    public GateStatus getStatus() {
+        return status;
+    }
+
+    public boolean isOk() {
+        return status == GateStatus.OK;
+    }
+
+    /**
+     * The ticket created on entry or closed on exit, null unless the status is OK.
+     */
+    public Ticket getTicket() {
+        return ticket;
+    }
+
+    /**
+     * Whether the ticket gets a loyalty discount at this visit.
+     */
+    public boolean isRegularVehicle() {
+        return regularVehicle;
+    }
+
+    /**
+     * Number of tickets of the vehicle, the ticket of this result included, 0 unless the status is OK.
+     */
+    public int getVisits() {
+        return visits;
+    }
+}
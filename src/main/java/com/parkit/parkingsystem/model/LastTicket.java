@@ -0,0 +1,19 @@
+package com.parkit.parkingsystem.model;
+
+public class LastTicket {
+    private final Ticket ticket;
+    private final int nbTicket;
+
+    public LastTicket(Ticket ticket, int nbTicket) {
+        this.ticket = ticket;
+        this.nbTicket = nbTicket;
+    }
+
+    public Ticket getTicket() {
+        return ticket;
+    }
+
+    public int getNbTicket() {
+        return nbTicket;
+    }
+}
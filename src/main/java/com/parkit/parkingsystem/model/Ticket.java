@@ -2,13 +2,23 @@ package com.parkit.parkingsystem.model;
 
 import java.util.Date;
 
+/**
+ * Times are held as epoch milliseconds and read without allocation through {@link #getInTimeMillis()} and
+ * {@link #getOutTimeMillis()}; the {@link Date} accessors are kept as adapters and copy on every call.
+ */
 public class Ticket {
+
+    /**
+     * Time of a ticket not entered or not left yet.
+     */
+    public static final long NO_TIME = Long.MIN_VALUE;
+
     private int id;
     private ParkingSpot parkingSpot;
     private String vehicleRegNumber;
     private double price;
-    private Date inTime;
-    private Date outTime;
+    private long inTimeMillis = NO_TIME;
+    private long outTimeMillis = NO_TIME;
 
     public int getId() {
         return id;
@@ -42,19 +52,49 @@ public class Ticket {
         this.price = price;
     }
 
+    /**
+     * @return the price in cents, rounded half up
+     */
+    public long getPriceCents() {
+        return Math.round(price * 100);
+    }
+
+    public void setPriceCents(long priceCents) {
+        this.price = priceCents / 100d;
+    }
+
     public Date getInTime() {
-        return inTime;
+        return inTimeMillis == NO_TIME ? null : new Date(inTimeMillis);
     }
 
     public void setInTime(Date inTime) {
-        this.inTime = inTime;
+        this.inTimeMillis = inTime == null ? NO_TIME : inTime.getTime();
     }
 
     public Date getOutTime() {
-        return outTime;
+        return outTimeMillis == NO_TIME ? null : new Date(outTimeMillis);
     }
 
     public void setOutTime(Date outTime) {
-        this.outTime = outTime;
+        this.outTimeMillis = outTime == null ? NO_TIME : outTime.getTime();
+    }
+
+    public long getInTimeMillis() {
+        return inTimeMillis;
+    }
+
+    public void setInTimeMillis(long inTimeMillis) {
+        this.inTimeMillis = inTimeMillis;
+    }
+
+    /**
+     * @return the exit time, {@link #NO_TIME} while the vehicle is parked
+     */
+    public long getOutTimeMillis() {
+        return outTimeMillis;
+    }
+
+    public void setOutTimeMillis(long outTimeMillis) {
+        this.outTimeMillis = outTimeMillis;
     }
 }
@@ -1,50 +1,91 @@
 package com.parkit.parkingsystem.service;
 
-import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.model.Ticket;
 
+/**
+ * Prices tickets with the tariff in force of its {@link TariffEngine}, the standard tariff by default.
+ */
 public class FareCalculatorService {
 
-    public static final double FIVE_PERCENT_DISCOUNT = 0.95d;
+    private final TariffEngine tariffEngine;
+
+    public FareCalculatorService() {
+        this(new TariffEngine(Tariff.standard()));
+    }
+
+    public FareCalculatorService(TariffEngine tariffEngine) {
+        this.tariffEngine = tariffEngine;
+    }
 
     public void calculateFare(Ticket ticket) {
+        calculateFare(ticket, false);
+    }
+
+    public void calculateFare(Ticket ticket, boolean discount) {
         if (ticket == null) {
             throw new IllegalArgumentException("Ticket can not be null value");
         }
 
-        if ((ticket.getOutTime() == null) || (ticket.getOutTime().before(ticket.getInTime()))) {
+        if ((ticket.getOutTimeMillis() == Ticket.NO_TIME) || (ticket.getOutTimeMillis() < ticket.getInTimeMillis())) {
             throw new IllegalArgumentException("Out time provided is incorrect:" + ticket.getOutTime().toString());
         }
 
-        long inHour = ticket.getInTime().getTime();
-        long outHour = ticket.getOutTime().getTime();
-
-        long duration = outHour - inHour;
+        Tariff tariff = tariffEngine.getTariff();
+        ticket.setPrice(tariff.price(ticket.getParkingSpot().getParkingType(), ticket.getInTimeMillis(),
+                ticket.getOutTimeMillis(), discount ? tariff.getLoyaltyVisits() : 1));
+    }
 
-        if (duration < (30 * 60 * 1000)) {
-            ticket.setPrice(0);
-            return;
+    /**
+     * Closes the fare of a ticket in whole cents, see {@link #calculateFareCents(ParkingType, long, long, int)}.
+     *
+     * @return the price set on the ticket, in cents
+     */
+    public long calculateFareCents(Ticket ticket, int visits) {
+        if (ticket == null) {
+            throw new IllegalArgumentException("Ticket can not be null value");
         }
+        long priceCents = calculateFareCents(ticket.getParkingSpot().getParkingType(), ticket.getInTimeMillis(),
+                ticket.getOutTimeMillis(), visits);
+        ticket.setPriceCents(priceCents);
+        return priceCents;
+    }
 
-        switch (ticket.getParkingSpot().getParkingType()) {
-            case CAR: {
-                ticket.setPrice((duration * Fare.CAR_RATE_PER_HOUR) / 3_600_000);
-                break;
-            }
-            case BIKE: {
-                ticket.setPrice((duration * Fare.BIKE_RATE_PER_HOUR) / 3_600_000);
-                break;
-            }
-            default:
-                throw new IllegalArgumentException("Unknown Parking Type");
-        }
+    /**
+     * Same as {@link #calculateFareCents(Ticket, int)} with or without the first loyalty discount.
+     */
+    public long calculateFareCents(Ticket ticket, boolean discount) {
+        return calculateFareCents(ticket, discount ? tariffEngine.getTariff().getLoyaltyVisits() : 1);
     }
 
-    public void calculateFare(Ticket ticket, boolean discount) {
-        this.calculateFare(ticket);
-        if (discount) {
-            double standardPrice = ticket.getPrice();
-            ticket.setPrice(standardPrice * FIVE_PERCENT_DISCOUNT);// discount of 5%
+    /**
+     * Fare in cents of a stay between two epoch milliseconds, rounded half up once, after the loyalty discount.
+     * Allocates nothing unless it throws.
+     *
+     * @param visits number of tickets of the vehicle, this one included
+     */
+    public long calculateFareCents(ParkingType parkingType, long inTimeMillis, long outTimeMillis, int visits) {
+        if (outTimeMillis == Ticket.NO_TIME || inTimeMillis == Ticket.NO_TIME || outTimeMillis < inTimeMillis) {
+            throw new IllegalArgumentException("Out time provided is incorrect:" + outTimeMillis);
         }
+        return tariffEngine.getTariff().priceCents(parkingType, inTimeMillis, outTimeMillis, visits);
+    }
+
+    public long calculateFareCents(ParkingType parkingType, long inTimeMillis, long outTimeMillis, boolean discount) {
+        return calculateFareCents(parkingType, inTimeMillis, outTimeMillis, discount ? tariffEngine.getTariff().getLoyaltyVisits() : 1);
+    }
+
+    /**
+     * @return whether a vehicle at its given visit gets a loyalty discount
+     */
+    public boolean isLoyal(int visits) {
+        return tariffEngine.getTariff().isLoyal(visits);
+    }
+
+    /**
+     * @return the percent taken off the price of a vehicle at its given visit
+     */
+    public int getDiscountPercent(int visits) {
+        return tariffEngine.getTariff().getDiscountPercent(visits);
     }
-}
\ No newline at end of file
+}
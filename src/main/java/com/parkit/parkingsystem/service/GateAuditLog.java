@@ -0,0 +1,238 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.GateOperation;
+import com.parkit.parkingsystem.constants.GateStatus;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.GateRequest;
+import com.parkit.parkingsystem.model.GateResult;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.appender.AbstractOutputStreamAppender;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * One audit line per entry and exit: gate, vehicle, spot, fare, times and processing time, as {@code key=value} pairs.
+ * Gates copy their record into a preallocated ring buffer and go on; a single writer thread formats the records
+ * into a reused buffer and hands them to the {@code GateAudit} logger. Neither side allocates, and a gate only
+ * waits when the writer is a whole buffer behind, so no record is ever dropped.
+ * The audit file is flushed whenever the writer has caught up, so under load one write covers many records.
+ */
+public class GateAuditLog implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("GateAuditLog");
+    private static final Logger auditLogger = LogManager.getLogger("GateAudit");
+
+    public static final int BUFFER_SIZE = Integer.getInteger("parkit.audit.bufferSize", 8192);
+    private static final long IDLE_PARK_NANOS = 10_000_000L;
+    private static final long FULL_PARK_NANOS = 100_000L;
+    private static final long NONE = -1;
+
+    private final Record[] ring;
+    private final int mask;
+    private final Consumer<CharSequence> sink;
+    private final Runnable flush;
+    private final Thread writer;
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long written;
+    private volatile boolean writerIdle;
+    private volatile boolean closed;
+
+    public GateAuditLog(int bufferSize, Consumer<CharSequence> sink) {
+        this(bufferSize, sink, () -> { });
+    }
+
+    /**
+     * @param sink receives each formatted line, in a buffer reused for the next one
+     * @param flush called when every record given so far is written
+     */
+    public GateAuditLog(int bufferSize, Consumer<CharSequence> sink, Runnable flush) {
+        int capacity = Integer.highestOneBit(Math.max(2, bufferSize - 1)) << 1;
+        this.ring = new Record[capacity];
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new Record();
+        }
+        this.mask = capacity - 1;
+        this.sink = sink;
+        this.flush = flush;
+        this.writer = new Thread(this::writeLoop, "parkit-audit");
+        writer.setDaemon(true);
+    }
+
+    /**
+     * Starts an audit log writing to the {@code GateAudit} logger.
+     */
+    public static GateAuditLog open() {
+        return new GateAuditLog(BUFFER_SIZE, line -> auditLogger.info(line), GateAuditLog::flushAuditAppenders).start();
+    }
+
+    private static void flushAuditAppenders() {
+        // the audit appender does not flush on every line, see log4j2.properties
+        LoggerContext context = (LoggerContext) LogManager.getContext(false);
+        for (Appender appender : context.getConfiguration().getLoggerConfig(auditLogger.getName()).getAppenders().values()) {
+            if (appender instanceof AbstractOutputStreamAppender) {
+                ((AbstractOutputStreamAppender<?>) appender).getManager().flush();
+            }
+        }
+    }
+
+    public GateAuditLog start() {
+        writer.start();
+        return this;
+    }
+
+    /**
+     * Records the outcome of an entry or an exit; quotes are not audited.
+     */
+    public void record(GateResult result, long nanos) {
+        GateRequest request = result.getRequest();
+        if (request.getOperation() == GateOperation.QUOTE || closed) {
+            return;
+        }
+        long sequence = claim();
+        Record record = ring[(int) sequence & mask];
+        record.operation = request.getOperation();
+        record.status = result.getStatus();
+        record.gateId = request.getGateId();
+        record.vehicleRegNumber = request.getVehicleRegNumber();
+        record.regularVehicle = result.isRegularVehicle();
+        record.micros = nanos / 1000;
+        Ticket ticket = result.getTicket();
+        if (ticket == null) {
+            record.parkingType = request.getParkingType();
+            record.parkingNumber = 0;
+            record.inTime = NONE;
+            record.outTime = NONE;
+            record.fareCents = NONE;
+        } else {
+            record.parkingType = ticket.getParkingSpot().getParkingType();
+            record.parkingNumber = ticket.getParkingSpot().getId();
+            record.inTime = ticket.getInTimeMillis() == Ticket.NO_TIME ? NONE : ticket.getInTimeMillis();
+            record.outTime = ticket.getOutTimeMillis() == Ticket.NO_TIME ? NONE : ticket.getOutTimeMillis();
+            record.fareCents = ticket.getOutTimeMillis() == Ticket.NO_TIME ? NONE : ticket.getPriceCents();
+        }
+        record.sequence = sequence;
+        if (writerIdle) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * Writes the records left in the buffer and stops the writer.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private long claim() {
+        while (true) {
+            long sequence = claimed.get();
+            if (sequence - written >= ring.length) {
+                LockSupport.parkNanos(FULL_PARK_NANOS);
+            } else if (claimed.compareAndSet(sequence, sequence + 1)) {
+                return sequence;
+            }
+        }
+    }
+
+    private void writeLoop() {
+        StringBuilder line = new StringBuilder(256);
+        long next = 0;
+        long flushed = 0;
+        while (true) {
+            Record record = ring[(int) next & mask];
+            if (record.sequence != next) {
+                if (next != flushed) {
+                    flushed = next;
+                    flush();
+                }
+                if (closed && claimed.get() == next) {
+                    return;
+                }
+                writerIdle = true;
+                if (record.sequence != next) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+                writerIdle = false;
+                continue;
+            }
+            line.setLength(0);
+            format(record, line);
+            try {
+                sink.accept(line);
+            } catch (RuntimeException e) {
+                logger.error("Unable to write an audit record", e);
+            }
+            written = ++next;
+        }
+    }
+
+    private void flush() {
+        try {
+            flush.run();
+        } catch (RuntimeException e) {
+            logger.error("Unable to flush the audit records", e);
+        }
+    }
+
+    private static void format(Record record, StringBuilder line) {
+        line.append(record.operation).append(" status=").append(record.status)
+                .append(" gate=").append(record.gateId)
+                .append(" plate=").append(record.vehicleRegNumber);
+        if (record.parkingType != null) {
+            line.append(" type=").append(record.parkingType);
+        }
+        if (record.parkingNumber > 0) {
+            line.append(" spot=").append(record.parkingNumber);
+        }
+        if (record.status == GateStatus.OK) {
+            line.append(" regular=").append(record.regularVehicle);
+        }
+        if (record.inTime != NONE) {
+            line.append(" in=").append(record.inTime);
+        }
+        if (record.outTime != NONE) {
+            line.append(" out=").append(record.outTime);
+        }
+        if (record.fareCents != NONE) {
+            line.append(" fare=").append(record.fareCents / 100).append('.');
+            long cents = record.fareCents % 100;
+            if (cents < 10) {
+                line.append('0');
+            }
+            line.append(cents);
+        }
+        line.append(" micros=").append(record.micros);
+    }
+
+    private static final class Record {
+        private volatile long sequence = NONE;
+        private GateOperation operation;
+        private GateStatus status;
+        private String gateId;
+        private String vehicleRegNumber;
+        private ParkingType parkingType;
+        private int parkingNumber;
+        private boolean regularVehicle;
+        private long inTime;
+        private long outTime;
+        private long fareCents;
+        private long micros;
+    }
+}
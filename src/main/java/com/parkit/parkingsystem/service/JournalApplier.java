@@ -0,0 +1,154 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.dao.GateJournal;
+import com.parkit.parkingsystem.dao.JournalDAO;
+import com.parkit.parkingsystem.dao.JournalEvent;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies the durable events of the {@link GateJournal} to the database in the background,
+ * in batches of up to {@code parkit.journal.applyBatchSize} events, each in one transaction with the checkpoint.
+ * While the database is unreachable the events wait in the journal and the batch is retried with a growing pause;
+ * the gates keep working meanwhile.
+ */
+public class JournalApplier implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("JournalApplier");
+
+    public static final int BATCH_SIZE = Integer.getInteger("parkit.journal.applyBatchSize", 500);
+    public static final long RETRY_MS = Long.getLong("parkit.journal.retryMs", 500L);
+    public static final long MAX_RETRY_MS = 30_000L;
+    public static final long SEGMENT_CLEANUP_MS = 10_000L;
+
+    private final JournalDAO journalDAO;
+    private final Path directory;
+    private final BlockingQueue<JournalEvent> events = new LinkedBlockingQueue<>();
+    private final Thread worker;
+    private volatile boolean closing;
+    private volatile long appliedLsn;
+    private long lastCleanup;
+
+    public JournalApplier(JournalDAO journalDAO, Path directory) {
+        this.journalDAO = journalDAO;
+        this.directory = directory;
+        this.worker = new Thread(this::applyLoop, "parkit-journal-applier");
+        worker.setDaemon(true);
+    }
+
+    /**
+     * Replays the events of the journal that are not in the database yet, before the gates are served.
+     * Events already applied are skipped thanks to the checkpoint, so replaying twice changes nothing.
+     *
+     * @return the last event of the journal
+     */
+    public long recover() throws ClassNotFoundException, SQLException, IOException {
+        long checkpoint = journalDAO.getCheckpoint();
+        List<JournalEvent> unapplied = GateJournal.readEvents(directory, checkpoint);
+        for (int from = 0; from < unapplied.size(); from += BATCH_SIZE) {
+            journalDAO.apply(unapplied.subList(from, Math.min(from + BATCH_SIZE, unapplied.size())));
+        }
+        appliedLsn = unapplied.isEmpty() ? checkpoint : unapplied.get(unapplied.size() - 1).getLsn();
+        GateJournal.deleteAppliedSegments(directory, appliedLsn);
+        logger.info("Replayed {} journal events after event {}", unapplied.size(), checkpoint);
+        return appliedLsn;
+    }
+
+    public void start() {
+        worker.start();
+    }
+
+    /**
+     * Queues durable events, called by the journal flusher.
+     */
+    public void enqueue(List<JournalEvent> durableEvents) {
+        events.addAll(durableEvents);
+    }
+
+    public int getBacklog() {
+        return events.size();
+    }
+
+    public long getAppliedLsn() {
+        return appliedLsn;
+    }
+
+    /**
+     * Applies the queued events and stops. Events that can not be applied stay in the journal for the next start.
+     */
+    @Override
+    public void close() {
+        closing = true;
+        try {
+            worker.join(MAX_RETRY_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!events.isEmpty()) {
+            logger.warn("{} journal events left to replay on next start", events.size());
+        }
+    }
+
+    private void applyLoop() {
+        List<JournalEvent> batch = new ArrayList<>(BATCH_SIZE);
+        while (!closing || !events.isEmpty()) {
+            try {
+                JournalEvent first = events.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                events.drainTo(batch, BATCH_SIZE - 1);
+                if (!applyWithRetry(batch)) {
+                    return;
+                }
+                batch.clear();
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private boolean applyWithRetry(List<JournalEvent> batch) throws InterruptedException {
+        long pause = RETRY_MS;
+        while (true) {
+            try {
+                journalDAO.apply(batch);
+                appliedLsn = batch.get(batch.size() - 1).getLsn();
+                cleanUpSegments();
+                return true;
+            } catch (Exception e) {
+                if (closing) {
+                    logger.error("Unable to apply journal events while closing", e);
+                    events.addAll(batch);
+                    return false;
+                }
+                logger.error("Unable to apply {} journal events, retrying in {} ms", batch.size(), pause, e);
+                Thread.sleep(pause);
+                pause = Math.min(pause * 2, MAX_RETRY_MS);
+            }
+        }
+    }
+
+    private void cleanUpSegments() {
+        long now = System.currentTimeMillis();
+        if (now - lastCleanup < SEGMENT_CLEANUP_MS) {
+            return;
+        }
+        lastCleanup = now;
+        try {
+            GateJournal.deleteAppliedSegments(directory, appliedLsn);
+        } catch (IOException e) {
+            logger.error("Error deleting applied journal segments", e);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.GateOperation;
+import com.parkit.parkingsystem.constants.GateStatus;
+import com.parkit.parkingsystem.model.GateRequest;
+import com.parkit.parkingsystem.model.GateResult;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Processes entry and exit requests coming from any number of gates, either on a bounded pool of workers
+ * or, on a Java 21 runtime, on one virtual thread per request. Requests that cannot be admitted are
+ * answered straight away with {@link GateStatus#REJECTED}.
+ */
+public class ParkingEngine implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("ParkingEngine");
+
+    public static final int WORKERS = Integer.getInteger("parkit.engine.workers", 8);
+    public static final int QUEUE_CAPACITY = Integer.getInteger("parkit.engine.queueCapacity", 1000);
+    public static final boolean VIRTUAL_THREADS = Boolean.getBoolean("parkit.engine.virtualThreads");
+    public static final int MAX_IN_FLIGHT = Integer.getInteger("parkit.engine.maxInFlight", 10_000);
+
+    private final ParkingService parkingService;
+    private final ExecutorService executor;
+    // virtual thread mode only: requests admitted, and workflows allowed to hold a connection at the same time
+    private final Semaphore inFlight;
+    private final Semaphore workflows;
+    private final int maxWorkflows;
+    private final LongAdder rejectedRequests = new LongAdder();
+
+    public ParkingEngine(ParkingService parkingService) {
+        this(parkingService, WORKERS, QUEUE_CAPACITY);
+    }
+
+    public ParkingEngine(ParkingService parkingService, int workers, int queueCapacity) {
+        this.parkingService = parkingService;
+        this.inFlight = null;
+        this.workflows = null;
+        this.maxWorkflows = workers;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "parkit-gate-worker-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        logger.info("Parking engine started with {} workers and a queue of {} requests", workers, queueCapacity);
+    }
+
+    private ParkingEngine(ParkingService parkingService, ExecutorService executor, int maxWorkflows, int maxInFlight) {
+        this.parkingService = parkingService;
+        this.executor = executor;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.workflows = new Semaphore(maxWorkflows, true);
+        this.maxWorkflows = maxWorkflows;
+        logger.info("Parking engine started on virtual threads, {} concurrent workflows and {} requests in flight at most",
+                maxWorkflows, maxInFlight);
+    }
+
+    /**
+     * Runs every request on its own virtual thread. Since each workflow holds one pooled connection,
+     * {@code maxWorkflows} should be the connection pool size: the other requests park cheaply until a
+     * connection is free instead of queuing inside the pool. Falls back to the worker pool on a runtime
+     * without virtual threads.
+     */
+    public static ParkingEngine onVirtualThreads(ParkingService parkingService, int maxWorkflows, int maxInFlight) {
+        ExecutorService executor = newVirtualThreadPerTaskExecutor();
+        if (executor == null) {
+            logger.warn("Virtual threads need a Java 21 runtime, falling back to {} worker threads", maxWorkflows);
+            return new ParkingEngine(parkingService, maxWorkflows, maxInFlight);
+        }
+        return new ParkingEngine(parkingService, executor, maxWorkflows, maxInFlight);
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            // looked up by reflection so that the default build can keep targeting Java 11
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    public CompletableFuture<GateResult> submit(GateRequest request) {
+        return submit(() -> process(request), () -> GateResult.of(request, GateStatus.REJECTED), request.getGateId());
+    }
+
+    /**
+     * Processes a burst of requests as one task: entries and exits are each written in one batched transaction,
+     * a new one starting when a vehicle appears again, and fare quotes one by one. The results come in the order of
+     * the requests.
+     */
+    public CompletableFuture<List<GateResult>> submitAll(List<GateRequest> requests) {
+        String gateId = requests.isEmpty() ? null : requests.get(0).getGateId();
+        return submit(() -> processAll(requests), () -> rejectAll(requests), gateId);
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task, Supplier<T> rejection, String gateId) {
+        if (inFlight != null) {
+            return submitVirtual(task, rejection, gateId);
+        }
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            return reject(rejection, gateId);
+        }
+    }
+
+    private <T> CompletableFuture<T> submitVirtual(Supplier<T> task, Supplier<T> rejection, String gateId) {
+        if (!inFlight.tryAcquire()) {
+            return reject(rejection, gateId);
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    workflows.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    inFlight.release();
+                    return rejection.get();
+                }
+                try {
+                    return task.get();
+                } finally {
+                    workflows.release();
+                    inFlight.release();
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            return reject(rejection, gateId);
+        }
+    }
+
+    private <T> CompletableFuture<T> reject(Supplier<T> rejection, String gateId) {
+        rejectedRequests.increment();
+        logger.debug("Request from gate {} rejected, {} requests already queued", gateId, getQueuedRequests());
+        return CompletableFuture.completedFuture(rejection.get());
+    }
+
+    private static List<GateResult> rejectAll(List<GateRequest> requests) {
+        List<GateResult> results = new ArrayList<>(requests.size());
+        requests.forEach(request -> results.add(GateResult.of(request, GateStatus.REJECTED)));
+        return results;
+    }
+
+    /**
+     * Processes the requests in rounds where each vehicle appears once: a request for a vehicle already in the round
+     * first processes the round, so the requests of a vehicle keep their order, such as an exit followed by an entry.
+     */
+    public List<GateResult> processAll(List<GateRequest> requests) {
+        GateResult[] results = new GateResult[requests.size()];
+        Set<String> roundVehicles = new HashSet<>();
+        List<Integer> entryIndexes = new ArrayList<>();
+        List<Integer> exitIndexes = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            GateRequest request = requests.get(i);
+            if (roundVehicles.contains(request.getVehicleRegNumber())) {
+                processRound(requests, entryIndexes, exitIndexes, results);
+                roundVehicles.clear();
+            }
+            GateOperation operation = request.getOperation();
+            if (operation == GateOperation.ENTRY) {
+                entryIndexes.add(i);
+                roundVehicles.add(request.getVehicleRegNumber());
+            } else if (operation == GateOperation.EXIT) {
+                exitIndexes.add(i);
+                roundVehicles.add(request.getVehicleRegNumber());
+            } else {
+                results[i] = process(request);
+            }
+        }
+        processRound(requests, entryIndexes, exitIndexes, results);
+        return Arrays.asList(results);
+    }
+
+    private void processRound(List<GateRequest> requests, List<Integer> entryIndexes, List<Integer> exitIndexes,
+                              GateResult[] results) {
+        processBatch(requests, entryIndexes, results, parkingService::enterVehicles);
+        processBatch(requests, exitIndexes, results, parkingService::exitVehicles);
+        entryIndexes.clear();
+        exitIndexes.clear();
+    }
+
+    private static void processBatch(List<GateRequest> requests, List<Integer> indexes, GateResult[] results,
+                                     Function<List<GateRequest>, List<GateResult>> operation) {
+        if (indexes.isEmpty()) {
+            return;
+        }
+        List<GateRequest> batch = new ArrayList<>(indexes.size());
+        indexes.forEach(index -> batch.add(requests.get(index)));
+        List<GateResult> batchResults = operation.apply(batch);
+        for (int j = 0; j < indexes.size(); j++) {
+            results[indexes.get(j)] = batchResults.get(j);
+        }
+    }
+
+    public GateResult process(GateRequest request) {
+        if (request.getOperation() == null) {
+            return GateResult.of(request, GateStatus.INVALID_REQUEST);
+        }
+        switch (request.getOperation()) {
+            case ENTRY: return parkingService.enterVehicle(request);
+            case EXIT: return parkingService.exitVehicle(request);
+            case QUOTE: return parkingService.quoteVehicle(request);
+            default: return GateResult.of(request, GateStatus.INVALID_REQUEST);
+        }
+    }
+
+    public boolean isOnVirtualThreads() {
+        return inFlight != null;
+    }
+
+    public int getQueuedRequests() {
+        if (workflows != null) {
+            return workflows.getQueueLength();
+        }
+        return ((ThreadPoolExecutor) executor).getQueue().size();
+    }
+
+    public long getRejectedRequests() {
+        return rejectedRequests.sum();
+    }
+
+    public int getActiveWorkers() {
+        if (workflows != null) {
+            return maxWorkflows - workflows.availablePermits();
+        }
+        return ((ThreadPoolExecutor) executor).getActiveCount();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warn("Parking engine did not drain in time, {} requests dropped", executor.shutdownNow().size());
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
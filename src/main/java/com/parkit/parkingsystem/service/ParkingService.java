@@ -1,55 +1,109 @@
 package com.parkit.parkingsystem.service;
 
+import com.parkit.parkingsystem.constants.GateStatus;
 import com.parkit.parkingsystem.constants.ParkingType;
-import com.parkit.parkingsystem.dao.ParkingSpotDAO;
-import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.ParkingSpotStore;
+import com.parkit.parkingsystem.dao.TicketStore;
+import com.parkit.parkingsystem.dao.UnitOfWork;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.metrics.OperationMetrics;
+import com.parkit.parkingsystem.model.GateRequest;
+import com.parkit.parkingsystem.model.GateResult;
+import com.parkit.parkingsystem.model.LastTicket;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
 import com.parkit.parkingsystem.util.InputReaderUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.util.Date;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class ParkingService {
 
     private static final Logger logger = LogManager.getLogger("ParkingService");
 
-    private static FareCalculatorService fareCalculatorService = new FareCalculatorService();
+    public static final String CONSOLE_GATE = "console";
+
+    private static final OperationMetrics entryMetrics = Metrics.operation("workflow.enterVehicle");
+    private static final OperationMetrics exitMetrics = Metrics.operation("workflow.exitVehicle");
+    private static final OperationMetrics batchEntryMetrics = Metrics.operation("workflow.enterVehicles");
+    private static final OperationMetrics batchExitMetrics = Metrics.operation("workflow.exitVehicles");
+    private static final OperationMetrics quoteMetrics = Metrics.operation("workflow.quoteVehicle");
 
     private InputReaderUtil inputReaderUtil;
-    private ParkingSpotDAO parkingSpotDAO;
-    private TicketDAO ticketDAO;
+    private ParkingSpotStore parkingSpotDAO;
+    private TicketStore ticketDAO;
+    private GateAuditLog auditLog;
+    private Clock clock = Clock.systemUTC();
+    private FareCalculatorService fareCalculatorService = new FareCalculatorService();
+
+    public ParkingService(ParkingSpotStore parkingSpotDAO, TicketStore ticketDAO) {
+        this(null, parkingSpotDAO, ticketDAO);
+    }
 
-    public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO) {
+    public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotStore parkingSpotDAO, TicketStore ticketDAO) {
         this.inputReaderUtil = inputReaderUtil;
         this.parkingSpotDAO = parkingSpotDAO;
         this.ticketDAO = ticketDAO;
     }
 
+    /**
+     * Writes one audit record per entry and exit to the given log from now on.
+     */
+    public void setAuditLog(GateAuditLog auditLog) {
+        this.auditLog = auditLog;
+    }
+
+    /**
+     * Clock giving the entry and exit times, the system clock by default; a fixed clock makes fares reproducible.
+     */
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Prices exits and quotes with the tariff in force of the given engine, the standard tariff by default.
+     */
+    public void setTariffEngine(TariffEngine tariffEngine) {
+        this.fareCalculatorService = new FareCalculatorService(tariffEngine);
+    }
+
     public void processIncomingVehicle() {
         try {
             ParkingSpot parkingSpot = getNextParkingNumberIfAvailable();
             if (parkingSpot != null && parkingSpot.getId() > 0) {
                 String vehicleRegNumber = getVehichleRegNumber();
-                parkingSpot.setAvailable(false);
-                parkingSpotDAO.updateParking(parkingSpot);//allot this parking space and mark it's availability as false
-
-                Date inTime = new Date();
-                boolean regularVehicle = ticketDAO.getNbTicket(vehicleRegNumber) >= 1;
-                if (regularVehicle) {
-                    System.out.println("Happy to see you again ! As a regular user of our car park, you will get a 5% discount");
+                GateResult result = enterVehicle(GateRequest.entry(CONSOLE_GATE, parkingSpot.getParkingType(), vehicleRegNumber));
+                switch (result.getStatus()) {
+                    case OK: {
+                        Ticket ticket = result.getTicket();
+                        if (result.isRegularVehicle()) {
+                            System.out.println("Happy to see you again ! As a regular user of our car park, you will get a "
+                                    + fareCalculatorService.getDiscountPercent(result.getVisits()) + "% discount");
+                        }
+                        System.out.println("Generated Ticket and saved in DB");
+                        System.out.println("Please park your vehicle in spot number:" + ticket.getParkingSpot().getId());
+                        System.out.println("Recorded in-time for vehicle number:" + vehicleRegNumber + " is:" + ticket.getInTime());
+                        break;
+                    }
+                    case NO_SPOT_AVAILABLE: {
+                        System.out.println("Aucune place de parking n'est disponible");
+                        break;
+                    }
+                    case ALREADY_PARKED: {
+                        System.out.println("Ce véhicule est déjà dans le parking");
+                        break;
+                    }
+                    default: System.out.println("Unable to save ticket information. Error occurred");
                 }
-                Ticket ticket = new Ticket();
-                ticket.setParkingSpot(parkingSpot);
-                ticket.setVehicleRegNumber(vehicleRegNumber);
-                ticket.setPrice(0);
-                ticket.setInTime(inTime);
-                ticket.setOutTime(null);
-                ticketDAO.saveTicket(ticket);
-                System.out.println("Generated Ticket and saved in DB");
-                System.out.println("Please park your vehicle in spot number:" + parkingSpot.getId());
-                System.out.println("Recorded in-time for vehicle number:" + vehicleRegNumber + " is:" + inTime);
             }
         } catch (Exception e) {
             logger.error("Unable to process incoming vehicle", e);
@@ -59,26 +113,327 @@ public class ParkingService {
     public void processExitingVehicle() {
         try {
             String vehicleRegNumber = getVehichleRegNumber();
-            Ticket ticket = ticketDAO.getTicket(vehicleRegNumber);
-            if (ticket == null) {
-                System.out.println("Ce véhicule n'existe pas dans le parking");
-                return;
-            }
-            Date outTime = new Date();
-            ticket.setOutTime(outTime);
-            boolean applyDiscount = ticketDAO.getNbTicket(vehicleRegNumber) >= 2;
-            fareCalculatorService.calculateFare(ticket, applyDiscount);
-            if (ticketDAO.updateTicket(ticket)) {
+            GateResult result = exitVehicle(GateRequest.exit(CONSOLE_GATE, vehicleRegNumber));
+            switch (result.getStatus()) {
+                case OK: {
+                    Ticket ticket = result.getTicket();
+                    System.out.println("Please pay the parking fare:" + ticket.getPrice());
+                    System.out.println("Recorded out-time for vehicle number:" + ticket.getVehicleRegNumber() + " is:" + ticket.getOutTime());
+                    break;
+                }
+                case UNKNOWN_VEHICLE: {
+                    System.out.println("Ce véhicule n'existe pas dans le parking");
+                    break;
+                }
+                default: System.out.println("Unable to update ticket information. Error occurred");
+            }
+        } catch (Exception e) {
+            logger.error("Unable to process exiting vehicle", e);
+        }
+    }
+
+    /**
+     * Parks a vehicle without any console interaction. Safe to call from several gates at once.
+     */
+    public GateResult enterVehicle(GateRequest request) {
+        long start = System.nanoTime();
+        GateResult result = enter(request);
+        entryMetrics.record(start, result.getStatus() == GateStatus.ERROR);
+        audit(result, start);
+        return result;
+    }
+
+    private GateResult enter(GateRequest request) {
+        String vehicleRegNumber = request.getVehicleRegNumber();
+        if (request.getParkingType() == null || request.getParkingType() == ParkingType.UNKNOWN || vehicleRegNumber == null || vehicleRegNumber.trim().isEmpty()) {
+            return GateResult.of(request, GateStatus.INVALID_REQUEST);
+        }
+        long inTime = clock.millis();
+        try (UnitOfWork unitOfWork = ticketDAO.beginUnitOfWork()) {
+            LastTicket lastTicket = ticketDAO.getLastTicket(vehicleRegNumber);
+            if (lastTicket != null && isOpen(lastTicket.getTicket())) {
+                return GateResult.of(request, GateStatus.ALREADY_PARKED);
+            }
+            int visits = (lastTicket != null ? lastTicket.getNbTicket() : ticketDAO.getNbTicket(vehicleRegNumber)) + 1;
+            boolean regularVehicle = fareCalculatorService.isLoyal(visits);
+            int parkingNumber = parkingSpotDAO.claimNextAvailableSlot(request.getParkingType());//allot a parking space and mark it's availability as false
+            if (parkingNumber <= 0) {
+                return GateResult.of(request, GateStatus.NO_SPOT_AVAILABLE);
+            }
+            ParkingSpot parkingSpot = new ParkingSpot(parkingNumber, request.getParkingType(), false);
+            Ticket ticket = new Ticket();
+            ticket.setParkingSpot(parkingSpot);
+            ticket.setVehicleRegNumber(vehicleRegNumber);
+            ticket.setPrice(0);
+            ticket.setInTimeMillis(inTime);
+            if (!ticketDAO.saveTicket(ticket)) {
+                return GateResult.of(request, GateStatus.ERROR);
+            }
+            unitOfWork.commit();
+            return new GateResult(request, GateStatus.OK, ticket, regularVehicle, visits);
+        } catch (Exception e) {
+            logger.error("Unable to process incoming vehicle " + vehicleRegNumber + " at gate " + request.getGateId(), e);
+            return GateResult.of(request, GateStatus.ERROR);
+        }
+    }
+
+    /**
+     * Closes the open ticket of a vehicle and frees its spot without any console interaction.
+     */
+    public GateResult exitVehicle(GateRequest request) {
+        long start = System.nanoTime();
+        GateResult result = exit(request);
+        exitMetrics.record(start, result.getStatus() == GateStatus.ERROR);
+        audit(result, start);
+        return result;
+    }
+
+    private GateResult exit(GateRequest request) {
+        String vehicleRegNumber = request.getVehicleRegNumber();
+        if (vehicleRegNumber == null || vehicleRegNumber.trim().isEmpty()) {
+            return GateResult.of(request, GateStatus.INVALID_REQUEST);
+        }
+        try (UnitOfWork unitOfWork = ticketDAO.beginUnitOfWork()) {
+            LastTicket lastTicket = ticketDAO.getLastTicket(vehicleRegNumber);
+            if (lastTicket == null || !isOpen(lastTicket.getTicket())) {
+                return GateResult.of(request, GateStatus.UNKNOWN_VEHICLE);
+            }
+            Ticket ticket = lastTicket.getTicket();
+            ticket.setOutTimeMillis(clock.millis());
+            boolean applyDiscount = fareCalculatorService.isLoyal(lastTicket.getNbTicket());
+            fareCalculatorService.calculateFareCents(ticket, lastTicket.getNbTicket());
+            ParkingSpot parkingSpot = ticket.getParkingSpot();
+            parkingSpot.setAvailable(true);
+            if (ticketDAO.updateTicket(ticket) && parkingSpotDAO.updateParking(parkingSpot)) {
+                unitOfWork.commit();
+                return new GateResult(request, GateStatus.OK, ticket, applyDiscount, lastTicket.getNbTicket());
+            }
+            return GateResult.of(request, GateStatus.ERROR);
+        } catch (Exception e) {
+            logger.error("Unable to process exiting vehicle " + vehicleRegNumber + " at gate " + request.getGateId(), e);
+            return GateResult.of(request, GateStatus.ERROR);
+        }
+    }
+
+    /**
+     * Parks a burst of vehicles in one transaction: the vehicles are looked up with one query, spots are claimed per
+     * vehicle type and all the tickets are written with one JDBC batch. Each request gets its own result in the same order; if the batch cannot be written,
+     * every vehicle that had a spot gets {@link GateStatus#ERROR}.
+     */
+    public List<GateResult> enterVehicles(List<GateRequest> requests) {
+        long start = System.nanoTime();
+        List<GateResult> results = enter(requests);
+        record(batchEntryMetrics, start, results);
+        return results;
+    }
+
+    private List<GateResult> enter(List<GateRequest> requests) {
+        GateResult[] results = new GateResult[requests.size()];
+        Map<ParkingType, List<Integer>> pendingByType = new EnumMap<>(ParkingType.class);
+        Set<String> vehicleRegNumbers = new HashSet<>();
+        for (int i = 0; i < requests.size(); i++) {
+            GateRequest request = requests.get(i);
+            String vehicleRegNumber = request.getVehicleRegNumber();
+            if (request.getParkingType() == null || request.getParkingType() == ParkingType.UNKNOWN || vehicleRegNumber == null
+                    || vehicleRegNumber.trim().isEmpty() || !vehicleRegNumbers.add(vehicleRegNumber)) {
+                results[i] = GateResult.of(request, GateStatus.INVALID_REQUEST);
+            } else {
+                pendingByType.computeIfAbsent(request.getParkingType(), parkingType -> new ArrayList<>()).add(i);
+            }
+        }
+        long inTime = clock.millis();
+        List<Integer> ticketIndexes = new ArrayList<>();
+        List<Ticket> tickets = new ArrayList<>();
+        try (UnitOfWork unitOfWork = ticketDAO.beginUnitOfWork()) {
+            Map<String, LastTicket> lastTickets = ticketDAO.getLastTickets(vehicleRegNumbers);
+            if (lastTickets == null) {
+                return fillResults(requests, results, GateStatus.ERROR);
+            }
+            int[] visits = new int[requests.size()];
+            for (List<Integer> pending : pendingByType.values()) {
+                for (Iterator<Integer> indexes = pending.iterator(); indexes.hasNext(); ) {
+                    int index = indexes.next();
+                    LastTicket lastTicket = lastTickets.get(requests.get(index).getVehicleRegNumber());
+                    if (lastTicket != null && isOpen(lastTicket.getTicket())) {
+                        results[index] = GateResult.of(requests.get(index), GateStatus.ALREADY_PARKED);
+                        indexes.remove();
+                    } else {
+                        visits[index] = (lastTicket != null ? lastTicket.getNbTicket() : 0) + 1;
+                    }
+                }
+            }
+            for (Map.Entry<ParkingType, List<Integer>> pending : pendingByType.entrySet()) {
+                if (pending.getValue().isEmpty()) {
+                    continue;
+                }
+                List<Integer> parkingNumbers = parkingSpotDAO.claimAvailableSlots(pending.getKey(), pending.getValue().size());
+                for (int j = 0; j < pending.getValue().size(); j++) {
+                    int index = pending.getValue().get(j);
+                    if (j >= parkingNumbers.size()) {
+                        results[index] = GateResult.of(requests.get(index), GateStatus.NO_SPOT_AVAILABLE);
+                        continue;
+                    }
+                    Ticket ticket = new Ticket();
+                    ticket.setParkingSpot(new ParkingSpot(parkingNumbers.get(j), pending.getKey(), false));
+                    ticket.setVehicleRegNumber(requests.get(index).getVehicleRegNumber());
+                    ticket.setPrice(0);
+                    ticket.setInTimeMillis(inTime);
+                    ticketIndexes.add(index);
+                    tickets.add(ticket);
+                }
+            }
+            if (!tickets.isEmpty()) {
+                if (!ticketDAO.saveTickets(tickets)) {
+                    return fillResults(requests, results, GateStatus.ERROR);
+                }
+                unitOfWork.commit();
+            }
+            for (int j = 0; j < tickets.size(); j++) {
+                int index = ticketIndexes.get(j);
+                results[index] = new GateResult(requests.get(index), GateStatus.OK, tickets.get(j),
+                        fareCalculatorService.isLoyal(visits[index]), visits[index]);
+            }
+        } catch (Exception e) {
+            logger.error("Unable to process a batch of " + requests.size() + " incoming vehicles", e);
+            return fillResults(requests, results, GateStatus.ERROR);
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Closes the tickets of a burst of leaving vehicles in one transaction: the vehicles are looked up with one query,
+     * and the tickets and the spots are written with one JDBC batch each. Each request gets its own result in the same order; if the batch cannot be written,
+     * every known vehicle gets {@link GateStatus#ERROR}.
+     */
+    public List<GateResult> exitVehicles(List<GateRequest> requests) {
+        long start = System.nanoTime();
+        List<GateResult> results = exit(requests);
+        record(batchExitMetrics, start, results);
+        return results;
+    }
+
+    private List<GateResult> exit(List<GateRequest> requests) {
+        GateResult[] results = new GateResult[requests.size()];
+        Set<String> vehicleRegNumbers = new HashSet<>();
+        List<Integer> ticketIndexes = new ArrayList<>();
+        List<Ticket> tickets = new ArrayList<>();
+        List<ParkingSpot> parkingSpots = new ArrayList<>();
+        List<Boolean> discounts = new ArrayList<>();
+        List<Integer> visits = new ArrayList<>();
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            GateRequest request = requests.get(i);
+            String vehicleRegNumber = request.getVehicleRegNumber();
+            if (vehicleRegNumber == null || vehicleRegNumber.trim().isEmpty() || !vehicleRegNumbers.add(vehicleRegNumber)) {
+                results[i] = GateResult.of(request, GateStatus.INVALID_REQUEST);
+            } else {
+                pending.add(i);
+            }
+        }
+        try (UnitOfWork unitOfWork = ticketDAO.beginUnitOfWork()) {
+            Map<String, LastTicket> lastTickets = ticketDAO.getLastTickets(vehicleRegNumbers);
+            if (lastTickets == null) {
+                return fillResults(requests, results, GateStatus.ERROR);
+            }
+            for (int i : pending) {
+                GateRequest request = requests.get(i);
+                LastTicket lastTicket = lastTickets.get(request.getVehicleRegNumber());
+                if (lastTicket == null || !isOpen(lastTicket.getTicket())) {
+                    results[i] = GateResult.of(request, GateStatus.UNKNOWN_VEHICLE);
+                    continue;
+                }
+                Ticket ticket = lastTicket.getTicket();
+                ticket.setOutTimeMillis(clock.millis());
+                boolean applyDiscount = fareCalculatorService.isLoyal(lastTicket.getNbTicket());
+                fareCalculatorService.calculateFareCents(ticket, lastTicket.getNbTicket());
                 ParkingSpot parkingSpot = ticket.getParkingSpot();
                 parkingSpot.setAvailable(true);
-                parkingSpotDAO.updateParking(parkingSpot);
-                System.out.println("Please pay the parking fare:" + ticket.getPrice());
-                System.out.println("Recorded out-time for vehicle number:" + ticket.getVehicleRegNumber() + " is:" + outTime);
-            } else {
-                System.out.println("Unable to update ticket information. Error occurred");
+                ticketIndexes.add(i);
+                tickets.add(ticket);
+                parkingSpots.add(parkingSpot);
+                discounts.add(applyDiscount);
+                visits.add(lastTicket.getNbTicket());
+            }
+            if (!tickets.isEmpty()) {
+                if (!ticketDAO.updateTickets(tickets) || !parkingSpotDAO.updateParkings(parkingSpots)) {
+                    return fillResults(requests, results, GateStatus.ERROR);
+                }
+                unitOfWork.commit();
+            }
+            for (int j = 0; j < tickets.size(); j++) {
+                int index = ticketIndexes.get(j);
+                results[index] = new GateResult(requests.get(index), GateStatus.OK, tickets.get(j), discounts.get(j), visits.get(j));
             }
         } catch (Exception e) {
-            logger.error("Unable to process exiting vehicle", e);
+            logger.error("Unable to process a batch of " + requests.size() + " exiting vehicles", e);
+            return fillResults(requests, results, GateStatus.ERROR);
+        }
+        return Arrays.asList(results);
+    }
+
+    private void record(OperationMetrics metrics, long start, List<GateResult> results) {
+        boolean failed = false;
+        for (int i = 0; i < results.size(); i++) {
+            failed |= results.get(i).getStatus() == GateStatus.ERROR;
+            audit(results.get(i), start);
+        }
+        metrics.record(start, failed);
+    }
+
+    private void audit(GateResult result, long start) {
+        if (auditLog != null) {
+            auditLog.record(result, System.nanoTime() - start);
+        }
+    }
+
+    private static boolean isOpen(Ticket ticket) {
+        return ticket != null && ticket.getOutTimeMillis() == Ticket.NO_TIME;
+    }
+
+    private static List<GateResult> fillResults(List<GateRequest> requests, GateResult[] results, GateStatus status) {
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                results[i] = GateResult.of(requests.get(i), status);
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Fare the vehicle would pay if it left now, without closing its ticket. Returns null if the vehicle is not parked.
+     */
+    public Ticket quoteFare(String vehicleRegNumber) {
+        LastTicket lastTicket = ticketDAO.getLastTicket(vehicleRegNumber);
+        if (lastTicket == null || !isOpen(lastTicket.getTicket())) {
+            return null;
+        }
+        Ticket ticket = lastTicket.getTicket();
+        ticket.setOutTimeMillis(clock.millis());
+        fareCalculatorService.calculateFareCents(ticket, lastTicket.getNbTicket());
+        return ticket;
+    }
+
+    public GateResult quoteVehicle(GateRequest request) {
+        long start = System.nanoTime();
+        GateResult result = quote(request);
+        quoteMetrics.record(start, result.getStatus() == GateStatus.ERROR);
+        return result;
+    }
+
+    private GateResult quote(GateRequest request) {
+        String vehicleRegNumber = request.getVehicleRegNumber();
+        if (vehicleRegNumber == null || vehicleRegNumber.trim().isEmpty()) {
+            return GateResult.of(request, GateStatus.INVALID_REQUEST);
+        }
+        try {
+            Ticket ticket = quoteFare(vehicleRegNumber);
+            if (ticket == null) {
+                return GateResult.of(request, GateStatus.UNKNOWN_VEHICLE);
+            }
+            return new GateResult(request, GateStatus.OK, ticket, false);
+        } catch (Exception e) {
+            logger.error("Unable to quote the fare of vehicle " + vehicleRegNumber, e);
+            return GateResult.of(request, GateStatus.ERROR);
         }
     }
 
@@ -0,0 +1,304 @@
+package com.parkit.parkingsystem.service;
+
+import com.mysql.cj.jdbc.Driver;
+import com.parkit.parkingsystem.api.ParkingHttpServer;
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.ConnectionPool;
+import com.parkit.parkingsystem.config.SchemaMigrator;
+import com.parkit.parkingsystem.dao.GateJournal;
+import com.parkit.parkingsystem.dao.InMemoryParkingSpotStore;
+import com.parkit.parkingsystem.dao.InMemoryTicketStore;
+import com.parkit.parkingsystem.dao.InstrumentedParkingSpotStore;
+import com.parkit.parkingsystem.dao.InstrumentedTicketStore;
+import com.parkit.parkingsystem.dao.JournalDAO;
+import com.parkit.parkingsystem.dao.JournaledParkingSpotStore;
+import com.parkit.parkingsystem.dao.JournaledTicketStore;
+import com.parkit.parkingsystem.dao.MappedFileParkingSpotStore;
+import com.parkit.parkingsystem.dao.MappedFileTicketStore;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ParkingSpotStore;
+import com.parkit.parkingsystem.dao.TicketArchiveDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketStore;
+import com.parkit.parkingsystem.dao.VisitCountCache;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.metrics.MetricsReporter;
+import com.parkit.parkingsystem.util.InputReaderUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wires the stores, caches and background jobs once so that every client (console, gates) shares them.
+ * {@code parkit.storage=memory} keeps spots and tickets in memory only, without any database,
+ * and {@code parkit.storage=mapped} keeps them in memory-mapped files of the {@code parkit.storage.dir} folder.
+ * With {@code parkit.storage=journal} gates are served from memory and answer once their writes are in the
+ * gate journal of that folder, the database being updated in the background.
+ * Unless {@code parkit.metrics.enabled=false} every store call is timed, published over JMX and logged periodically,
+ * and unless {@code parkit.audit.enabled=false} every entry and exit is written to the {@code GateAudit} log.
+ * Fares follow the rules file {@code parkit.tariff.file}, reloaded when it changes, or the standard tariff.
+ */
+public class ParkingSystem implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("ParkingSystem");
+
+    public static final String STORAGE = System.getProperty("parkit.storage", "jdbc");
+    public static final String STORAGE_LAYOUT = System.getProperty("parkit.storage.layout", InMemoryParkingSpotStore.DEFAULT_LAYOUT);
+
+    private ParkingSpotStore parkingSpotStore;
+    private TicketStore ticketStore;
+    private final ConnectionPool connectionPool;
+    private final ScheduledExecutorService scheduler;
+    private GateJournal gateJournal;
+    private JournalApplier journalApplier;
+    private GateAuditLog gateAuditLog;
+    private final TariffEngine tariffEngine;
+    private ParkingEngine parkingEngine;
+    private ParkingHttpServer httpServer;
+
+    public ParkingSystem() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "parkit-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        switch (STORAGE) {
+            case "memory": {
+                parkingSpotStore = InMemoryParkingSpotStore.withLayout(STORAGE_LAYOUT);
+                ticketStore = new InMemoryTicketStore();
+                connectionPool = null;
+                logger.info("Spots and tickets are kept in memory only (layout {})", STORAGE_LAYOUT);
+                break;
+            }
+            case "mapped": {
+                Path directory = Paths.get(System.getProperty("parkit.storage.dir", "data"));
+                try {
+                    Files.createDirectories(directory);
+                    parkingSpotStore = MappedFileParkingSpotStore.open(directory.resolve("spots.map"), STORAGE_LAYOUT);
+                    ticketStore = MappedFileTicketStore.open(directory.resolve("tickets.map"));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Unable to open the storage files of " + directory, e);
+                }
+                connectionPool = null;
+                break;
+            }
+            case "journal": {
+                migrate();
+                Path directory = Paths.get(System.getProperty("parkit.storage.dir", "data"));
+                JournalDAO journalDAO = new JournalDAO();
+                try {
+                    journalApplier = new JournalApplier(journalDAO, directory);
+                    long lastLsn = journalApplier.recover();
+                    InMemoryParkingSpotStore spots = new InMemoryParkingSpotStore(journalDAO.getParkingSpots());
+                    InMemoryTicketStore tickets = new InMemoryTicketStore();
+                    journalDAO.loadTickets(tickets);
+                    gateJournal = GateJournal.open(directory, lastLsn, journalApplier::enqueue);
+                    journalApplier.start();
+                    parkingSpotStore = new JournaledParkingSpotStore(spots, gateJournal);
+                    ticketStore = new JournaledTicketStore(tickets, gateJournal);
+                } catch (Exception e) {
+                    throw new IllegalStateException("Unable to replay the gate journal of " + directory, e);
+                }
+                if (Boolean.parseBoolean(System.getProperty("parkit.archive.enabled", "true"))) {
+                    scheduler.scheduleWithFixedDelay(new TicketArchiveService(new TicketArchiveDAO()),
+                            1, TicketArchiveService.INTERVAL_MINUTES, TimeUnit.MINUTES);
+                }
+                connectionPool = journalDAO.dataBaseConfig.getConnectionPool();
+                break;
+            }
+            case "jdbc": {
+                migrate();
+                ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+                if (Boolean.parseBoolean(System.getProperty("parkit.spotIndex.enabled", "true"))) {
+                    parkingSpotDAO.loadSpotIndex();
+                }
+                TicketDAO ticketDAO = new TicketDAO();
+                if (Boolean.parseBoolean(System.getProperty("parkit.activeTickets.enabled", "true"))) {
+                    ticketDAO.loadActiveTicketCache();
+                }
+                if (Boolean.parseBoolean(System.getProperty("parkit.visitCount.enabled", "true"))) {
+                    ticketDAO.visitCountCache = new VisitCountCache();
+                }
+                scheduleDataBaseJobs(parkingSpotDAO, ticketDAO);
+                parkingSpotStore = parkingSpotDAO;
+                ticketStore = ticketDAO;
+                connectionPool = ticketDAO.dataBaseConfig.getConnectionPool();
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown storage: " + STORAGE);
+        }
+        if (Metrics.ENABLED) {
+            parkingSpotStore = new InstrumentedParkingSpotStore(parkingSpotStore);
+            ticketStore = new InstrumentedTicketStore(ticketStore);
+            Metrics.registerMBeans();
+            if (MetricsReporter.INTERVAL_SECONDS > 0) {
+                scheduler.scheduleAtFixedRate(new MetricsReporter(),
+                        MetricsReporter.INTERVAL_SECONDS, MetricsReporter.INTERVAL_SECONDS, TimeUnit.SECONDS);
+            }
+        }
+        if (Boolean.parseBoolean(System.getProperty("parkit.audit.enabled", "true"))) {
+            gateAuditLog = GateAuditLog.open();
+        }
+        tariffEngine = TariffEngine.open();
+        if (tariffEngine.isReloadable() && TariffEngine.RELOAD_SECONDS > 0) {
+            scheduler.scheduleWithFixedDelay(tariffEngine, TariffEngine.RELOAD_SECONDS, TariffEngine.RELOAD_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private static void migrate() {
+        if (Boolean.parseBoolean(System.getProperty("parkit.db.migrate", "true"))) {
+            try {
+                new SchemaMigrator(new DataBaseConfig()).migrate();
+            } catch (Exception e) {
+                logger.error("Unable to migrate database schema", e);
+            }
+        }
+    }
+
+    private void scheduleDataBaseJobs(ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO) {
+        if (Boolean.parseBoolean(System.getProperty("parkit.archive.enabled", "true"))) {
+            scheduler.scheduleWithFixedDelay(new TicketArchiveService(new TicketArchiveDAO()),
+                    1, TicketArchiveService.INTERVAL_MINUTES, TimeUnit.MINUTES);
+        }
+        long checkIntervalSeconds = Long.getLong("parkit.activeTickets.checkIntervalSeconds", 60L);
+        if (ticketDAO.activeTicketCache != null && checkIntervalSeconds > 0) {
+            boolean repair = Boolean.parseBoolean(System.getProperty("parkit.activeTickets.repair", "true"));
+            scheduler.scheduleWithFixedDelay(() -> ticketDAO.checkActiveTicketCache(repair),
+                    checkIntervalSeconds, checkIntervalSeconds, TimeUnit.SECONDS);
+        }
+        long spotCheckIntervalSeconds = Long.getLong("parkit.spotIndex.checkIntervalSeconds", 60L);
+        if (parkingSpotDAO.spotIndex != null && spotCheckIntervalSeconds > 0) {
+            boolean repair = Boolean.parseBoolean(System.getProperty("parkit.spotIndex.repair", "true"));
+            scheduler.scheduleWithFixedDelay(() -> parkingSpotDAO.checkSpotIndex(repair),
+                    spotCheckIntervalSeconds, spotCheckIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    public ParkingService newConsoleService(InputReaderUtil inputReaderUtil) {
+        ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSpotStore, ticketStore);
+        parkingService.setAuditLog(gateAuditLog);
+        parkingService.setTariffEngine(tariffEngine);
+        return parkingService;
+    }
+
+    public synchronized ParkingEngine getParkingEngine() {
+        if (parkingEngine == null) {
+            ParkingService parkingService = new ParkingService(parkingSpotStore, ticketStore);
+            parkingService.setAuditLog(gateAuditLog);
+            parkingService.setTariffEngine(tariffEngine);
+            if (ParkingEngine.VIRTUAL_THREADS) {
+                int maxWorkflows;
+                if (STORAGE.equals("jdbc")) {
+                    maxWorkflows = connectionPool.getMaxSize();
+                    if (driverPinsCarriers()) {
+                        // a workflow waiting on MySQL holds its carrier, so no more of them than carriers can wait
+                        int carriers = Integer.getInteger("jdk.virtualThreadScheduler.parallelism",
+                                Runtime.getRuntime().availableProcessors());
+                        maxWorkflows = Math.min(maxWorkflows, carriers);
+                        logger.warn("MySQL driver {} pins virtual threads, running at most {} workflows at once",
+                                Driver.class.getPackage().getImplementationVersion(), maxWorkflows);
+                    }
+                } else if (gateJournal != null) {
+                    // workflows waiting for the same fsync share it, so more of them make bigger group commits
+                    maxWorkflows = ParkingEngine.WORKERS;
+                } else {
+                    // in memory a workflow never waits, so the CPUs are the only bound
+                    maxWorkflows = Runtime.getRuntime().availableProcessors();
+                }
+                parkingEngine = ParkingEngine.onVirtualThreads(parkingService, maxWorkflows, ParkingEngine.MAX_IN_FLIGHT);
+            } else {
+                parkingEngine = new ParkingEngine(parkingService);
+            }
+        }
+        return parkingEngine;
+    }
+
+    /**
+     * Starts the gate HTTP API if a port is configured with {@code parkit.http.port}.
+     */
+    public synchronized void startHttpServer() {
+        if (ParkingHttpServer.PORT <= 0 || httpServer != null) {
+            return;
+        }
+        try {
+            httpServer = new ParkingHttpServer(ParkingHttpServer.PORT, getParkingEngine(), parkingSpotStore, connectionPool);
+            httpServer.start();
+        } catch (IOException e) {
+            logger.error("Unable to start the HTTP API on port " + ParkingHttpServer.PORT, e);
+        }
+    }
+
+    public ParkingSpotStore getParkingSpotStore() {
+        return parkingSpotStore;
+    }
+
+    public TicketStore getTicketStore() {
+        return ticketStore;
+    }
+
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (httpServer != null) {
+            httpServer.close();
+        }
+        if (parkingEngine != null) {
+            parkingEngine.close();
+        }
+        scheduler.shutdownNow();
+        if (gateAuditLog != null) {
+            gateAuditLog.close();
+        }
+        if (gateJournal != null) {
+            gateJournal.close();
+            journalApplier.close();
+        }
+        closeStore(ticketStore);
+        closeStore(parkingSpotStore);
+        if (connectionPool != null) {
+            DataBaseConfig.shutdown();
+        }
+    }
+
+    /**
+     * Connector/J before 8.0.33 does its socket I/O inside {@code synchronized} blocks, where a virtual thread cannot
+     * leave its carrier thread.
+     */
+    static boolean driverPinsCarriers() {
+        String version = Driver.class.getPackage().getImplementationVersion();
+        if (version == null) {
+            return true;
+        }
+        String[] parts = version.split("[.-]");
+        try {
+            int major = Integer.parseInt(parts[0]);
+            int minor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            int patch = parts.length > 2 ? Integer.parseInt(parts[2]) : 0;
+            return major < 8 || (major == 8 && minor == 0 && patch < 33);
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    private static void closeStore(Object store) {
+        if (store instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) store).close();
+            } catch (Exception e) {
+                logger.error("Error closing storage", e);
+            }
+        }
+    }
+}
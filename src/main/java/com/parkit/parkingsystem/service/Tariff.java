@@ -0,0 +1,282 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+/**
+ * Pricing rules compiled into lookup tables: for each parking type, the rate of every minute of the day and
+ * their running sum from midnight. The cost of a stay is then the difference of two running sums, whatever
+ * the number of time-of-day bands, and the loyalty discount is read from a table indexed by the number of visits.
+ * A tariff is immutable; {@link TariffEngine} swaps in a new one when the rules change.
+ *
+ * <p>Rules are properties, rates and caps being in cents:
+ * <pre>
+ * zone=Europe/Paris
+ * freeMinutes=30
+ * loyalty=2:95,10:90
+ * CAR.rate=150
+ * CAR.bands=07:00-10:00 200,17:00-19:30 250
+ * CAR.dailyCap=2000
+ * BIKE.rate=100
+ * </pre>
+ * A type is priced once it has a {@code rate} (cents per hour). Bands override the rate between two times of day,
+ * the later band winning where they overlap, and may run past midnight. Stays shorter than the free period
+ * ({@code <type>.freeMinutes}, else {@code freeMinutes}) are free. A daily cap bounds the cost of each 24 hours
+ * from the entry. {@code loyalty} lists from how many visits, this one included, what percent of the price is paid.
+ */
+public class Tariff {
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final long MINUTE_MILLIS = 60_000;
+    private static final long DAY_MILLIS = MINUTES_PER_DAY * MINUTE_MILLIS;
+    private static final long MILLIS_PER_HOUR = 3_600_000;
+    // costs are kept in cents x milliseconds per hour, so that a stay is priced exactly to the millisecond
+    private static final long CENTS_DIVISOR = MILLIS_PER_HOUR * 100;
+    private static final long NO_CAP = Long.MAX_VALUE;
+
+    private final TimeZone zone;
+    private final long[][] minuteRates;
+    private final long[][] runningCosts;
+    private final long[] flatRates;
+    private final long[] freeMillis;
+    private final long[] dailyCaps;
+    private final int[] percentByVisits;
+    private final int loyaltyVisits;
+
+    private Tariff(TimeZone zone, long[][] minuteRates, long[] freeMillis, long[] dailyCaps, int[] percentByVisits, int loyaltyVisits) {
+        this.zone = zone;
+        this.minuteRates = minuteRates;
+        this.freeMillis = freeMillis;
+        this.dailyCaps = dailyCaps;
+        this.percentByVisits = percentByVisits;
+        this.loyaltyVisits = loyaltyVisits;
+        this.runningCosts = new long[minuteRates.length][];
+        this.flatRates = new long[minuteRates.length];
+        for (int type = 0; type < minuteRates.length; type++) {
+            flatRates[type] = -1;
+            if (minuteRates[type] != null) {
+                long[] running = new long[MINUTES_PER_DAY + 1];
+                boolean flat = true;
+                for (int minute = 0; minute < MINUTES_PER_DAY; minute++) {
+                    running[minute + 1] = running[minute] + minuteRates[type][minute] * MINUTE_MILLIS;
+                    flat &= minuteRates[type][minute] == minuteRates[type][0];
+                }
+                runningCosts[type] = running;
+                if (flat) {
+                    flatRates[type] = minuteRates[type][0];
+                }
+            }
+        }
+    }
+
+    /**
+     * The historical fares: 1.50 an hour for a car, 1.00 for a bike, the first 30 minutes free and 5% off from
+     * the second visit.
+     */
+    public static Tariff standard() {
+        Properties rules = new Properties();
+        rules.setProperty("zone", "UTC");
+        rules.setProperty("freeMinutes", String.valueOf(Fare.FREE_MINUTES));
+        rules.setProperty("loyalty", Fare.LOYALTY_VISITS + ":" + Fare.LOYALTY_PERCENT);
+        rules.setProperty(ParkingType.CAR + ".rate", String.valueOf(Fare.CAR_RATE_CENTS_PER_HOUR));
+        rules.setProperty(ParkingType.BIKE + ".rate", String.valueOf(Fare.BIKE_RATE_CENTS_PER_HOUR));
+        return compile(rules);
+    }
+
+    /**
+     * @throws IllegalArgumentException if a rule cannot be read
+     */
+    public static Tariff compile(Properties rules) {
+        TimeZone zone;
+        try {
+            zone = TimeZone.getTimeZone(ZoneId.of(rules.getProperty("zone", TimeZone.getDefault().getID()).trim()));
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("Incorrect zone: " + rules.getProperty("zone"), e);
+        }
+        long defaultFreeMinutes = parseLong(rules, "freeMinutes", 0);
+        ParkingType[] types = ParkingType.values();
+        long[][] minuteRates = new long[types.length][];
+        long[] freeMillis = new long[types.length];
+        long[] dailyCaps = new long[types.length];
+        for (ParkingType type : types) {
+            int index = type.ordinal();
+            freeMillis[index] = parseLong(rules, type + ".freeMinutes", defaultFreeMinutes) * MINUTE_MILLIS;
+            if (rules.getProperty(type + ".rate") == null) {
+                continue;
+            }
+            long[] rates = new long[MINUTES_PER_DAY];
+            Arrays.fill(rates, parseLong(rules, type + ".rate", 0));
+            String bands = rules.getProperty(type + ".bands", "").trim();
+            if (!bands.isEmpty()) {
+                for (String band : bands.split(",")) {
+                    applyBand(rates, band.trim(), type + ".bands");
+                }
+            }
+            minuteRates[index] = rates;
+            long dailyCap = parseLong(rules, type + ".dailyCap", -1);
+            dailyCaps[index] = dailyCap < 0 ? NO_CAP : dailyCap * MILLIS_PER_HOUR;
+        }
+        TreeMap<Integer, Integer> loyalty = new TreeMap<>();
+        String loyaltyRule = rules.getProperty("loyalty", "").trim();
+        if (!loyaltyRule.isEmpty()) {
+            for (String tier : loyaltyRule.split(",")) {
+                String[] visitsAndPercent = tier.trim().split(":");
+                try {
+                    int visits = Integer.parseInt(visitsAndPercent[0].trim());
+                    int percent = Integer.parseInt(visitsAndPercent[1].trim());
+                    if (visits < 1 || percent < 0 || percent > 100) {
+                        throw new IllegalArgumentException("Incorrect loyalty tier: " + tier);
+                    }
+                    loyalty.put(visits, percent);
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    throw new IllegalArgumentException("Incorrect loyalty tier: " + tier, e);
+                }
+            }
+        }
+        int[] percentByVisits = new int[loyalty.isEmpty() ? 1 : loyalty.lastKey() + 1];
+        for (int visits = 0; visits < percentByVisits.length; visits++) {
+            Integer tier = loyalty.floorKey(visits);
+            percentByVisits[visits] = tier == null ? 100 : loyalty.get(tier);
+        }
+        int loyaltyVisits = loyalty.isEmpty() ? Integer.MAX_VALUE : loyalty.firstKey();
+        return new Tariff(zone, minuteRates, freeMillis, dailyCaps, percentByVisits, loyaltyVisits);
+    }
+
+    private static void applyBand(long[] rates, String band, String key) {
+        // HH:mm-HH:mm <cents per hour>
+        String[] timesAndRate = band.split("\\s+");
+        String[] times = timesAndRate[0].split("-");
+        if (timesAndRate.length != 2 || times.length != 2) {
+            throw new IllegalArgumentException("Incorrect band in " + key + ": " + band);
+        }
+        int from = parseMinuteOfDay(times[0], key);
+        int to = parseMinuteOfDay(times[1], key);
+        long rate;
+        try {
+            rate = Long.parseLong(timesAndRate[1]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Incorrect band in " + key + ": " + band, e);
+        }
+        if (from == to || rate < 0) {
+            throw new IllegalArgumentException("Incorrect band in " + key + ": " + band);
+        }
+        for (int minute = from; minute != to; minute = (minute + 1) % MINUTES_PER_DAY) {
+            rates[minute] = rate;
+        }
+    }
+
+    private static int parseMinuteOfDay(String time, String key) {
+        String[] hoursAndMinutes = time.trim().split(":");
+        try {
+            int hours = Integer.parseInt(hoursAndMinutes[0]);
+            int minutes = Integer.parseInt(hoursAndMinutes[1]);
+            if (hours < 0 || minutes < 0 || minutes >= 60 || hours * 60 + minutes > MINUTES_PER_DAY) {
+                throw new IllegalArgumentException("Incorrect time in " + key + ": " + time);
+            }
+            return (hours * 60 + minutes) % MINUTES_PER_DAY;
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Incorrect time in " + key + ": " + time, e);
+        }
+    }
+
+    private static long parseLong(Properties rules, String key, long defaultValue) {
+        String value = rules.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            long parsed = Long.parseLong(value.trim());
+            if (parsed < 0) {
+                throw new IllegalArgumentException("Negative value for " + key + ": " + value);
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Incorrect value for " + key + ": " + value, e);
+        }
+    }
+
+    /**
+     * Price in cents of a stay between two epoch milliseconds, rounded half up once, after the loyalty discount.
+     * Allocates nothing unless it throws.
+     *
+     * @param visits number of tickets of the vehicle, this one included
+     */
+    public long priceCents(ParkingType parkingType, long inTimeMillis, long outTimeMillis, int visits) {
+        long cost = cost(parkingType, inTimeMillis, outTimeMillis);
+        return (cost * percent(visits) + CENTS_DIVISOR / 2) / CENTS_DIVISOR;
+    }
+
+    /**
+     * Price of a stay not rounded, in the currency unit.
+     */
+    public double price(ParkingType parkingType, long inTimeMillis, long outTimeMillis, int visits) {
+        return (double) (cost(parkingType, inTimeMillis, outTimeMillis) * percent(visits)) / (CENTS_DIVISOR * 100);
+    }
+
+    /**
+     * @return whether a vehicle at its given visit gets a loyalty discount
+     */
+    public boolean isLoyal(int visits) {
+        return percent(visits) < 100;
+    }
+
+    /**
+     * @return the percent taken off the price of a vehicle at its given visit
+     */
+    public int getDiscountPercent(int visits) {
+        return 100 - percent(visits);
+    }
+
+    /**
+     * @return the fewest visits getting a loyalty discount, {@link Integer#MAX_VALUE} without loyalty discount
+     */
+    public int getLoyaltyVisits() {
+        return loyaltyVisits;
+    }
+
+    private int percent(int visits) {
+        return percentByVisits[Math.max(0, Math.min(visits, percentByVisits.length - 1))];
+    }
+
+    private long cost(ParkingType parkingType, long inTimeMillis, long outTimeMillis) {
+        long duration = outTimeMillis - inTimeMillis;
+        int type = parkingType.ordinal();
+        if (duration < freeMillis[type]) {
+            return 0;
+        }
+        long[] running = runningCosts[type];
+        if (running == null) {
+            throw new IllegalArgumentException("Unknown Parking Type");
+        }
+        long cost;
+        if (flatRates[type] >= 0) {
+            // without bands the time of day does not matter
+            cost = duration * flatRates[type];
+        } else {
+            long[] rates = minuteRates[type];
+            // the whole stay is read on the local clock of the entry, so a daylight saving change does not bill an hour
+            long start = inTimeMillis + zone.getOffset(inTimeMillis);
+            cost = runningCost(running, rates, start + duration) - runningCost(running, rates, start);
+        }
+        long dailyCap = dailyCaps[type];
+        if (dailyCap < running[MINUTES_PER_DAY]) {
+            long days = duration / DAY_MILLIS;
+            cost = days * dailyCap + Math.min(dailyCap, cost - days * running[MINUTES_PER_DAY]);
+        }
+        return cost;
+    }
+
+    private static long runningCost(long[] running, long[] rates, long localMillis) {
+        long days = Math.floorDiv(localMillis, DAY_MILLIS);
+        long millisOfDay = Math.floorMod(localMillis, DAY_MILLIS);
+        int minute = (int) (millisOfDay / MINUTE_MILLIS);
+        return days * running[MINUTES_PER_DAY] + running[minute] + (millisOfDay % MINUTE_MILLIS) * rates[minute];
+    }
+}
@@ -0,0 +1,99 @@
+package com.parkit.parkingsystem.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Holds the tariff in force. With a rules file ({@code parkit.tariff.file}) the tariff is compiled from it at startup
+ * and compiled again whenever the file changes, see {@link #run()}; a pricing change then needs no restart.
+ * Fares being read from the tariff of the moment, a ticket priced during a reload gets either the old or the new one.
+ */
+public class TariffEngine implements Runnable {
+
+    private static final Logger logger = LogManager.getLogger("TariffEngine");
+
+    public static final String FILE = System.getProperty("parkit.tariff.file");
+    public static final long RELOAD_SECONDS = Long.getLong("parkit.tariff.reloadSeconds", 10L);
+
+    private final Path file;
+    private volatile Tariff tariff;
+    private long lastModified;
+
+    public TariffEngine(Tariff tariff) {
+        this.file = null;
+        this.tariff = tariff;
+    }
+
+    private TariffEngine(Path file) throws IOException {
+        this.file = file;
+        this.lastModified = Files.getLastModifiedTime(file).toMillis();
+        this.tariff = load(file);
+    }
+
+    /**
+     * Engine of the configured rules file, or of the {@link Tariff#standard() standard tariff} if there is none.
+     */
+    public static TariffEngine open() {
+        return FILE == null ? new TariffEngine(Tariff.standard()) : open(Paths.get(FILE));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the rules cannot be read, as gates must not start on a wrong tariff
+     */
+    public static TariffEngine open(Path file) {
+        try {
+            TariffEngine tariffEngine = new TariffEngine(file);
+            logger.info("Tariff loaded from {}", file);
+            return tariffEngine;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read the tariff of " + file, e);
+        }
+    }
+
+    public Tariff getTariff() {
+        return tariff;
+    }
+
+    public boolean isReloadable() {
+        return file != null;
+    }
+
+    /**
+     * Compiles the rules file again if it changed since it was last read. Rules that cannot be read are logged and
+     * the tariff in force is kept.
+     */
+    @Override
+    public synchronized void run() {
+        if (file == null) {
+            return;
+        }
+        try {
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            if (modified == lastModified) {
+                return;
+            }
+            lastModified = modified;
+            tariff = load(file);
+            logger.info("Tariff reloaded from {}", file);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Unable to reload the tariff of " + file + ", the current tariff is kept", e);
+        }
+    }
+
+    private static Tariff load(Path file) throws IOException {
+        Properties rules = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            rules.load(reader);
+        }
+        return Tariff.compile(rules);
+    }
+}
@@ -0,0 +1,47 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.dao.TicketArchiveDAO;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves the tickets closed for more than {@code parkit.archive.maxAgeDays} days out of the live ticket table,
+ * in batches of {@code parkit.archive.batchSize} tickets with a pause in between so gates are never blocked for long.
+ */
+public class TicketArchiveService implements Runnable {
+
+    private static final Logger logger = LogManager.getLogger("TicketArchiveService");
+
+    public static final int MAX_AGE_DAYS = Integer.getInteger("parkit.archive.maxAgeDays", 90);
+    public static final int BATCH_SIZE = Integer.getInteger("parkit.archive.batchSize", 1000);
+    public static final long PAUSE_MS = Long.getLong("parkit.archive.pauseMs", 200L);
+    public static final long INTERVAL_MINUTES = Long.getLong("parkit.archive.intervalMinutes", 60L);
+
+    private final TicketArchiveDAO ticketArchiveDAO;
+
+    public TicketArchiveService(TicketArchiveDAO ticketArchiveDAO) {
+        this.ticketArchiveDAO = ticketArchiveDAO;
+    }
+
+    @Override
+    public void run() {
+        Date closedBefore = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(MAX_AGE_DAYS));
+        int total = 0;
+        try {
+            int archived;
+            do {
+                archived = ticketArchiveDAO.archiveClosedTickets(closedBefore, BATCH_SIZE);
+                if (archived > 0) {
+                    total += archived;
+                    Thread.sleep(PAUSE_MS);
+                }
+            } while (archived == BATCH_SIZE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Archived {} tickets closed before {}", total, closedBefore);
+    }
+}
@@ -0,0 +1,295 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketReconciliationDAO;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prices the closed tickets again with the tariff in force and reports those whose stored price differs, for
+ * instance after a tariff change or to audit a month. Each ticket gets the loyalty discount of its visit number
+ * at the time it was closed.
+ *
+ * <p>The tickets are read through one database cursor by the calling thread, which copies them into chunks of
+ * {@code parkit.reconcile.batchSize} tickets handed to {@code parkit.reconcile.threads} workers (one per core by
+ * default). Chunks are preallocated and recycled, so the job runs in the same memory whatever the number of tickets,
+ * and the reading waits whenever the workers are behind. Workers write the discrepancies of a chunk at once and,
+ * when corrections are applied, update its prices with one JDBC batch.
+ */
+public class TicketReconciliationService {
+
+    private static final Logger logger = LogManager.getLogger("TicketReconciliationService");
+
+    public static final int THREADS = Integer.getInteger("parkit.reconcile.threads", Runtime.getRuntime().availableProcessors());
+    public static final int BATCH_SIZE = Integer.getInteger("parkit.reconcile.batchSize", 1000);
+    public static final int FETCH_SIZE = Integer.getInteger("parkit.reconcile.fetchSize", 10_000);
+    public static final long PROGRESS_INTERVAL_SECONDS = Long.getLong("parkit.reconcile.progressIntervalSeconds", 10L);
+    public static final String REPORT_FILE = System.getProperty("parkit.reconcile.report", "reconciliation.csv");
+    public static final boolean APPLY = Boolean.getBoolean("parkit.reconcile.apply");
+
+    private final TicketReconciliationDAO ticketReconciliationDAO;
+    private final FareCalculatorService fareCalculatorService;
+    private final int threads;
+    private final int batchSize;
+
+    public TicketReconciliationService(TicketReconciliationDAO ticketReconciliationDAO, FareCalculatorService fareCalculatorService) {
+        this(ticketReconciliationDAO, fareCalculatorService, THREADS, BATCH_SIZE);
+    }
+
+    public TicketReconciliationService(TicketReconciliationDAO ticketReconciliationDAO, FareCalculatorService fareCalculatorService,
+                                       int threads, int batchSize) {
+        this.ticketReconciliationDAO = ticketReconciliationDAO;
+        this.fareCalculatorService = fareCalculatorService;
+        this.threads = Math.max(1, threads);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Command line job {@code reconcile [from] [to]}, with ISO dates, the tickets closed on the {@code to} day
+     * excluded: prices the tickets with the configured tariff, writes the discrepancies to {@code parkit.reconcile.report}
+     * and, with {@code -Dparkit.reconcile.apply=true}, corrects the stored prices.
+     */
+    public static Report run(String[] args) throws IOException {
+        LocalDate from = args.length > 1 ? LocalDate.parse(args[1]) : LocalDate.of(1970, 1, 1);
+        LocalDate to = args.length > 2 ? LocalDate.parse(args[2]) : LocalDate.now().plusDays(1);
+        Path reportFile = Paths.get(REPORT_FILE);
+        try (Writer writer = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8)) {
+            writer.write("id,vehicleRegNumber,visits,storedPrice,price\n");
+            TicketReconciliationService service = new TicketReconciliationService(new TicketReconciliationDAO(),
+                    new FareCalculatorService(TariffEngine.open()));
+            return service.reconcile(Timestamp.valueOf(from.atStartOfDay()), Timestamp.valueOf(to.atStartOfDay()), writer, APPLY);
+        } finally {
+            DataBaseConfig.shutdown();
+        }
+    }
+
+    /**
+     * Reconciles the tickets closed in [from, to).
+     *
+     * @param discrepancies receives one {@code id,vehicleRegNumber,visits,storedPrice,price} line per ticket whose price differs
+     * @param apply whether the stored prices are replaced by the recomputed ones
+     */
+    public Report reconcile(Timestamp from, Timestamp to, Appendable discrepancies, boolean apply) {
+        Report report = new Report();
+        BlockingQueue<Chunk> freeChunks = new ArrayBlockingQueue<>(threads * 2);
+        BlockingQueue<Chunk> fullChunks = new ArrayBlockingQueue<>(threads * 2);
+        for (int i = 0; i < threads * 2; i++) {
+            freeChunks.add(new Chunk(batchSize));
+        }
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> work(freeChunks, fullChunks, discrepancies, apply, report), "parkit-reconcile-" + i);
+            worker.start();
+            workers.add(worker);
+        }
+        long start = System.nanoTime();
+        long[] nextProgress = {start + TimeUnit.SECONDS.toNanos(PROGRESS_INTERVAL_SECONDS)};
+        Chunk[] filling = {null};
+        try {
+            ticketReconciliationDAO.readClosedTickets(from, to, FETCH_SIZE, (id, vehicleRegNumber, parkingType, inTimeMillis, outTimeMillis, price, visits) -> {
+                if (filling[0] == null) {
+                    filling[0] = freeChunks.take();
+                    filling[0].size = 0;
+                }
+                filling[0].add(id, vehicleRegNumber, parkingType, inTimeMillis, outTimeMillis, price, visits);
+                if (filling[0].size == batchSize) {
+                    fullChunks.put(filling[0]);
+                    filling[0] = null;
+                    long now = System.nanoTime();
+                    if (now >= nextProgress[0]) {
+                        nextProgress[0] = now + TimeUnit.SECONDS.toNanos(PROGRESS_INTERVAL_SECONDS);
+                        logger.info("Reconciled {} tickets ({} rows/s), {} discrepancies", report.getTickets(),
+                                Math.round(report.getTickets() / ((now - start) / 1e9)), report.getDiscrepancies());
+                    }
+                }
+            });
+            if (filling[0] != null) {
+                fullChunks.put(filling[0]);
+            }
+            report.complete = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.error("Unable to read the closed tickets", e);
+        } finally {
+            stopWorkers(workers, fullChunks);
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+        logger.info("Reconciliation of the tickets closed from {} to {}: {}", from, to, report);
+        return report;
+    }
+
+    private void stopWorkers(List<Thread> workers, BlockingQueue<Chunk> fullChunks) {
+        try {
+            for (int i = 0; i < workers.size(); i++) {
+                fullChunks.put(Chunk.END);
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            workers.forEach(Thread::interrupt);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void work(BlockingQueue<Chunk> freeChunks, BlockingQueue<Chunk> fullChunks, Appendable discrepancies,
+                      boolean apply, Report report) {
+        StringBuilder lines = new StringBuilder();
+        try {
+            while (true) {
+                Chunk chunk = fullChunks.take();
+                if (chunk == Chunk.END) {
+                    return;
+                }
+                reconcile(chunk, lines, discrepancies, apply, report);
+                freeChunks.put(chunk);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void reconcile(Chunk chunk, StringBuilder lines, Appendable discrepancies, boolean apply, Report report) {
+        int corrections = 0;
+        lines.setLength(0);
+        for (int i = 0; i < chunk.size; i++) {
+            long priceCents;
+            try {
+                priceCents = fareCalculatorService.calculateFareCents(chunk.parkingTypes[i], chunk.inTimes[i], chunk.outTimes[i], chunk.visits[i]);
+            } catch (IllegalArgumentException e) {
+                report.failed.increment();
+                logger.error("Unable to price ticket " + chunk.ids[i] + ": " + e.getMessage());
+                continue;
+            }
+            if (Math.round(chunk.prices[i] * 100) != priceCents) {
+                lines.append(chunk.ids[i]).append(',').append(chunk.vehicleRegNumbers[i]).append(',').append(chunk.visits[i])
+                        .append(',').append(chunk.prices[i]).append(',').append(priceCents / 100d).append('\n');
+                chunk.correctedIds[corrections] = chunk.ids[i];
+                chunk.correctedPrices[corrections] = priceCents / 100d;
+                corrections++;
+            }
+        }
+        report.tickets.add(chunk.size);
+        report.discrepancies.add(corrections);
+        if (corrections == 0) {
+            return;
+        }
+        if (discrepancies != null) {
+            synchronized (discrepancies) {
+                try {
+                    discrepancies.append(lines);
+                } catch (IOException e) {
+                    logger.error("Unable to write the discrepancies of " + corrections + " tickets", e);
+                }
+            }
+        }
+        if (apply) {
+            if (ticketReconciliationDAO.updatePrices(chunk.correctedIds, chunk.correctedPrices, corrections)) {
+                report.corrected.add(corrections);
+            } else {
+                report.failed.add(corrections);
+            }
+        }
+    }
+
+    private static final class Chunk {
+        private static final Chunk END = new Chunk(0);
+
+        private final int[] ids;
+        private final String[] vehicleRegNumbers;
+        private final ParkingType[] parkingTypes;
+        private final long[] inTimes;
+        private final long[] outTimes;
+        private final double[] prices;
+        private final int[] visits;
+        private final int[] correctedIds;
+        private final double[] correctedPrices;
+        private int size;
+
+        private Chunk(int capacity) {
+            ids = new int[capacity];
+            vehicleRegNumbers = new String[capacity];
+            parkingTypes = new ParkingType[capacity];
+            inTimes = new long[capacity];
+            outTimes = new long[capacity];
+            prices = new double[capacity];
+            visits = new int[capacity];
+            correctedIds = new int[capacity];
+            correctedPrices = new double[capacity];
+        }
+
+        private void add(int id, String vehicleRegNumber, ParkingType parkingType, long inTime, long outTime, double price, int visit) {
+            ids[size] = id;
+            vehicleRegNumbers[size] = vehicleRegNumber;
+            parkingTypes[size] = parkingType;
+            inTimes[size] = inTime;
+            outTimes[size] = outTime;
+            prices[size] = price;
+            visits[size] = visit;
+            size++;
+        }
+    }
+
+    public static final class Report {
+        private final LongAdder tickets = new LongAdder();
+        private final LongAdder discrepancies = new LongAdder();
+        private final LongAdder corrected = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private volatile boolean complete;
+        private long elapsedNanos;
+
+        public long getTickets() {
+            return tickets.sum();
+        }
+
+        public long getDiscrepancies() {
+            return discrepancies.sum();
+        }
+
+        public long getCorrected() {
+            return corrected.sum();
+        }
+
+        /**
+         * @return tickets that could not be priced or whose correction could not be written
+         */
+        public long getFailed() {
+            return failed.sum();
+        }
+
+        /**
+         * @return false if the reading of the tickets stopped on an error
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0d : getTickets() / (elapsedNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return getTickets() + " tickets in " + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + " ms ("
+                    + Math.round(getRowsPerSecond()) + " rows/s), " + getDiscrepancies() + " discrepancies, "
+                    + getCorrected() + " corrected, " + getFailed() + " failed" + (complete ? "" : ", incomplete");
+        }
+    }
+}
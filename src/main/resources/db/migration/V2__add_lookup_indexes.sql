@@ -0,0 +1,5 @@
+-- GET_TICKET, GET_LAST_TICKET, GET_NB_TICKET and HAS_TICKET look tickets up by plate, latest first
+create index TICKET_VEHICLE_REG_NUMBER_IN_TIME on ticket(VEHICLE_REG_NUMBER, IN_TIME);
+
+-- GET_NEXT_PARKING_SPOT: lowest available spot of a type
+create index PARKING_TYPE_AVAILABLE on parking(TYPE, AVAILABLE, PARKING_NUMBER);
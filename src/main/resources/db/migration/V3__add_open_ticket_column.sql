@@ -0,0 +1,4 @@
+-- NULL once the vehicle has left, so open tickets can be looked up by plate without reading the closed ones
+alter table ticket add column OPEN_VEHICLE_REG_NUMBER varchar(10) generated always as (case when OUT_TIME is null then VEHICLE_REG_NUMBER end);
+
+create index TICKET_OPEN_VEHICLE_REG_NUMBER on ticket(OPEN_VEHICLE_REG_NUMBER);
@@ -0,0 +1,19 @@
+-- closed tickets moved out of ticket by the archive job
+create table if not exists ticket_history(
+ ID int NOT NULL,
+ PARKING_NUMBER int NOT NULL,
+ VEHICLE_REG_NUMBER varchar(10) NOT NULL,
+ PRICE double,
+ IN_TIME DATETIME NOT NULL,
+ OUT_TIME DATETIME NOT NULL);
+
+create index TICKET_HISTORY_ID on ticket_history(ID);
+
+create index TICKET_HISTORY_VEHICLE_REG_NUMBER_IN_TIME on ticket_history(VEHICLE_REG_NUMBER, IN_TIME);
+
+-- number of archived tickets per vehicle, so the visit count never has to read ticket_history
+create table if not exists vehicle_visit(
+ VEHICLE_REG_NUMBER varchar(10) PRIMARY KEY,
+ NB_ARCHIVED_TICKET int NOT NULL);
+
+create index TICKET_OUT_TIME on ticket(OUT_TIME);
@@ -0,0 +1,6 @@
+-- last gate journal event applied to the tables, written in the same transaction as the events
+create table if not exists journal_checkpoint(
+ ID int PRIMARY KEY,
+ LSN bigint NOT NULL);
+
+insert into journal_checkpoint(ID, LSN) values(1, 0);
@@ -0,0 +1,4 @@
+-- a vehicle has at most one open ticket, even when two gates let it in at once
+alter table ticket drop index TICKET_OPEN_VEHICLE_REG_NUMBER;
+
+create unique index TICKET_OPEN_VEHICLE_REG_NUMBER on ticket(OPEN_VEHICLE_REG_NUMBER);
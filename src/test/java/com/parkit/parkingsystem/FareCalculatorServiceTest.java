@@ -233,4 +233,42 @@ public class FareCalculatorServiceTest {
         assertEquals(ticket.getPrice(), 0.7125, 0.000001d);
 
     }
+
+    @Test
+    @DisplayName("Le prix en centimes doit être arrondi une seule fois, après la réduction")
+    public void calculateFareCents() {
+        //given
+        long outTime = 1_700_000_000_000L;
+        long inTime = outTime - (45 * 60 * 1000);
+
+        //when
+        long carFare = fareCalculatorService.calculateFareCents(ParkingType.CAR, inTime, outTime, false);
+        long carFareWithDiscount = fareCalculatorService.calculateFareCents(ParkingType.CAR, inTime, outTime, true);
+        long bikeFareWithDiscount = fareCalculatorService.calculateFareCents(ParkingType.BIKE, inTime, outTime, true);
+        long dayFare = fareCalculatorService.calculateFareCents(ParkingType.CAR, outTime - (24 * 60 * 60 * 1000), outTime, false);
+        long freeFare = fareCalculatorService.calculateFareCents(ParkingType.CAR, outTime - (15 * 60 * 1000), outTime, false);
+
+        //then
+        assertEquals(113, carFare);
+        assertEquals(107, carFareWithDiscount);
+        assertEquals(71, bikeFareWithDiscount);
+        assertEquals(3600, dayFare);
+        assertEquals(0, freeFare);
+    }
+
+    @Test
+    @DisplayName("Le prix en centimes doit être refusé pour un type inconnu ou une sortie avant l'entrée")
+    public void calculateFareCentsIncorrectTicket() {
+        //given
+        long outTime = 1_700_000_000_000L;
+        ParkingSpot parkingSpot = new ParkingSpot(1, ParkingType.UNKNOWN, false);
+        ticket.setParkingSpot(parkingSpot);
+        ticket.setInTimeMillis(outTime - (60 * 60 * 1000));
+        ticket.setOutTimeMillis(outTime);
+
+        //when then
+        IllegalArgumentException unknownType = assertThrows(IllegalArgumentException.class, () -> fareCalculatorService.calculateFareCents(ticket, false));
+        assertEquals("Unknown Parking Type", unknownType.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> fareCalculatorService.calculateFareCents(ParkingType.CAR, outTime, outTime - 1, false));
+    }
 }
@@ -0,0 +1,79 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.GateStatus;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.InMemoryParkingSpotStore;
+import com.parkit.parkingsystem.dao.InMemoryTicketStore;
+import com.parkit.parkingsystem.model.GateRequest;
+import com.parkit.parkingsystem.model.GateResult;
+import com.parkit.parkingsystem.service.GateAuditLog;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GateAuditLogTest {
+
+    @Test
+    @DisplayName("Chaque entrée et chaque sortie doit donner une ligne d'audit, pas les devis")
+    public void auditTest() {
+        //given
+        List<String> lines = Collections.synchronizedList(new ArrayList<>());
+        GateAuditLog auditLog = new GateAuditLog(16, line -> lines.add(line.toString())).start();
+        ParkingService parkingService = new ParkingService(InMemoryParkingSpotStore.withLayout("CAR:3,BIKE:2"), new InMemoryTicketStore());
+        parkingService.setAuditLog(auditLog);
+
+        //when
+        GateResult entry = parkingService.enterVehicle(GateRequest.entry("north-1", ParkingType.CAR, "ABCDEF"));
+        parkingService.quoteVehicle(GateRequest.quote("north-1", "ABCDEF"));
+        GateResult exit = parkingService.exitVehicle(GateRequest.exit("south-2", "ABCDEF"));
+        parkingService.exitVehicle(GateRequest.exit("south-2", "GHIJKL"));
+        auditLog.close();
+
+        //then
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).startsWith("ENTRY status=OK gate=north-1 plate=ABCDEF type=CAR spot=1 regular=false in="
+                + entry.getTicket().getInTime().getTime() + " micros="));
+        assertTrue(lines.get(1).startsWith("EXIT status=OK gate=south-2 plate=ABCDEF type=CAR spot=1 regular=false in="
+                + exit.getTicket().getInTime().getTime() + " out=" + exit.getTicket().getOutTime().getTime() + " fare=0.00 micros="));
+        assertTrue(lines.get(2).startsWith("EXIT status=" + GateStatus.UNKNOWN_VEHICLE + " gate=south-2 plate=GHIJKL micros="));
+    }
+
+    @Test
+    @DisplayName("Aucune ligne d'audit ne doit être perdue quand les barrières vont plus vite que l'écriture")
+    public void fullBufferTest() throws Exception {
+        //given
+        List<String> lines = Collections.synchronizedList(new ArrayList<>());
+        GateAuditLog auditLog = new GateAuditLog(4, line -> lines.add(line.toString())).start();
+        ExecutorService gates = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+
+        //when
+        for (int gate = 0; gate < 4; gate++) {
+            String gateId = "gate-" + gate;
+            futures.add(gates.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    auditLog.record(GateResult.of(GateRequest.entry(gateId, ParkingType.CAR, "V" + i), GateStatus.NO_SPOT_AVAILABLE), 1000);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        gates.shutdown();
+        auditLog.close();
+
+        //then
+        assertEquals(2000, lines.size());
+        assertEquals(2000, auditLog.getWritten());
+        assertEquals(500, lines.stream().filter(line -> line.contains("gate=gate-3 ")).count());
+    }
+}
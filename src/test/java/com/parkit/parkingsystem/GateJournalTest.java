@@ -0,0 +1,158 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.GateJournal;
+import com.parkit.parkingsystem.dao.InMemoryParkingSpotStore;
+import com.parkit.parkingsystem.dao.InMemoryTicketStore;
+import com.parkit.parkingsystem.dao.JournalDAO;
+import com.parkit.parkingsystem.dao.JournalEvent;
+import com.parkit.parkingsystem.dao.JournaledParkingSpotStore;
+import com.parkit.parkingsystem.dao.JournaledTicketStore;
+import com.parkit.parkingsystem.dao.UnitOfWork;
+import com.parkit.parkingsystem.model.GateRequest;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.JournalApplier;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class GateJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Mock
+    private static JournalDAO journalDAO;
+
+    @Test
+    @DisplayName("Les événements d'une entrée et d'une sortie doivent être relus dans l'ordre, sans l'enregistrement déchiré de la fin")
+    public void readEventsTest() throws Exception {
+        //given
+        List<JournalEvent> durableEvents = new ArrayList<>();
+        GateJournal journal = GateJournal.open(directory, 0, durableEvents::addAll);
+        ParkingService parkingService = new ParkingService(
+                new JournaledParkingSpotStore(InMemoryParkingSpotStore.withLayout("CAR:3,BIKE:2"), journal),
+                new JournaledTicketStore(new InMemoryTicketStore(), journal));
+        parkingService.enterVehicle(GateRequest.entry("A", ParkingType.CAR, "ABCDEF"));
+        parkingService.exitVehicle(GateRequest.exit("A", "ABCDEF"));
+        journal.close();
+        Path segment = Files.list(directory).findFirst().orElseThrow();
+        Files.write(segment, new byte[]{0, 0, 0, 42, 1}, StandardOpenOption.APPEND);
+
+        //when
+        List<JournalEvent> events = GateJournal.readEvents(directory, 0);
+
+        //then
+        assertEquals(List.of(JournalEvent.Kind.SPOT_UPDATED, JournalEvent.Kind.TICKET_SAVED,
+                        JournalEvent.Kind.TICKET_UPDATED, JournalEvent.Kind.SPOT_UPDATED),
+                events.stream().map(JournalEvent::getKind).collect(Collectors.toList()));
+        assertEquals(List.of(1L, 2L, 3L, 4L), events.stream().map(JournalEvent::getLsn).collect(Collectors.toList()));
+        assertEquals(4, durableEvents.size());
+        assertFalse(events.get(0).getParkingSpot().isAvailable());
+        assertEquals("ABCDEF", events.get(2).getTicket().getVehicleRegNumber());
+        assertNotNull(events.get(2).getTicket().getOutTime());
+        assertTrue(events.get(3).getParkingSpot().isAvailable());
+        assertEquals(2, GateJournal.readEvents(directory, 2).size());
+    }
+
+    @Test
+    @DisplayName("Une entrée annulée ne doit laisser aucun événement dans le journal")
+    public void rollbackTest() throws Exception {
+        //given
+        GateJournal journal = GateJournal.open(directory, 0, events -> { });
+        JournaledParkingSpotStore parkingSpotStore = new JournaledParkingSpotStore(InMemoryParkingSpotStore.withLayout("CAR:3,BIKE:2"), journal);
+        JournaledTicketStore ticketStore = new JournaledTicketStore(new InMemoryTicketStore(), journal);
+        Ticket ticket = new Ticket();
+        ticket.setVehicleRegNumber("ABCDEF");
+        ticket.setInTime(new Date());
+
+        //when
+        UnitOfWork unitOfWork = ticketStore.beginUnitOfWork();
+        try (unitOfWork) {
+            int parkingNumber = parkingSpotStore.claimNextAvailableSlot(ParkingType.CAR);
+            ticket.setParkingSpot(new ParkingSpot(parkingNumber, ParkingType.CAR, false));
+            ticketStore.saveTicket(ticket);
+        }
+        journal.close();
+
+        //then
+        assertTrue(GateJournal.readEvents(directory, 0).isEmpty());
+        assertEquals(0, journal.getLastLsn());
+        assertEquals(3, parkingSpotStore.getNbAvailableSlot(ParkingType.CAR));
+        assertFalse(ticketStore.hasTicket("ABCDEF"));
+    }
+
+    @Test
+    @DisplayName("Une porte qui écrit pendant une unité de travail doit attendre sa validation, et ses événements la suivre dans le journal")
+    public void journalOrderTest() throws Exception {
+        //given
+        GateJournal journal = GateJournal.open(directory, 0, events -> { });
+        JournaledParkingSpotStore parkingSpotStore = new JournaledParkingSpotStore(InMemoryParkingSpotStore.withLayout("CAR:3,BIKE:2"), journal);
+        JournaledTicketStore ticketStore = new JournaledTicketStore(new InMemoryTicketStore(), journal);
+        ExecutorService otherGate = Executors.newSingleThreadExecutor();
+        Future<Integer> otherClaim;
+
+        //when
+        try (UnitOfWork unitOfWork = ticketStore.beginUnitOfWork()) {
+            parkingSpotStore.claimNextAvailableSlot(ParkingType.CAR);
+            otherClaim = otherGate.submit(() -> parkingSpotStore.claimNextAvailableSlot(ParkingType.BIKE));
+            Thread.sleep(200);
+            assertFalse(otherClaim.isDone());
+            unitOfWork.commit();
+        }
+        int bikeSpot = otherClaim.get(10, TimeUnit.SECONDS);
+        otherGate.shutdown();
+        journal.close();
+
+        //then
+        List<JournalEvent> events = GateJournal.readEvents(directory, 0);
+        assertEquals(List.of(1, bikeSpot), events.stream().map(event -> event.getParkingSpot().getId()).collect(Collectors.toList()));
+        assertEquals(List.of(1L, 2L), events.stream().map(JournalEvent::getLsn).collect(Collectors.toList()));
+    }
+
+    @Test
+    @DisplayName("Au démarrage seuls les événements après le point de reprise doivent être appliqués à la base")
+    public void recoverTest() throws Exception {
+        //given
+        GateJournal journal = GateJournal.open(directory, 0, events -> { });
+        ParkingService parkingService = new ParkingService(
+                new JournaledParkingSpotStore(InMemoryParkingSpotStore.withLayout("CAR:3,BIKE:2"), journal),
+                new JournaledTicketStore(new InMemoryTicketStore(), journal));
+        parkingService.enterVehicle(GateRequest.entry("A", ParkingType.CAR, "ABCDEF"));
+        parkingService.exitVehicle(GateRequest.exit("A", "ABCDEF"));
+        journal.close();
+        when(journalDAO.getCheckpoint()).thenReturn(2L);
+
+        //when
+        long lastLsn = new JournalApplier(journalDAO, directory).recover();
+
+        //then
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<JournalEvent>> applied = ArgumentCaptor.forClass(List.class);
+        verify(journalDAO, times(1)).apply(applied.capture());
+        assertEquals(List.of(3L, 4L), applied.getValue().stream().map(JournalEvent::getLsn).collect(Collectors.toList()));
+        assertEquals(4, lastLsn);
+    }
+}
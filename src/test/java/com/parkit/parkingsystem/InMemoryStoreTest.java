@@ -0,0 +1,145 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.GateStatus;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.InMemoryParkingSpotStore;
+import com.parkit.parkingsystem.dao.InMemoryTicketStore;
+import com.parkit.parkingsystem.dao.UnitOfWork;
+import com.parkit.parkingsystem.model.GateRequest;
+import com.parkit.parkingsystem.model.GateResult;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InMemoryStoreTest {
+
+    private InMemoryParkingSpotStore parkingSpotStore;
+    private InMemoryTicketStore ticketStore;
+    private ParkingService parkingService;
+
+    @BeforeEach
+    private void setUpPerTest() {
+        parkingSpotStore = InMemoryParkingSpotStore.withLayout("CAR:3,BIKE:2");
+        ticketStore = new InMemoryTicketStore();
+        parkingService = new ParkingService(parkingSpotStore, ticketStore);
+    }
+
+    @Test
+    @DisplayName("Doit gérer l'entrée puis la sortie d'un véhicule sans base de données")
+    public void entryAndExitTest() {
+        //given
+        GateResult entry = parkingService.enterVehicle(GateRequest.entry("A", ParkingType.BIKE, "ABCDEF"));
+
+        //when
+        GateResult exit = parkingService.exitVehicle(GateRequest.exit("A", "ABCDEF"));
+
+        //then
+        assertEquals(GateStatus.OK, entry.getStatus());
+        assertEquals(4, entry.getTicket().getParkingSpot().getId());
+        assertEquals(GateStatus.OK, exit.getStatus());
+        assertEquals(2, parkingSpotStore.getNbAvailableSlot(ParkingType.BIKE));
+        assertEquals(1, ticketStore.getNbTicket("ABCDEF"));
+        assertNotNull(ticketStore.getTicket("ABCDEF").getOutTime());
+        assertEquals(0, ticketStore.getTicket("ABCDEF").getPrice());
+    }
+
+    @Test
+    @DisplayName("Une sortie répétée ne doit pas libérer la place du véhicule suivant, ni une entrée répétée ouvrir un second ticket")
+    public void repeatedEntryAndExitTest() {
+        //given
+        parkingSpotStore = InMemoryParkingSpotStore.withLayout("CAR:1");
+        parkingService = new ParkingService(parkingSpotStore, ticketStore);
+        parkingService.enterVehicle(GateRequest.entry("A", ParkingType.CAR, "AAA"));
+        parkingService.exitVehicle(GateRequest.exit("A", "AAA"));
+        GateResult secondCar = parkingService.enterVehicle(GateRequest.entry("A", ParkingType.CAR, "BBB"));
+
+        //when
+        GateResult repeatedExit = parkingService.exitVehicle(GateRequest.exit("B", "AAA"));
+        GateResult thirdCar = parkingService.enterVehicle(GateRequest.entry("A", ParkingType.CAR, "CCC"));
+        GateResult repeatedEntry = parkingService.enterVehicle(GateRequest.entry("B", ParkingType.CAR, "BBB"));
+
+        //then
+        assertEquals(GateStatus.OK, secondCar.getStatus());
+        assertEquals(GateStatus.UNKNOWN_VEHICLE, repeatedExit.getStatus());
+        assertEquals(GateStatus.NO_SPOT_AVAILABLE, thirdCar.getStatus());
+        assertEquals(GateStatus.ALREADY_PARKED, repeatedEntry.getStatus());
+        assertEquals(0, parkingSpotStore.getNbAvailableSlot(ParkingType.CAR));
+        assertEquals(1, ticketStore.getNbTicket("BBB"));
+    }
+
+    @Test
+    @DisplayName("Une unité de travail annulée doit libérer la place et effacer le ticket")
+    public void rollbackTest() {
+        //given
+        Ticket ticket = new Ticket();
+        ticket.setVehicleRegNumber("ABCDEF");
+        ticket.setInTime(new Date());
+
+        //when
+        UnitOfWork unitOfWork = ticketStore.beginUnitOfWork();
+        try (unitOfWork) {
+            int parkingNumber = parkingSpotStore.claimNextAvailableSlot(ParkingType.CAR);
+            ticket.setParkingSpot(new ParkingSpot(parkingNumber, ParkingType.CAR, false));
+            ticketStore.saveTicket(ticket);
+        }
+
+        //then
+        assertEquals(3, parkingSpotStore.getNbAvailableSlot(ParkingType.CAR));
+        assertFalse(ticketStore.hasTicket("ABCDEF"));
+        assertNull(ticketStore.getTicket("ABCDEF"));
+    }
+
+    @Test
+    @DisplayName("Des entrées concurrentes ne doivent jamais obtenir la même place")
+    public void concurrentEntriesTest() throws Exception {
+        //given
+        parkingSpotStore = InMemoryParkingSpotStore.withLayout("CAR:100");
+        parkingService = new ParkingService(parkingSpotStore, ticketStore);
+        ExecutorService gates = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<GateResult>> results = new ArrayList<>();
+
+        //when
+        for (int i = 0; i < 150; i++) {
+            GateRequest request = GateRequest.entry("G" + (i % 8), ParkingType.CAR, "CAR" + i);
+            results.add(gates.submit(() -> {
+                start.await();
+                return parkingService.enterVehicle(request);
+            }));
+        }
+        start.countDown();
+        Set<Integer> parkingNumbers = new HashSet<>();
+        int full = 0;
+        for (Future<GateResult> result : results) {
+            GateResult gateResult = result.get(10, TimeUnit.SECONDS);
+            if (gateResult.isOk()) {
+                parkingNumbers.add(gateResult.getTicket().getParkingSpot().getId());
+            } else {
+                full++;
+            }
+        }
+        gates.shutdown();
+
+        //then
+        assertEquals(100, parkingNumbers.size());
+        assertEquals(50, full);
+        assertEquals(0, parkingSpotStore.getNbAvailableSlot(ParkingType.CAR));
+        assertEquals(100, ticketStore.size());
+    }
+}
@@ -0,0 +1,106 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.GateStatus;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.MappedFileParkingSpotStore;
+import com.parkit.parkingsystem.dao.MappedFileTicketStore;
+import com.parkit.parkingsystem.dao.UnitOfWork;
+import com.parkit.parkingsystem.model.GateRequest;
+import com.parkit.parkingsystem.model.GateResult;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedFileStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private MappedFileParkingSpotStore parkingSpotStore;
+    private MappedFileTicketStore ticketStore;
+
+    @BeforeEach
+    private void setUpPerTest() throws IOException {
+        open();
+    }
+
+    @AfterEach
+    private void tearDownPerTest() {
+        close();
+    }
+
+    private void open() throws IOException {
+        parkingSpotStore = MappedFileParkingSpotStore.open(directory.resolve("spots.map"), "CAR:3,BIKE:2");
+        ticketStore = MappedFileTicketStore.open(directory.resolve("tickets.map"));
+    }
+
+    private void close() {
+        ticketStore.close();
+        parkingSpotStore.close();
+    }
+
+    @Test
+    @DisplayName("Les places et les tickets doivent être retrouvés à la réouverture des fichiers")
+    public void reopenTest() throws IOException {
+        //given
+        ParkingService parkingService = new ParkingService(parkingSpotStore, ticketStore);
+        parkingService.enterVehicle(GateRequest.entry("A", ParkingType.CAR, "ABCDEF"));
+        parkingService.exitVehicle(GateRequest.exit("A", "ABCDEF"));
+        parkingService.enterVehicle(GateRequest.entry("A", ParkingType.CAR, "ABCDEF"));
+        parkingService.enterVehicle(GateRequest.entry("A", ParkingType.BIKE, "GHIJKL"));
+
+        //when
+        close();
+        open();
+
+        //then
+        assertEquals(2, parkingSpotStore.getNbAvailableSlot(ParkingType.CAR));
+        assertEquals(2, parkingSpotStore.getNextAvailableSlot(ParkingType.CAR));
+        assertEquals(1, parkingSpotStore.getNbAvailableSlot(ParkingType.BIKE));
+        assertEquals(2, ticketStore.getNbTicket("ABCDEF"));
+        assertEquals(1, ticketStore.getNbTicket("GHIJKL"));
+        Ticket ticket = ticketStore.getTicket("ABCDEF");
+        assertEquals(2, ticket.getId());
+        assertEquals(1, ticket.getParkingSpot().getId());
+        assertNull(ticket.getOutTime());
+        GateResult exit = new ParkingService(parkingSpotStore, ticketStore).exitVehicle(GateRequest.exit("A", "ABCDEF"));
+        assertEquals(GateStatus.OK, exit.getStatus());
+        assertTrue(exit.isRegularVehicle());
+        assertEquals(3, parkingSpotStore.getNbAvailableSlot(ParkingType.CAR));
+    }
+
+    @Test
+    @DisplayName("Un ticket annulé ne doit pas être retrouvé à la réouverture des fichiers")
+    public void rollbackTest() throws IOException {
+        //given
+        Ticket ticket = new Ticket();
+        ticket.setVehicleRegNumber("ABCDEF");
+        ticket.setInTime(new Date());
+
+        //when
+        UnitOfWork unitOfWork = ticketStore.beginUnitOfWork();
+        try (unitOfWork) {
+            int parkingNumber = parkingSpotStore.claimNextAvailableSlot(ParkingType.CAR);
+            ticket.setParkingSpot(new ParkingSpot(parkingNumber, ParkingType.CAR, false));
+            ticketStore.saveTicket(ticket);
+        }
+        close();
+        open();
+
+        //then
+        assertEquals(3, parkingSpotStore.getNbAvailableSlot(ParkingType.CAR));
+        assertFalse(ticketStore.hasTicket("ABCDEF"));
+        assertFalse(ticketStore.updateTicket(ticket));
+    }
+}
@@ -0,0 +1,96 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.InMemoryParkingSpotStore;
+import com.parkit.parkingsystem.dao.InstrumentedParkingSpotStore;
+import com.parkit.parkingsystem.dao.InstrumentedTicketStore;
+import com.parkit.parkingsystem.dao.TicketStore;
+import com.parkit.parkingsystem.metrics.LatencyHistogram;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.metrics.OperationMetrics;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class MetricsTest {
+
+    @Mock
+    private static TicketStore ticketStore;
+
+    @Test
+    @DisplayName("Les percentiles doivent être à 3% près des latences enregistrées")
+    public void percentileTest() {
+        //given
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        //when
+        for (long micros = 1; micros <= 10_000; micros++) {
+            histogram.record(micros * 1000);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        //then
+        assertEquals(10_000, snapshot.getCount());
+        assertEquals(5.0, snapshot.getPercentileMillis(0.5), 5.0 * 0.03);
+        assertEquals(9.9, snapshot.getPercentileMillis(0.99), 9.9 * 0.03);
+        assertEquals(9.99, snapshot.getPercentileMillis(0.999), 9.99 * 0.03);
+        assertEquals(10.0, snapshot.getMaxMillis());
+        assertEquals(5.0005, snapshot.getMeanMillis(), 0.0001);
+    }
+
+    @Test
+    @DisplayName("L'écart entre deux relevés ne doit compter que les latences enregistrées entre les deux")
+    public void intervalTest() {
+        //given
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 100; i++) {
+            histogram.record(1_000_000);
+        }
+        LatencyHistogram.Snapshot first = histogram.snapshot();
+
+        //when
+        for (int i = 0; i < 10; i++) {
+            histogram.record(50_000_000);
+        }
+        LatencyHistogram.Snapshot interval = histogram.snapshot().minus(first);
+
+        //then
+        assertEquals(10, interval.getCount());
+        assertEquals(50.0, interval.getPercentileMillis(0.5), 50.0 * 0.03);
+        assertEquals(50.0, interval.getMeanMillis(), 0.0001);
+    }
+
+    @Test
+    @DisplayName("Chaque appel au stockage doit être compté, et les échecs comme erreurs")
+    public void instrumentedStoreTest() {
+        //given
+        OperationMetrics updateTicket = Metrics.operation("tickets.updateTicket");
+        OperationMetrics claimNextAvailableSlot = Metrics.operation("spots.claimNextAvailableSlot");
+        long updates = updateTicket.getCount();
+        long updateErrors = updateTicket.getErrors();
+        long claims = claimNextAvailableSlot.getCount();
+        when(ticketStore.updateTicket(any(Ticket.class))).thenReturn(true).thenReturn(false);
+        InstrumentedTicketStore instrumentedTicketStore = new InstrumentedTicketStore(ticketStore);
+        InstrumentedParkingSpotStore instrumentedParkingSpotStore =
+                new InstrumentedParkingSpotStore(InMemoryParkingSpotStore.withLayout("CAR:3,BIKE:2"));
+
+        //when
+        instrumentedTicketStore.updateTicket(new Ticket());
+        instrumentedTicketStore.updateTicket(new Ticket());
+        int parkingNumber = instrumentedParkingSpotStore.claimNextAvailableSlot(ParkingType.CAR);
+
+        //then
+        assertEquals(1, parkingNumber);
+        assertEquals(updates + 2, updateTicket.getCount());
+        assertEquals(updateErrors + 1, updateTicket.getErrors());
+        assertEquals(claims + 1, claimNextAvailableSlot.getCount());
+        assertTrue(Metrics.getOperations().containsKey("tickets.updateTicket"));
+    }
+}
@@ -0,0 +1,136 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.GateStatus;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.GateRequest;
+import com.parkit.parkingsystem.model.GateResult;
+import com.parkit.parkingsystem.service.ParkingEngine;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ParkingEngineTest {
+
+    @Mock
+    private ParkingService parkingService;
+
+    @Test
+    @DisplayName("Doit traiter les entrées et les sorties de plusieurs bornes en parallèle")
+    public void submitEntryAndExitTest() throws Exception {
+        //given
+        GateRequest entry = GateRequest.entry("A", ParkingType.CAR, "ABCDEF");
+        GateRequest exit = GateRequest.exit("B", "GHIJKL");
+        when(parkingService.enterVehicle(entry)).thenReturn(GateResult.of(entry, GateStatus.OK));
+        when(parkingService.exitVehicle(exit)).thenReturn(GateResult.of(exit, GateStatus.UNKNOWN_VEHICLE));
+
+        try (ParkingEngine parkingEngine = new ParkingEngine(parkingService, 2, 10)) {
+            //when
+            GateResult entryResult = parkingEngine.submit(entry).get(5, TimeUnit.SECONDS);
+            GateResult exitResult = parkingEngine.submit(exit).get(5, TimeUnit.SECONDS);
+
+            //then
+            assertEquals(GateStatus.OK, entryResult.getStatus());
+            assertEquals(GateStatus.UNKNOWN_VEHICLE, exitResult.getStatus());
+            assertEquals("B", exitResult.getRequest().getGateId());
+        }
+    }
+
+    @Test
+    @DisplayName("Doit garder l'ordre des demandes d'un même véhicule dans une rafale")
+    public void processAllKeepsVehicleOrderTest() throws Exception {
+        //given
+        GateRequest exit = GateRequest.exit("A", "ABCDEF");
+        GateRequest entry = GateRequest.entry("A", ParkingType.CAR, "ABCDEF");
+        GateRequest otherEntry = GateRequest.entry("B", ParkingType.CAR, "GHIJKL");
+        when(parkingService.exitVehicles(Collections.singletonList(exit))).thenReturn(Collections.singletonList(GateResult.of(exit, GateStatus.OK)));
+        when(parkingService.enterVehicles(Arrays.asList(entry, otherEntry))).thenReturn(Arrays.asList(
+                GateResult.of(entry, GateStatus.OK), GateResult.of(otherEntry, GateStatus.OK)));
+
+        try (ParkingEngine parkingEngine = new ParkingEngine(parkingService, 1, 10)) {
+            //when
+            List<GateResult> results = parkingEngine.submitAll(Arrays.asList(exit, entry, otherEntry)).get(5, TimeUnit.SECONDS);
+
+            //then
+            assertEquals(exit, results.get(0).getRequest());
+            assertEquals(entry, results.get(1).getRequest());
+            assertEquals(otherEntry, results.get(2).getRequest());
+            InOrder inOrder = inOrder(parkingService);
+            inOrder.verify(parkingService).exitVehicles(Collections.singletonList(exit));
+            inOrder.verify(parkingService).enterVehicles(Arrays.asList(entry, otherEntry));
+        }
+    }
+
+    @Test
+    @DisplayName("Doit rejeter une demande quand la file d'attente des bornes est pleine")
+    public void submitRejectedWhenQueueIsFullTest() throws Exception {
+        //given
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(parkingService.enterVehicle(any(GateRequest.class))).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return GateResult.of(invocation.getArgument(0), GateStatus.OK);
+        });
+
+        try (ParkingEngine parkingEngine = new ParkingEngine(parkingService, 1, 1)) {
+            CompletableFuture<GateResult> running = parkingEngine.submit(GateRequest.entry("A", ParkingType.CAR, "AAA"));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            CompletableFuture<GateResult> queued = parkingEngine.submit(GateRequest.entry("A", ParkingType.CAR, "BBB"));
+
+            //when
+            GateResult rejected = parkingEngine.submit(GateRequest.entry("B", ParkingType.BIKE, "CCC")).get(5, TimeUnit.SECONDS);
+            release.countDown();
+
+            //then
+            assertEquals(GateStatus.REJECTED, rejected.getStatus());
+            assertEquals(GateStatus.OK, running.get(5, TimeUnit.SECONDS).getStatus());
+            assertEquals(GateStatus.OK, queued.get(5, TimeUnit.SECONDS).getStatus());
+        }
+    }
+
+    @Test
+    @DisplayName("Doit limiter le nombre de traitements simultanés à la taille du pool de connexions")
+    public void virtualThreadsBoundedByConnectionPoolTest() throws Exception {
+        //given
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        when(parkingService.enterVehicle(any(GateRequest.class))).thenAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(5);
+            running.decrementAndGet();
+            return GateResult.of(invocation.getArgument(0), GateStatus.OK);
+        });
+        List<CompletableFuture<GateResult>> results = new ArrayList<>();
+
+        try (ParkingEngine parkingEngine = ParkingEngine.onVirtualThreads(parkingService, 2, 1000)) {
+            //when
+            for (int i = 0; i < 50; i++) {
+                results.add(parkingEngine.submit(GateRequest.entry("G" + (i % 5), ParkingType.CAR, "P" + i)));
+            }
+
+            //then
+            for (CompletableFuture<GateResult> result : results) {
+                assertEquals(GateStatus.OK, result.get(5, TimeUnit.SECONDS).getStatus());
+            }
+            assertTrue(maxRunning.get() <= 2);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.api.Json;
+import com.parkit.parkingsystem.api.ParkingHttpServer;
+import com.parkit.parkingsystem.constants.GateOperation;
+import com.parkit.parkingsystem.constants.GateStatus;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.model.GateRequest;
+import com.parkit.parkingsystem.model.GateResult;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingEngine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ParkingHttpServerTest {
+
+    @Mock
+    private ParkingEngine parkingEngine;
+    @Mock
+    private ParkingSpotDAO parkingSpotDAO;
+
+    private ParkingHttpServer parkingHttpServer;
+
+    @BeforeEach
+    private void setUpPerTest() throws IOException {
+        parkingHttpServer = new ParkingHttpServer(0, parkingEngine, parkingSpotDAO);
+        parkingHttpServer.start();
+    }
+
+    @AfterEach
+    private void tearDownPerTest() {
+        parkingHttpServer.close();
+    }
+
+    @Test
+    @DisplayName("Doit enregistrer l'entrée d'un véhicule envoyée par une borne en JSON")
+    public void postEntryTest() throws Exception {
+        //given
+        ArgumentCaptor<GateRequest> request = ArgumentCaptor.forClass(GateRequest.class);
+        when(parkingEngine.submit(request.capture())).thenAnswer(invocation -> {
+            GateRequest gateRequest = invocation.getArgument(0);
+            Ticket ticket = new Ticket();
+            ticket.setParkingSpot(new ParkingSpot(3, ParkingType.CAR, false));
+            ticket.setVehicleRegNumber(gateRequest.getVehicleRegNumber());
+            ticket.setInTime(new Date());
+            return CompletableFuture.completedFuture(new GateResult(gateRequest, GateStatus.OK, ticket, true));
+        });
+
+        //when
+        HttpURLConnection connection = send("POST", "/entry", "{\"gateId\":\"north-1\",\"parkingType\":\"car\",\"vehicleRegNumber\":\"ABCDEF\"}");
+
+        //then
+        assertEquals(201, connection.getResponseCode());
+        Map<String, String> body = Json.parseObject(read(connection.getInputStream()));
+        assertEquals("OK", body.get("status"));
+        assertEquals("3", body.get("parkingNumber"));
+        assertEquals("true", body.get("regularVehicle"));
+        assertEquals(GateOperation.ENTRY, request.getValue().getOperation());
+        assertEquals(ParkingType.CAR, request.getValue().getParkingType());
+        assertEquals("north-1", request.getValue().getGateId());
+    }
+
+    @Test
+    @DisplayName("Doit répondre 503 quand le moteur refuse une demande de sortie")
+    public void postExitRejectedTest() throws Exception {
+        //given
+        when(parkingEngine.submit(any(GateRequest.class))).thenAnswer(invocation ->
+                CompletableFuture.completedFuture(GateResult.of(invocation.getArgument(0), GateStatus.REJECTED)));
+
+        //when
+        HttpURLConnection connection = send("POST", "/exit", "{\"vehicleRegNumber\":\"ABCDEF\"}");
+
+        //then
+        assertEquals(503, connection.getResponseCode());
+        assertEquals("1", connection.getHeaderField("Retry-After"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (parkingHttpServer.getEndpointStats("/exit").getRequests() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, parkingHttpServer.getEndpointStats("/exit").getRejected());
+    }
+
+    @Test
+    @DisplayName("Doit refuser une entrée dont le type de véhicule est inconnu")
+    public void postEntryUnknownParkingTypeTest() throws Exception {
+        //when
+        HttpURLConnection connection = send("POST", "/entry", "{\"parkingType\":\"TRUCK\",\"vehicleRegNumber\":\"ABCDEF\"}");
+
+        //then
+        assertEquals(400, connection.getResponseCode());
+        verify(parkingEngine, times(0)).submit(any(GateRequest.class));
+    }
+
+    @Test
+    @DisplayName("Doit donner le nombre de places disponibles, occupées et totales par type de véhicule")
+    public void getOccupancyTest() throws Exception {
+        //given
+        when(parkingSpotDAO.getNbAvailableSlot(ParkingType.CAR)).thenReturn(2);
+        when(parkingSpotDAO.getNbAvailableSlot(ParkingType.BIKE)).thenReturn(5);
+        when(parkingSpotDAO.getNbSlot(ParkingType.CAR)).thenReturn(3);
+        when(parkingSpotDAO.getNbSlot(ParkingType.BIKE)).thenReturn(5);
+
+        //when
+        HttpURLConnection connection = send("GET", "/occupancy", null);
+
+        //then
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("{\"CAR\":{\"available\":2,\"occupied\":1,\"total\":3},"
+                + "\"BIKE\":{\"available\":5,\"occupied\":0,\"total\":5}}", read(connection.getInputStream()));
+    }
+
+    @Test
+    @DisplayName("Doit répondre 503 sans traiter la demande quand la file des threads du serveur est pleine")
+    public void getOccupancyRejectedWhenQueueIsFullTest() throws Exception {
+        //given
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(parkingSpotDAO.getNbAvailableSlot(any(ParkingType.class))).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return 1;
+        });
+        when(parkingSpotDAO.getNbSlot(any(ParkingType.class))).thenReturn(1);
+        try (ParkingHttpServer busyServer = new ParkingHttpServer(0, parkingEngine, parkingSpotDAO, null, 1, 1)) {
+            busyServer.start();
+            CompletableFuture<Integer> running = CompletableFuture.supplyAsync(() -> responseCode(busyServer, "/occupancy"));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            CompletableFuture<Integer> queued = CompletableFuture.supplyAsync(() -> responseCode(busyServer, "/occupancy"));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (busyServer.getQueuedRequests() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            //when
+            int rejected = responseCode(busyServer, "/stats");
+            release.countDown();
+
+            //then
+            assertEquals(503, rejected);
+            assertEquals(200, running.get(5, TimeUnit.SECONDS));
+            assertEquals(200, queued.get(5, TimeUnit.SECONDS));
+            deadline = System.currentTimeMillis() + 5000;
+            while (busyServer.getEndpointStats("/stats").getRequests() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, busyServer.getEndpointStats("/stats").getRejected());
+        }
+    }
+
+    private static int responseCode(ParkingHttpServer server, String path) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path).openConnection();
+            return connection.getResponseCode();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private HttpURLConnection send(String method, String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + parkingHttpServer.getPort() + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream os = connection.getOutputStream()) {
+                os.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return connection;
+    }
+
+    private static String read(InputStream inputStream) throws IOException {
+        try (InputStream is = inputStream) {
+            return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -1,11 +1,19 @@
 package com.parkit.parkingsystem;
 
+import com.parkit.parkingsystem.constants.GateStatus;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
 import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.UnitOfWork;
+import com.parkit.parkingsystem.model.GateRequest;
+import com.parkit.parkingsystem.model.GateResult;
+import com.parkit.parkingsystem.model.LastTicket;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculatorService;
 import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.service.Tariff;
+import com.parkit.parkingsystem.service.TariffEngine;
 import com.parkit.parkingsystem.util.InputReaderUtil;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -15,7 +23,14 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.Properties;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -31,6 +46,8 @@ public class ParkingServiceTest {
     private static ParkingSpotDAO parkingSpotDAO;
     @Mock
     private static TicketDAO ticketDAO;
+    @Mock
+    private static UnitOfWork unitOfWork;
 
     @BeforeEach
     private void setUpPerTest() {
@@ -52,8 +69,8 @@ public class ParkingServiceTest {
         ParkingSpot parkingSpot = new ParkingSpot(1, ParkingType.CAR, false);
         ticket.setParkingSpot(parkingSpot);
         ticket.setVehicleRegNumber("ABCDEF");
-        when(ticketDAO.getTicket("ABCDEF")).thenReturn(ticket);
-        when(ticketDAO.getNbTicket("ABCDEF")).thenReturn(0);
+        when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+        when(ticketDAO.getLastTicket("ABCDEF")).thenReturn(new LastTicket(ticket, 1));
         when(ticketDAO.updateTicket(ticket)).thenReturn(true);
         when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(true);
 
@@ -62,6 +79,8 @@ public class ParkingServiceTest {
 
         //then
         verify(parkingSpotDAO, Mockito.times(1)).updateParking(new ParkingSpot(1, ParkingType.CAR, true));
+        verify(unitOfWork, Mockito.times(1)).commit();
+        verify(unitOfWork, Mockito.times(1)).close();
     }
 
     @Test
@@ -71,15 +90,69 @@ public class ParkingServiceTest {
         when(inputReaderUtil.readSelection()).thenReturn(1);
         when(parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR)).thenReturn(1);
         when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
-        when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(true);
+        when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+        when(parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR)).thenReturn(1);
         when(ticketDAO.getNbTicket("ABCDEF")).thenReturn(0);
+        when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(true);
 
         //when
         parkingService.processIncomingVehicle();
 
         //then
-        verify(parkingSpotDAO, Mockito.times(1)).updateParking(new ParkingSpot(1, ParkingType.CAR , false));
+        verify(parkingSpotDAO, Mockito.times(1)).claimNextAvailableSlot(ParkingType.CAR);
+        verify(parkingSpotDAO, Mockito.times(0)).updateParking(any(ParkingSpot.class));
         verify(ticketDAO, Mockito.times(1)).saveTicket(any(Ticket.class));
+        verify(unitOfWork, Mockito.times(1)).commit();
+    }
+
+    @Test
+    @DisplayName("Une voiture ne doit être annoncée comme habituée qu'à partir du palier de fidélité du tarif")
+    public void enterVehicleLoyaltyTierTest() throws Exception {
+        //given
+        Properties rules = new Properties();
+        rules.setProperty("loyalty", "10:90");
+        rules.setProperty("CAR.rate", "150");
+        parkingService.setTariffEngine(new TariffEngine(Tariff.compile(rules)));
+        Ticket closedTicket = new Ticket();
+        closedTicket.setInTime(new Date(System.currentTimeMillis() - (2 * 60 * 60 * 1000)));
+        closedTicket.setOutTime(new Date(System.currentTimeMillis() - (60 * 60 * 1000)));
+        closedTicket.setParkingSpot(new ParkingSpot(2, ParkingType.CAR, true));
+        when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+        when(ticketDAO.getLastTicket("SECOND")).thenReturn(new LastTicket(closedTicket, 1));
+        when(ticketDAO.getLastTicket("TENTH")).thenReturn(new LastTicket(closedTicket, 9));
+        when(parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR)).thenReturn(1, 3);
+        when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(true);
+
+        //when
+        GateResult secondVisit = parkingService.enterVehicle(GateRequest.entry("A", ParkingType.CAR, "SECOND"));
+        GateResult tenthVisit = parkingService.enterVehicle(GateRequest.entry("A", ParkingType.CAR, "TENTH"));
+
+        //then
+        assertEquals(GateStatus.OK, secondVisit.getStatus());
+        assertFalse(secondVisit.isRegularVehicle());
+        assertEquals(2, secondVisit.getVisits());
+        assertTrue(tenthVisit.isRegularVehicle());
+        assertEquals(10, tenthVisit.getVisits());
+        assertEquals(10, new FareCalculatorService(new TariffEngine(Tariff.compile(rules))).getDiscountPercent(tenthVisit.getVisits()));
+        verify(ticketDAO, Mockito.times(0)).getNbTicket(anyString());
+    }
+
+    @Test
+    @DisplayName("Doit vérifier qu'aucun ticket n'est créé si la place a été prise par une autre entrée entre-temps")
+    public void testProcessIncomingVehicleSpotClaimedByAnotherGate() throws Exception {
+        //given
+        when(inputReaderUtil.readSelection()).thenReturn(1);
+        when(parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR)).thenReturn(1);
+        when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
+        when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+        when(parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR)).thenReturn(-1);
+
+        //when
+        parkingService.processIncomingVehicle();
+
+        //then
+        verify(ticketDAO, Mockito.times(0)).saveTicket(any(Ticket.class));
+        verify(unitOfWork, Mockito.times(0)).commit();
     }
 
     @Test
@@ -91,8 +164,8 @@ public class ParkingServiceTest {
         ticket.setInTime(new Date(System.currentTimeMillis() - (60 * 60 * 1000)));
         ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
         ticket.setVehicleRegNumber("ABCDEF");
-        when(ticketDAO.getTicket("ABCDEF")).thenReturn(ticket);
-        when(ticketDAO.getNbTicket("ABCDEF")).thenReturn(0);
+        when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+        when(ticketDAO.getLastTicket("ABCDEF")).thenReturn(new LastTicket(ticket, 1));
         when(ticketDAO.updateTicket(ticket)).thenReturn(false);
 
         //when
@@ -101,6 +174,108 @@ public class ParkingServiceTest {
 
         //then
         verify(parkingSpotDAO, Mockito.times(0)).updateParking(any(ParkingSpot.class));
+        verify(unitOfWork, Mockito.times(0)).commit();
+        verify(unitOfWork, Mockito.times(1)).close();
+    }
+
+    @Test
+    @DisplayName("Avec une horloge fixe, l'heure de sortie et le prix en centimes doivent toujours être les mêmes")
+    public void exitVehicleWithFixedClockTest() throws Exception {
+        //given
+        long now = 1_700_000_000_000L;
+        parkingService.setClock(Clock.fixed(Instant.ofEpochMilli(now), ZoneOffset.UTC));
+        Ticket ticket = new Ticket();
+        ticket.setInTimeMillis(now - (45 * 60 * 1000));
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber("ABCDEF");
+        when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+        when(ticketDAO.getLastTicket("ABCDEF")).thenReturn(new LastTicket(ticket, 2));
+        when(ticketDAO.updateTicket(ticket)).thenReturn(true);
+        when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(true);
+
+        //when
+        GateResult result = parkingService.exitVehicle(GateRequest.exit("A", "ABCDEF"));
+
+        //then
+        assertEquals(GateStatus.OK, result.getStatus());
+        assertEquals(now, result.getTicket().getOutTimeMillis());
+        assertEquals(107, result.getTicket().getPriceCents());
+        assertEquals(1.07, result.getTicket().getPrice());
+    }
+
+    @Test
+    @DisplayName("Doit enregistrer une rafale d'entrées en une seule transaction avec un résultat par véhicule")
+    public void enterVehiclesTest() throws Exception {
+        //given
+        List<GateRequest> requests = Arrays.asList(
+                GateRequest.entry("A", ParkingType.CAR, "CAR1"),
+                GateRequest.entry("A", ParkingType.CAR, "CAR2"),
+                GateRequest.entry("B", ParkingType.BIKE, "BIKE1"),
+                GateRequest.entry("B", ParkingType.BIKE, "BIKE1"));
+        when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+        when(parkingSpotDAO.claimAvailableSlots(ParkingType.CAR, 2)).thenReturn(Collections.singletonList(1));
+        when(parkingSpotDAO.claimAvailableSlots(ParkingType.BIKE, 1)).thenReturn(Collections.singletonList(4));
+        when(ticketDAO.getLastTickets(anyCollection())).thenReturn(Collections.singletonMap("CAR1", new LastTicket(null, 3)));
+        when(ticketDAO.saveTickets(anyList())).thenReturn(true);
+
+        //when
+        List<GateResult> results = parkingService.enterVehicles(requests);
+
+        //then
+        assertEquals(GateStatus.OK, results.get(0).getStatus());
+        assertEquals(1, results.get(0).getTicket().getParkingSpot().getId());
+        assertTrue(results.get(0).isRegularVehicle());
+        assertEquals(GateStatus.NO_SPOT_AVAILABLE, results.get(1).getStatus());
+        assertEquals(GateStatus.OK, results.get(2).getStatus());
+        assertEquals(4, results.get(2).getTicket().getParkingSpot().getId());
+        assertEquals(GateStatus.INVALID_REQUEST, results.get(3).getStatus());
+        verify(ticketDAO, Mockito.times(1)).saveTickets(argThat(tickets -> tickets.size() == 2));
+        verify(ticketDAO, Mockito.times(0)).saveTicket(any(Ticket.class));
+        verify(ticketDAO, Mockito.times(0)).hasTicket(anyString());
+        verify(unitOfWork, Mockito.times(1)).commit();
+    }
+
+    @Test
+    @DisplayName("Doit annuler toute la rafale de sorties si l'écriture groupée échoue")
+    public void exitVehiclesUnableUpdateTest() throws Exception {
+        //given
+        Ticket ticket = new Ticket();
+        ticket.setInTime(new Date(System.currentTimeMillis() - (60 * 60 * 1000)));
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber("ABCDEF");
+        when(ticketDAO.beginUnitOfWork()).thenReturn(unitOfWork);
+        when(ticketDAO.getLastTickets(anyCollection())).thenReturn(Collections.singletonMap("ABCDEF", new LastTicket(ticket, 1)));
+        when(ticketDAO.updateTickets(anyList())).thenReturn(false);
+
+        //when
+        List<GateResult> results = parkingService.exitVehicles(Arrays.asList(
+                GateRequest.exit("A", "ABCDEF"), GateRequest.exit("A", "UNKNOWN")));
+
+        //then
+        assertEquals(GateStatus.ERROR, results.get(0).getStatus());
+        assertEquals(GateStatus.UNKNOWN_VEHICLE, results.get(1).getStatus());
+        verify(parkingSpotDAO, Mockito.times(0)).updateParkings(anyList());
+        verify(unitOfWork, Mockito.times(0)).commit();
+        verify(unitOfWork, Mockito.times(1)).close();
+    }
+
+    @Test
+    @DisplayName("Doit calculer le prix à payer d'un véhicule encore garé sans clôturer son ticket")
+    public void quoteFareTest() {
+        //given
+        Ticket ticket = new Ticket();
+        ticket.setInTime(new Date(System.currentTimeMillis() - (60 * 60 * 1000)));
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber("ABCDEF");
+        when(ticketDAO.getLastTicket("ABCDEF")).thenReturn(new LastTicket(ticket, 1));
+
+        //when
+        Ticket quote = parkingService.quoteFare("ABCDEF");
+
+        //then
+        assertEquals(1.5, quote.getPrice(), 0.01d);
+        verify(ticketDAO, Mockito.times(0)).updateTicket(any(Ticket.class));
+        verify(parkingSpotDAO, Mockito.times(0)).updateParking(any(ParkingSpot.class));
     }
 
     @Test
@@ -0,0 +1,160 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParkingSpotIndexTest {
+
+    private ParkingSpotIndex parkingSpotIndex;
+
+    @BeforeEach
+    private void setUpPerTest() {
+        parkingSpotIndex = new ParkingSpotIndex(200);
+    }
+
+    @Test
+    @DisplayName("Doit renvoyer la plus petite place disponible du type demandé")
+    public void getLowestAvailable() {
+        //given
+        parkingSpotIndex.setAvailable(3, ParkingType.CAR, true);
+        parkingSpotIndex.setAvailable(2, ParkingType.CAR, true);
+        parkingSpotIndex.setAvailable(1, ParkingType.BIKE, true);
+
+        //when then
+        assertEquals(2, parkingSpotIndex.getLowestAvailable(ParkingType.CAR));
+        assertEquals(1, parkingSpotIndex.getLowestAvailable(ParkingType.BIKE));
+        assertEquals(-1, parkingSpotIndex.getLowestAvailable(ParkingType.UNKNOWN));
+    }
+
+    @Test
+    @DisplayName("Une place réservée ne doit plus être disponible")
+    public void claimLowestAvailable() {
+        //given
+        parkingSpotIndex.setAvailable(70, ParkingType.CAR, true);
+        parkingSpotIndex.setAvailable(130, ParkingType.CAR, true);
+
+        //when
+        int first = parkingSpotIndex.claimLowestAvailable(ParkingType.CAR);
+        int second = parkingSpotIndex.claimLowestAvailable(ParkingType.CAR);
+        int third = parkingSpotIndex.claimLowestAvailable(ParkingType.CAR);
+
+        //then
+        assertEquals(70, first);
+        assertEquals(130, second);
+        assertEquals(-1, third);
+        assertFalse(parkingSpotIndex.setAvailable(70, ParkingType.CAR, false));
+        assertTrue(parkingSpotIndex.setAvailable(70, ParkingType.CAR, true));
+    }
+
+    @Test
+    @DisplayName("Une place ne doit être réparée que si aucune porte ne l'a modifiée depuis sa lecture")
+    public void repair() {
+        //given
+        parkingSpotIndex.addSpot(1, ParkingType.CAR, true);
+        parkingSpotIndex.addSpot(2, ParkingType.CAR, true);
+        int changesOfFirst = parkingSpotIndex.getChanges(1);
+        int changesOfSecond = parkingSpotIndex.getChanges(2);
+        parkingSpotIndex.claimLowestAvailable(ParkingType.CAR);
+
+        //when
+        boolean firstRepaired = parkingSpotIndex.repair(1, ParkingType.CAR, false, changesOfFirst);
+        boolean secondRepaired = parkingSpotIndex.repair(2, ParkingType.CAR, false, changesOfSecond);
+
+        //then
+        assertFalse(firstRepaired);
+        assertTrue(secondRepaired);
+        assertEquals(0, parkingSpotIndex.countAvailable(ParkingType.CAR));
+    }
+
+    @Test
+    @DisplayName("Les compteurs de places doivent suivre chaque réservation et libération, même concurrentes")
+    public void countAvailableConcurrently() throws Exception {
+        //given
+        for (int parkingNumber = 1; parkingNumber <= 150; parkingNumber++) {
+            parkingSpotIndex.addSpot(parkingNumber, ParkingType.CAR, true);
+        }
+        for (int parkingNumber = 151; parkingNumber <= 200; parkingNumber++) {
+            parkingSpotIndex.addSpot(parkingNumber, ParkingType.BIKE, parkingNumber % 2 == 0);
+        }
+        ExecutorService gates = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+
+        //when
+        for (int gate = 0; gate < 8; gate++) {
+            gates.submit(() -> {
+                start.await();
+                for (int i = 0; i < 1000; i++) {
+                    int parkingNumber = parkingSpotIndex.claimLowestAvailable(ParkingType.CAR);
+                    if (parkingNumber > 0) {
+                        parkingSpotIndex.setAvailable(parkingNumber, ParkingType.CAR, true);
+                    }
+                }
+                parkingSpotIndex.claimLowestAvailable(ParkingType.CAR);
+                return null;
+            });
+        }
+        start.countDown();
+        gates.shutdown();
+        assertTrue(gates.awaitTermination(10, TimeUnit.SECONDS));
+
+        //then
+        assertEquals(142, parkingSpotIndex.countAvailable(ParkingType.CAR));
+        assertEquals(150, parkingSpotIndex.countSpots(ParkingType.CAR));
+        assertEquals(25, parkingSpotIndex.countAvailable(ParkingType.BIKE));
+        assertEquals(50, parkingSpotIndex.countSpots(ParkingType.BIKE));
+        assertFalse(parkingSpotIndex.setAvailable(1, ParkingType.CAR, false));
+        assertEquals(142, parkingSpotIndex.countAvailable(ParkingType.CAR));
+    }
+
+    @Test
+    @DisplayName("Deux entrées concurrentes ne doivent jamais obtenir la même place")
+    public void claimLowestAvailableConcurrently() throws Exception {
+        //given
+        for (int parkingNumber = 1; parkingNumber <= 200; parkingNumber++) {
+            parkingSpotIndex.setAvailable(parkingNumber, ParkingType.CAR, true);
+        }
+        Set<Integer> claimed = ConcurrentHashMap.newKeySet();
+        List<Future<Integer>> duplicates = new ArrayList<>();
+        ExecutorService gates = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+
+        //when
+        for (int gate = 0; gate < 8; gate++) {
+            duplicates.add(gates.submit(() -> {
+                start.await();
+                int duplicate = 0;
+                int parkingNumber;
+                while ((parkingNumber = parkingSpotIndex.claimLowestAvailable(ParkingType.CAR)) > 0) {
+                    if (!claimed.add(parkingNumber)) {
+                        duplicate++;
+                    }
+                }
+                return duplicate;
+            }));
+        }
+        start.countDown();
+        gates.shutdown();
+        assertTrue(gates.awaitTermination(10, TimeUnit.SECONDS));
+
+        //then
+        for (Future<Integer> duplicate : duplicates) {
+            assertEquals(0, duplicate.get());
+        }
+        assertEquals(200, claimed.size());
+    }
+}
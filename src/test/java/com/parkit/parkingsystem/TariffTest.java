@@ -0,0 +1,103 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.service.Tariff;
+import com.parkit.parkingsystem.service.TariffEngine;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TariffTest {
+
+    // 2023-11-14T00:00:00Z
+    private static final long MIDNIGHT = 1_699_920_000_000L;
+    private static final long HOUR = 60 * 60 * 1000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("Le tarif standard doit donner les mêmes prix que les anciens tarifs fixes")
+    public void standardTariffTest() {
+        //given
+        Tariff tariff = Tariff.standard();
+        long outTime = MIDNIGHT + 10 * HOUR;
+
+        //when then
+        assertEquals(113, tariff.priceCents(ParkingType.CAR, outTime - 45 * 60 * 1000, outTime, 1));
+        assertEquals(107, tariff.priceCents(ParkingType.CAR, outTime - 45 * 60 * 1000, outTime, 2));
+        assertEquals(1.125, tariff.price(ParkingType.CAR, outTime - 45 * 60 * 1000, outTime, 1));
+        assertEquals(0.75, tariff.price(ParkingType.BIKE, outTime - 45 * 60 * 1000, outTime, 1));
+        assertEquals(3600, tariff.priceCents(ParkingType.CAR, outTime - 24 * HOUR, outTime, 1));
+        assertEquals(0, tariff.priceCents(ParkingType.CAR, outTime - 29 * 60 * 1000, outTime, 1));
+        assertFalse(tariff.isLoyal(1));
+        assertTrue(tariff.isLoyal(2));
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class,
+                () -> tariff.priceCents(ParkingType.UNKNOWN, outTime - HOUR, outTime, 1));
+        assertEquals("Unknown Parking Type", thrown.getMessage());
+    }
+
+    @Test
+    @DisplayName("Les tranches horaires, le plafond journalier et les paliers de fidélité doivent s'appliquer")
+    public void rulesTest() {
+        //given
+        Properties rules = new Properties();
+        rules.setProperty("zone", "UTC");
+        rules.setProperty("freeMinutes", "15");
+        rules.setProperty("loyalty", "2:90,5:80");
+        rules.setProperty("CAR.rate", "100");
+        rules.setProperty("CAR.bands", "08:00-10:00 300, 23:00-01:00 0");
+        rules.setProperty("CAR.dailyCap", "1000");
+        Tariff tariff = Tariff.compile(rules);
+
+        //when
+        long morning = tariff.priceCents(ParkingType.CAR, MIDNIGHT + 7 * HOUR, MIDNIGHT + 9 * HOUR, 1);
+        long morningFifthVisit = tariff.priceCents(ParkingType.CAR, MIDNIGHT + 7 * HOUR, MIDNIGHT + 9 * HOUR, 5);
+        long morningThirdVisit = tariff.priceCents(ParkingType.CAR, MIDNIGHT + 7 * HOUR, MIDNIGHT + 9 * HOUR, 3);
+        long night = tariff.priceCents(ParkingType.CAR, MIDNIGHT - 2 * HOUR, MIDNIGHT + 2 * HOUR, 1);
+        long twoDays = tariff.priceCents(ParkingType.CAR, MIDNIGHT + 7 * HOUR, MIDNIGHT + 57 * HOUR, 1);
+        long free = tariff.priceCents(ParkingType.CAR, MIDNIGHT + 8 * HOUR, MIDNIGHT + 8 * HOUR + 14 * 60 * 1000, 1);
+
+        //then
+        assertEquals(400, morning);
+        assertEquals(320, morningFifthVisit);
+        assertEquals(360, morningThirdVisit);
+        assertEquals(200, night);
+        assertEquals(2 * 1000 + 400, twoDays);
+        assertEquals(0, free);
+        assertThrows(IllegalArgumentException.class, () -> tariff.priceCents(ParkingType.BIKE, MIDNIGHT, MIDNIGHT + HOUR, 1));
+    }
+
+    @Test
+    @DisplayName("Le tarif doit être rechargé quand son fichier change, et gardé si le nouveau fichier est incorrect")
+    public void reloadTest() throws Exception {
+        //given
+        Path file = directory.resolve("tariff.properties");
+        Files.write(file, "zone=UTC\nCAR.rate=150\n".getBytes(StandardCharsets.UTF_8));
+        TariffEngine tariffEngine = TariffEngine.open(file);
+        long before = tariffEngine.getTariff().priceCents(ParkingType.CAR, MIDNIGHT, MIDNIGHT + HOUR, 1);
+
+        //when
+        Files.write(file, "zone=UTC\nCAR.rate=200\n".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 1000));
+        tariffEngine.run();
+        long reloaded = tariffEngine.getTariff().priceCents(ParkingType.CAR, MIDNIGHT, MIDNIGHT + HOUR, 1);
+        Files.write(file, "zone=UTC\nCAR.rate=deux euros\n".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2000));
+        tariffEngine.run();
+        long kept = tariffEngine.getTariff().priceCents(ParkingType.CAR, MIDNIGHT, MIDNIGHT + HOUR, 1);
+
+        //then
+        assertEquals(150, before);
+        assertEquals(200, reloaded);
+        assertEquals(200, kept);
+    }
+}
@@ -0,0 +1,72 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketReconciliationDAO;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.TicketReconciliationService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class TicketReconciliationServiceTest {
+
+    private static final long OUT_TIME = 1_700_000_000_000L;
+    private static final long MINUTE = 60 * 1000;
+
+    @Mock
+    private static TicketReconciliationDAO ticketReconciliationDAO;
+
+    @Test
+    @DisplayName("Chaque ticket clôturé doit être recalculé avec la réduction de sa visite, et seuls les écarts corrigés")
+    public void reconcileTest() throws Exception {
+        //given
+        doAnswer(invocation -> {
+            TicketReconciliationDAO.ClosedTicketConsumer consumer = invocation.getArgument(3);
+            consumer.accept(1, "ABCDEF", ParkingType.CAR, OUT_TIME - 45 * MINUTE, OUT_TIME, 1.125, 1);
+            consumer.accept(2, "ABCDEF", ParkingType.CAR, OUT_TIME - 60 * MINUTE, OUT_TIME, 1.5, 3);
+            consumer.accept(3, "GHIJKL", ParkingType.UNKNOWN, OUT_TIME - 60 * MINUTE, OUT_TIME, 1.5, 1);
+            consumer.accept(4, "MNOPQR", ParkingType.BIKE, OUT_TIME - 15 * MINUTE, OUT_TIME, 0, 2);
+            consumer.accept(5, "MNOPQR", ParkingType.BIKE, OUT_TIME - 60 * MINUTE, OUT_TIME, 1.0, 3);
+            return 5L;
+        }).when(ticketReconciliationDAO).readClosedTickets(any(Timestamp.class), any(Timestamp.class), anyInt(), any());
+        List<String> updates = Collections.synchronizedList(new ArrayList<>());
+        when(ticketReconciliationDAO.updatePrices(any(int[].class), any(double[].class), anyInt())).thenAnswer(invocation -> {
+            int[] ids = invocation.getArgument(0);
+            double[] prices = invocation.getArgument(1);
+            for (int i = 0; i < (int) invocation.getArgument(2); i++) {
+                updates.add(ids[i] + "=" + prices[i]);
+            }
+            return true;
+        });
+        StringBuilder discrepancies = new StringBuilder();
+        TicketReconciliationService reconciliationService =
+                new TicketReconciliationService(ticketReconciliationDAO, new FareCalculatorService(), 2, 2);
+
+        //when
+        TicketReconciliationService.Report report = reconciliationService.reconcile(
+                new Timestamp(0), new Timestamp(OUT_TIME + 1), discrepancies, true);
+
+        //then
+        assertTrue(report.isComplete());
+        assertEquals(5, report.getTickets());
+        assertEquals(2, report.getDiscrepancies());
+        assertEquals(2, report.getCorrected());
+        assertEquals(1, report.getFailed());
+        assertTrue(updates.containsAll(List.of("2=1.43", "5=0.95")));
+        assertEquals(2, updates.size());
+        assertTrue(discrepancies.toString().contains("2,ABCDEF,3,1.5,1.43\n"));
+    }
+}
@@ -0,0 +1,113 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.dao.VisitCountCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VisitCountCacheTest {
+
+    private VisitCountCache visitCountCache;
+
+    @BeforeEach
+    private void setUpPerTest() {
+        visitCountCache = new VisitCountCache(2, 60_000);
+    }
+
+    @Test
+    @DisplayName("Un véhicule absent du cache doit être lu en base, même si cette instance ne l'a jamais vu")
+    public void getNbTicketNotCached() {
+        //given
+        visitCountCache.commitIncrement(visitCountCache.beginIncrement("GHIJKL"), 1);
+
+        //when then
+        assertEquals(-1, visitCountCache.getNbTicket("ABCDEF"));
+        assertEquals(-1, visitCountCache.getNbTicket("GHIJKL"));
+    }
+
+    @Test
+    @DisplayName("Chaque nouveau ticket doit incrémenter le nombre de visites")
+    public void incrementNbTicket() {
+        //given
+        visitCountCache.putNbTicket("GHIJKL", 3, visitCountCache.getVersion("GHIJKL"));
+
+        //when
+        visitCountCache.commitIncrement(visitCountCache.beginIncrement("GHIJKL"), 1);
+
+        //then
+        assertEquals(4, visitCountCache.getNbTicket("GHIJKL"));
+    }
+
+    @Test
+    @DisplayName("Un nombre de visites lu avant l'enregistrement d'un ticket ne doit pas être gardé")
+    public void putNbTicketReadBeforeCommit() {
+        //given
+        long version = visitCountCache.getVersion("ABCDEF");
+        visitCountCache.beginIncrement("ABCDEF");
+
+        //when
+        visitCountCache.putNbTicket("ABCDEF", 3, version);
+
+        //then
+        assertEquals(-1, visitCountCache.getNbTicket("ABCDEF"));
+    }
+
+    @Test
+    @DisplayName("Un nombre de visites lu en base après la validation d'un ticket ne doit pas le compter deux fois")
+    public void putNbTicketReadAfterCommit() {
+        //given
+        visitCountCache.putNbTicket("ABCDEF", 3, visitCountCache.getVersion("ABCDEF"));
+        VisitCountCache.Increment increment = visitCountCache.beginIncrement("ABCDEF");
+        long version = visitCountCache.getVersion("ABCDEF");
+
+        //when
+        visitCountCache.putNbTicket("ABCDEF", 4, version);
+        visitCountCache.commitIncrement(increment, 1);
+
+        //then
+        assertEquals(4, visitCountCache.getNbTicket("ABCDEF"));
+    }
+
+    @Test
+    @DisplayName("Un nombre de visites lu il y a plus longtemps que sa durée de vie doit être relu en base")
+    public void getNbTicketExpired() {
+        //given
+        visitCountCache = new VisitCountCache(2, 0);
+        visitCountCache.putNbTicket("ABCDEF", 3, visitCountCache.getVersion("ABCDEF"));
+
+        //when then
+        assertEquals(-1, visitCountCache.getNbTicket("ABCDEF"));
+    }
+
+    @Test
+    @DisplayName("Un nombre de visites plus petit que celui du cache ne doit pas le remplacer")
+    public void putNbTicketKeepsHigherCount() {
+        //given
+        visitCountCache.putNbTicket("ABCDEF", 4, visitCountCache.getVersion("ABCDEF"));
+
+        //when
+        visitCountCache.putNbTicket("ABCDEF", 3, visitCountCache.getVersion("ABCDEF"));
+
+        //then
+        assertEquals(4, visitCountCache.getNbTicket("ABCDEF"));
+    }
+
+    @Test
+    @DisplayName("Le cache doit évincer le véhicule le moins récemment consulté")
+    public void evictLeastRecentlyUsed() {
+        //given
+        visitCountCache.putNbTicket("AAA", 1, visitCountCache.getVersion("AAA"));
+        visitCountCache.putNbTicket("BBB", 1, visitCountCache.getVersion("BBB"));
+        visitCountCache.getNbTicket("AAA");
+
+        //when
+        visitCountCache.putNbTicket("CCC", 1, visitCountCache.getVersion("CCC"));
+
+        //then
+        assertEquals(1, visitCountCache.getNbTicket("AAA"));
+        assertEquals(-1, visitCountCache.getNbTicket("BBB"));
+        assertEquals(1, visitCountCache.getNbTicket("CCC"));
+    }
+}